@@ -14,8 +14,10 @@
 
 package com.cloudant.sync.sqlite.android;
 
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import com.cloudant.sync.sqlite.ContentValues;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
@@ -23,20 +25,42 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
 import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class AndroidSQLite extends SQLDatabase {
 
+    private static final int STATEMENT_CACHE_SIZE = 50;
+
     android.database.sqlite.SQLiteDatabase database = null;
 
+    // statements compiled by executeInsert and executeUpdateDelete, least recently used first
+    private final Map<String, SQLiteStatement> statementCache =
+            new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+            if (size() > STATEMENT_CACHE_SIZE) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
 
     public static AndroidSQLite createAndroidSQLite(String path) {
         SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.CREATE_IF_NECESSARY);
         return new AndroidSQLite(db);
     }
 
+    public static AndroidSQLite createAndroidSQLiteReadOnly(String path) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(path, null, SQLiteDatabase.OPEN_READONLY);
+        return new AndroidSQLite(db);
+    }
+
     public AndroidSQLite(final android.database.sqlite.SQLiteDatabase database) {
         this.database = database;
-
+        // the platform's own per-connection cache, used by rawQuery, insert, update etc.
+        this.database.setMaxSqlCacheSize(STATEMENT_CACHE_SIZE);
     }
 
     @Override
@@ -49,8 +73,19 @@ public class AndroidSQLite extends SQLDatabase {
         // database should be already opened
     }
 
+    @Override
+    public boolean enableWriteAheadLogging() {
+        return this.database.enableWriteAheadLogging();
+    }
+
     @Override
     public void close() {
+        synchronized (statementCache) {
+            for (SQLiteStatement stmt : statementCache.values()) {
+                stmt.close();
+            }
+            statementCache.clear();
+        }
         this.database.close();
     }
 
@@ -128,6 +163,42 @@ public class AndroidSQLite extends SQLDatabase {
         }
     }
 
+    @Override
+    public long executeInsert(String sql, Object[] bindArgs) {
+        synchronized (statementCache) {
+            try {
+                return bindStatement(sql, bindArgs).executeInsert();
+            } catch (SQLiteConstraintException sqlce) {
+                return -1;
+            }
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete(String sql, Object[] bindArgs) {
+        // errors are thrown rather than returned as -1, as update() and delete() do,
+        // so that the caller's transaction is rolled back
+        synchronized (statementCache) {
+            return bindStatement(sql, bindArgs).executeUpdateDelete();
+        }
+    }
+
+    // must be called holding the statementCache lock, as the statement is shared
+    private SQLiteStatement bindStatement(String sql, Object[] bindArgs) {
+        SQLiteStatement stmt = statementCache.get(sql);
+        if (stmt == null) {
+            stmt = this.database.compileStatement(sql);
+            statementCache.put(sql, stmt);
+        }
+        stmt.clearBindings();
+        if (bindArgs != null) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(stmt, i + 1, bindArgs[i]);
+            }
+        }
+        return stmt;
+    }
+
     private android.content.ContentValues createAndroidContentValues(ContentValues values) {
         android.content.ContentValues newValues = new android.content.ContentValues(values.size());
         for(String key : values.keySet()) {
@@ -0,0 +1,236 @@
+//  Copyright (c) 2015 IBM Cloudant. All rights reserved.
+//
+//  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+//  except in compliance with the License. You may obtain a copy of the License at
+//  http://www.apache.org/licenses/LICENSE-2.0
+//  Unless required by applicable law or agreed to in writing, software distributed under the
+//  License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+//  either express or implied. See the License for the specific language governing permissions
+//  and limitations under the License.
+
+package com.cloudant.http;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * Keep-alive connection pool used by <code>HttpConnection</code>s.
+ * </p>
+ *
+ * <p>
+ * The sockets themselves are pooled by the platform's <code>HttpURLConnection</code>
+ * implementation (the JDK's keep-alive cache, or OkHttp's connection pool on Android). This
+ * class configures that pool - the number of idle connections kept per host and how long an
+ * idle connection may live before it is evicted - and keeps per-host statistics about the
+ * requests made through it.
+ * </p>
+ *
+ * <p>
+ * A connection is only returned to the pool once its response body has been read to the end
+ * and closed, see {@link HttpConnection#responseAsInputStream()}.
+ * </p>
+ *
+ * <p>
+ * The settings are passed to the platform as the JVM-wide <code>http.keepAlive</code>,
+ * <code>http.maxConnections</code>, <code>http.keepAlive.time.server</code> and
+ * <code>http.keepAliveDuration</code> system properties. A property which the application has
+ * already set is left alone, so the application's own keep-alive settings always win.
+ * </p>
+ *
+ * <p>
+ * <b>Important:</b> the platform reads these settings when it makes its first request, and the
+ * JDK only reads <code>http.maxConnections</code> once, so the pool is configured once for the
+ * whole process. The shared instance starts with {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST} and
+ * {@link #DEFAULT_IDLE_TIMEOUT_MILLIS}; to change them, call {@link #configure(int, long)} at
+ * application startup, before any replication or other request is started. Calling it later
+ * changes the values reported by this class but may have no effect on the platform's pool.
+ * </p>
+ */
+public class ConnectionPool {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 5;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30 * 1000;
+
+    // bytes we are prepared to read and discard from an unfinished response body so its
+    // connection can be reused, rather than closing the socket
+    static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    // values of the system properties set by configure(), so that they can be updated by later
+    // calls without overwriting properties the application has set
+    private static final Map<String, String> SET_PROPERTIES = new HashMap<String, String>();
+
+    private static final ConnectionPool INSTANCE = new ConnectionPool();
+
+    private final ConcurrentMap<String, HostStats> stats =
+            new ConcurrentHashMap<String, HostStats>();
+
+    private volatile int maxConnectionsPerHost;
+    private volatile long idleTimeoutMillis;
+
+    ConnectionPool() {
+        configure(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @return the pool shared by all <code>HttpConnection</code>s
+     */
+    public static ConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Configures the pool. Keep-alive system properties which have been set by the application,
+     * rather than by this method, are not changed. This only takes effect if it is called before
+     * the first request is executed, see the class documentation.
+     *
+     * @param maxConnectionsPerHost maximum number of idle keep-alive connections kept for each
+     *                              host
+     * @param idleTimeoutMillis time after which an idle connection is evicted from the pool
+     */
+    public synchronized void configure(int maxConnectionsPerHost, long idleTimeoutMillis) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+        }
+        if (idleTimeoutMillis < 1000) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be at least 1000");
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+
+        setPropertyIfUnset("http.keepAlive", "true");
+        setPropertyIfUnset("http.maxConnections", Integer.toString(maxConnectionsPerHost));
+        // JDK: seconds an idle connection is kept when the server doesn't send a Keep-Alive header
+        setPropertyIfUnset("http.keepAlive.time.server",
+                Long.toString(idleTimeoutMillis / 1000));
+        // Android: milliseconds an idle connection is kept
+        setPropertyIfUnset("http.keepAliveDuration", Long.toString(idleTimeoutMillis));
+    }
+
+    private static void setPropertyIfUnset(String key, String value) {
+        synchronized (SET_PROPERTIES) {
+            String current = System.getProperty(key);
+            if (current == null || current.equals(SET_PROPERTIES.get(key))) {
+                System.setProperty(key, value);
+                SET_PROPERTIES.put(key, value);
+            }
+        }
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    /**
+     * @return a snapshot of the statistics for each host requests have been made to, keyed
+     * by <code>scheme://host:port</code>
+     */
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> snapshot = new HashMap<String, Stats>();
+        for (Map.Entry<String, HostStats> e : stats.entrySet()) {
+            snapshot.put(e.getKey(), e.getValue().snapshot());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Resets the statistics for all hosts.
+     */
+    public void resetStats() {
+        stats.clear();
+    }
+
+    HostStats statsFor(URL url) {
+        int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+        String key = String.format("%s://%s:%d", url.getProtocol(), url.getHost(), port);
+        HostStats hostStats = stats.get(key);
+        if (hostStats == null) {
+            HostStats newStats = new HostStats();
+            hostStats = stats.putIfAbsent(key, newStats);
+            if (hostStats == null) {
+                hostStats = newStats;
+            }
+        }
+        return hostStats;
+    }
+
+    /**
+     * Immutable snapshot of the pool statistics for a single host.
+     */
+    public static class Stats {
+
+        /** requests executed */
+        public final long requests;
+        /** requests whose response is still being read */
+        public final int inFlight;
+        /** highest number of requests in flight at the same time */
+        public final int peakInFlight;
+        /** responses read to the end, leaving the connection reusable */
+        public final long released;
+        /** responses closed before the end, so the connection could not be reused */
+        public final long discarded;
+
+        Stats(long requests, int inFlight, int peakInFlight, long released, long discarded) {
+            this.requests = requests;
+            this.inFlight = inFlight;
+            this.peakInFlight = peakInFlight;
+            this.released = released;
+            this.discarded = discarded;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "requests=" + requests +
+                    ", inFlight=" + inFlight +
+                    ", peakInFlight=" + peakInFlight +
+                    ", released=" + released +
+                    ", discarded=" + discarded +
+                    '}';
+        }
+    }
+
+    static class HostStats {
+
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicLong released = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+
+        void requestStarted() {
+            requests.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            int peak;
+            while (now > (peak = peakInFlight.get())) {
+                if (peakInFlight.compareAndSet(peak, now)) {
+                    break;
+                }
+            }
+        }
+
+        void requestFinished(boolean reusable) {
+            inFlight.decrementAndGet();
+            if (reusable) {
+                released.incrementAndGet();
+            } else {
+                discarded.incrementAndGet();
+            }
+        }
+
+        Stats snapshot() {
+            return new Stats(requests.get(), inFlight.get(), peakInFlight.get(),
+                    released.get(), discarded.get());
+        }
+    }
+}
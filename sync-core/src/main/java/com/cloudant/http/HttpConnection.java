@@ -16,12 +16,15 @@ import org.apache.commons.io.IOUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by tomblench on 23/03/15.
@@ -53,24 +56,47 @@ import java.util.HashMap;
  * </pre>
  *
  * <p>
+ * Connections are kept alive and reused between requests to the same host, see
+ * {@link ConnectionPool}. A connection is only returned to the pool once its response body has
+ * been read to the end and closed, so callers using {@code responseAsInputStream} or
+ * {@code errorAsInputStream} must always close the stream they are given.
+ * </p>
+ *
+ * <p>
  * <b>Important:</b> this class is not thread-safe and <code>HttpConnection</code>s should not be
- * shared across threads.
+ * shared across threads, except that {@link #disconnect()} may be called from another thread to
+ * abort a request.
  * </p>
  *
  * @see java.net.HttpURLConnection
+ * @see com.cloudant.http.ConnectionPool
  */
 public class HttpConnection  {
 
+    private static final int GZIP_BUFFER_SIZE = 8 * 1024;
+
     private final String requestMethod;
     public final URL url;
     private final String contentType;
 
     // created in executeInternal
-    private HttpURLConnection connection;
+    private volatile HttpURLConnection connection;
+
+    // set by disconnect(), possibly from another thread
+    private volatile boolean disconnected;
+
+    // pool statistics for the host we are connecting to, updated when the response is finished
+    private final ConnectionPool.HostStats stats;
+    private boolean finished;
 
     // set by the various setRequestBody() methods
     private InputStream input;
     private long inputLength;
+    private RequestBodyWriter inputWriter;
+
+    // set by setRequestBodyCompressed() and setResponseCompressionAccepted()
+    private boolean compressRequestBody;
+    private boolean acceptCompressedResponse;
 
     public final HashMap<String, String> requestProperties;
 
@@ -81,6 +107,7 @@ public class HttpConnection  {
         this.url = url;
         this.contentType = contentType;
         this.requestProperties = new HashMap<String, String>();
+        this.stats = ConnectionPool.getInstance().statsFor(url);
     }
 
     /**
@@ -88,9 +115,8 @@ public class HttpConnection  {
      * @param input String of request body data to be sent to the server
      */
     public void setRequestBody(final String input) {
-        this.input = new ByteArrayInputStream(input.getBytes());
         // input is in bytes, not characters
-        this.inputLength = input.getBytes().length;
+        setRequestBody(input.getBytes());
     }
 
     /**
@@ -122,6 +148,39 @@ public class HttpConnection  {
         this.inputLength = inputLength;
     }
 
+    /**
+     * Compress the request body with gzip, sending it with a <code>Content-Encoding: gzip</code>
+     * header. As the compressed length isn't known until the body has been sent, the body is
+     * sent using chunked transfer encoding. Only use this for servers which accept compressed
+     * request bodies.
+     * @param compress whether to compress the request body
+     */
+    public void setRequestBodyCompressed(boolean compress) {
+        this.compressRequestBody = compress;
+    }
+
+    /**
+     * Ask the server to compress the response with gzip, by sending an
+     * <code>Accept-Encoding: gzip</code> header. If the server does, the response returned by
+     * the <code>response...</code> and <code>errorAsInputStream</code> methods is decompressed.
+     * @param accept whether to accept a compressed response
+     */
+    public void setResponseCompressionAccepted(boolean accept) {
+        this.acceptCompressedResponse = accept;
+    }
+
+    /**
+     * Set a writer which writes the request body data directly to the connection, as it is
+     * being sent to the server. The body is sent using chunked transfer encoding.
+     * @param writer writes the request body data to be sent to the server
+     */
+    public void setRequestBody(RequestBodyWriter writer) {
+        this.input = null;
+        this.inputWriter = writer;
+        // -1 signals inputLength unknown
+        this.inputLength = -1;
+    }
+
     /**
      * <p>
      * Execute request without returning data from server.
@@ -133,56 +192,96 @@ public class HttpConnection  {
      * @throws IOException
      */
     public HttpConnection execute() throws IOException {
-        System.setProperty("http.keepAlive", "false");
         connection = (HttpURLConnection) url.openConnection();
-        for (String key : requestProperties.keySet()) {
-            connection.setRequestProperty(key, requestProperties.get(key));
+        if (disconnected) {
+            // disconnect() was called before the connection was opened
+            connection.disconnect();
+            throw new IOException("Connection was disconnected before the request was made");
         }
-        // always read the result, so we can retrieve the HTTP response code
-        connection.setDoInput(true);
-        connection.setRequestMethod(requestMethod);
-        if (contentType != null) {
-            connection.setRequestProperty("Content-type", contentType);
-        }
-        if (url.getUserInfo() != null) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            OutputStream bos = Base64OutputStreamFactory.get(baos);
-            bos.write(url.getUserInfo().getBytes());
-            bos.flush();
-            bos.close();
-            String encodedAuth = baos.toString();
-            connection.setRequestProperty("Authorization", String.format("Basic %s", encodedAuth));
-        }
-        if (input != null) {
-            connection.setDoOutput(true);
-            if (inputLength != -1) {
-                // TODO on 1.7 upwards this method takes a long, otherwise int
-                connection.setFixedLengthStreamingMode((int)this.inputLength);
-            } else {
-                // TODO some situations where we can't do chunking, like multipart/related
-                /// https://issues.apache.org/jira/browse/COUCHDB-1403
-                connection.setChunkedStreamingMode(1024);
+        stats.requestStarted();
+        try {
+            for (String key : requestProperties.keySet()) {
+                connection.setRequestProperty(key, requestProperties.get(key));
+            }
+            // always read the result, so we can retrieve the HTTP response code
+            connection.setDoInput(true);
+            connection.setRequestMethod(requestMethod);
+            if (contentType != null) {
+                connection.setRequestProperty("Content-type", contentType);
             }
+            if (acceptCompressedResponse) {
+                connection.setRequestProperty("Accept-Encoding", "gzip");
+            }
+            if (url.getUserInfo() != null) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                OutputStream bos = Base64OutputStreamFactory.get(baos);
+                bos.write(url.getUserInfo().getBytes());
+                bos.flush();
+                bos.close();
+                String encodedAuth = baos.toString();
+                connection.setRequestProperty("Authorization", String.format("Basic %s", encodedAuth));
+            }
+            if (input != null || inputWriter != null) {
+                connection.setDoOutput(true);
+                if (compressRequestBody) {
+                    connection.setRequestProperty("Content-Encoding", "gzip");
+                    connection.setChunkedStreamingMode(1024);
+                } else if (inputLength != -1) {
+                    // TODO on 1.7 upwards this method takes a long, otherwise int
+                    connection.setFixedLengthStreamingMode((int)this.inputLength);
+                } else {
+                    // TODO some situations where we can't do chunking, like multipart/related
+                    /// https://issues.apache.org/jira/browse/COUCHDB-1403
+                    connection.setChunkedStreamingMode(1024);
+                }
+
+                // See "8.2.3 Use of the 100 (Continue) Status" in http://tools.ietf.org/html/rfc2616
+                // Attempting to write to the connection's OutputStream may cause an exception to be
+                // thrown. This is useful because it avoids sending large request bodies (such as
+                // attachments) if the server is going to reject our request. Reasons for rejecting
+                // requests could be 401 Unauthorized (eg cookie needs to be refreshed), etc.
+                connection.setRequestProperty("Expect", "100-continue");
 
-            // See "8.2.3 Use of the 100 (Continue) Status" in http://tools.ietf.org/html/rfc2616
-            // Attempting to write to the connection's OutputStream may cause an exception to be
-            // thrown. This is useful because it avoids sending large request bodies (such as
-            // attachments) if the server is going to reject our request. Reasons for rejecting
-            // requests could be 401 Unauthorized (eg cookie needs to be refreshed), etc.
-            connection.setRequestProperty("Expect", "100-continue");
-
-            int bufSize = 1024;
-            int nRead = 0;
-            byte[] buf = new byte[bufSize];
-            InputStream is = input;
-            OutputStream os = connection.getOutputStream();
-
-            while((nRead = is.read(buf)) >= 0) {
-                os.write(buf, 0, nRead);
+                OutputStream connectionOs = connection.getOutputStream();
+                RequestGZIPOutputStream gzip = null;
+                OutputStream os = connectionOs;
+                if (compressRequestBody) {
+                    gzip = new RequestGZIPOutputStream(connectionOs);
+                    os = gzip;
+                }
+                try {
+                    if (inputWriter != null) {
+                        inputWriter.writeTo(os);
+                    } else {
+                        int bufSize = 1024;
+                        int nRead = 0;
+                        byte[] buf = new byte[bufSize];
+                        InputStream is = input;
+
+                        while ((nRead = is.read(buf)) >= 0) {
+                            os.write(buf, 0, nRead);
+                        }
+                    }
+                    if (gzip != null) {
+                        // writes the gzip trailer without closing the connection's stream
+                        gzip.finish();
+                    }
+                } finally {
+                    if (gzip != null) {
+                        gzip.end();
+                    }
+                }
+                connectionOs.flush();
+                // we do not call os.close() - on some JVMs this incurs a delay of several seconds
+                // see http://stackoverflow.com/questions/19860436
             }
-            os.flush();
-            // we do not call os.close() - on some JVMs this incurs a delay of several seconds
-            // see http://stackoverflow.com/questions/19860436
+        } catch (IOException e) {
+            // the request failed before there was a response to finish
+            finished(false);
+            throw e;
+        } catch (RuntimeException e) {
+            finished(false);
+            throw e;
         }
         // return ourselves to allow method chaining
         return this;
@@ -202,10 +301,12 @@ public class HttpConnection  {
         if (connection == null) {
             throw new IOException("Attempted to read response from server before calling execute()");
         }
-        InputStream is = connection.getInputStream();
-        String string = IOUtils.toString(is);
-        is.close();
-        return string;
+        InputStream is = responseAsInputStream();
+        try {
+            return IOUtils.toString(is);
+        } finally {
+            is.close();
+        }
     }
 
     /**
@@ -222,10 +323,12 @@ public class HttpConnection  {
         if (connection == null) {
             throw new IOException("Attempted to read response from server before calling execute()");
         }
-        InputStream is = connection.getInputStream();
-        byte[] bytes = IOUtils.toByteArray(is);
-        is.close();
-        return bytes;
+        InputStream is = responseAsInputStream();
+        try {
+            return IOUtils.toByteArray(is);
+        } finally {
+            is.close();
+        }
     }
 
     /**
@@ -233,7 +336,8 @@ public class HttpConnection  {
      * Return response body data from server as an InputStream.
      * </p>
      * <p>
-     * <b>Important:</b> you must call <code>execute()</code> before calling this method.
+     * <b>Important:</b> you must call <code>execute()</code> before calling this method, and
+     * close the returned stream once you are done with it so the connection can be reused.
      * </p>
      * @return InputStream of response body data from server, if any
      * @throws IOException
@@ -243,6 +347,51 @@ public class HttpConnection  {
             throw new IOException("Attempted to read response from server before calling execute()");
         }
         InputStream is = connection.getInputStream();
+        return decompressIfNeeded(new PooledInputStream(is));
+    }
+
+    /**
+     * <p>
+     * Return the error response body data from server as an InputStream, for responses with a
+     * 4xx or 5xx status code.
+     * </p>
+     * <p>
+     * <b>Important:</b> you must call <code>execute()</code> before calling this method, and
+     * close the returned stream once you are done with it so the connection can be reused.
+     * </p>
+     * @return InputStream of error response body data from server, or null if there is none
+     * @throws IOException
+     */
+    public InputStream errorAsInputStream() throws IOException {
+        if (connection == null) {
+            throw new IOException("Attempted to read response from server before calling execute()");
+        }
+        InputStream es = connection.getErrorStream();
+        if (es == null) {
+            // nothing to read, so there is nothing stopping the connection being reused
+            finished(true);
+            return null;
+        }
+        return decompressIfNeeded(new PooledInputStream(es));
+    }
+
+    private InputStream decompressIfNeeded(InputStream is) throws IOException {
+        // a HEAD or empty response has no body to decompress, whatever its headers say
+        if (acceptCompressedResponse && !"HEAD".equals(requestMethod) &&
+                connection.getContentLength() != 0 &&
+                "gzip".equalsIgnoreCase(connection.getContentEncoding())) {
+            try {
+                return new GZIPInputStream(is, GZIP_BUFFER_SIZE);
+            } catch (IOException e) {
+                // not a gzip body after all (or a truncated one), release the connection
+                try {
+                    is.close();
+                } catch (IOException closeException) {
+                    ;
+                }
+                throw e;
+            }
+        }
         return is;
     }
 
@@ -255,4 +404,116 @@ public class HttpConnection  {
         return connection;
     }
 
+    /**
+     * <p>
+     * Closes the underlying connection, aborting the request. A thread blocked writing the
+     * request or reading the response gets an <code>IOException</code>, as does a later call to
+     * <code>execute()</code>. The connection is not returned to the pool.
+     * </p>
+     * <p>
+     * Unlike the other methods of this class, this method may be called from any thread. It is
+     * used to stop long running requests, like a <code>longpoll</code> changes feed.
+     * </p>
+     */
+    public void disconnect() {
+        disconnected = true;
+        HttpURLConnection c = connection;
+        if (c != null) {
+            c.disconnect();
+        }
+    }
+
+    /**
+     * @return true if {@link #disconnect()} has been called
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+
+    private void finished(boolean reusable) {
+        if (!finished) {
+            finished = true;
+            stats.requestFinished(reusable);
+        }
+    }
+
+    /**
+     * Writes a request body directly to the connection's output stream, so that a large body
+     * doesn't need to be built in memory before it is sent.
+     *
+     * @see #setRequestBody(RequestBodyWriter)
+     */
+    public interface RequestBodyWriter {
+
+        /**
+         * Writes the request body. The stream must not be closed.
+         * @param os stream to write the request body data to
+         * @throws IOException if the body can't be written
+         */
+        void writeTo(OutputStream os) throws IOException;
+    }
+
+    /**
+     * A gzip stream for request bodies. Closing a GZIPOutputStream is the only way to free its
+     * Deflater's native memory, other than waiting for the finalizer, but would also close the
+     * connection's stream, so {@link #end()} frees the Deflater without closing anything.
+     */
+    private static class RequestGZIPOutputStream extends GZIPOutputStream {
+
+        RequestGZIPOutputStream(OutputStream out) throws IOException {
+            super(out, GZIP_BUFFER_SIZE);
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+
+    /**
+     * Response stream which, when closed, reads and discards a bounded amount of any unread
+     * data so that the underlying connection is left in a state where it can be reused.
+     */
+    private class PooledInputStream extends FilterInputStream {
+
+        private boolean eof;
+
+        PooledInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            eof |= b == -1;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            eof |= n == -1;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (!eof) {
+                    byte[] buf = new byte[1024];
+                    int drained = 0;
+                    int n;
+                    while (drained < ConnectionPool.MAX_DRAIN_BYTES && (n = in.read(buf)) != -1) {
+                        drained += n;
+                    }
+                    eof = drained < ConnectionPool.MAX_DRAIN_BYTES;
+                }
+            } catch (IOException e) {
+                eof = false;
+            } finally {
+                finished(eof);
+                super.close();
+            }
+        }
+    }
+
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha;
+
+import java.util.Collection;
+
+/**
+ * A request for one document in a {@code _bulk_get} call: the open revisions of the document
+ * to fetch, and the revisions we already have attachments for.
+ *
+ * @see CouchClient#bulkReadDocsWithOpenRevisions(java.util.List, boolean)
+ */
+public class BulkGetRequest {
+
+    public final String id;
+    public final Collection<String> revs;
+    public final Collection<String> atts_since;
+
+    public BulkGetRequest(String id, Collection<String> revs, Collection<String> attsSince) {
+        this.id = id;
+        this.revs = revs;
+        this.atts_since = attsSince;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BulkGetRequest: { id: %s, revs: %s }", id, revs);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha;
+
+import java.util.List;
+
+/**
+ * Response from the {@code _bulk_get} endpoint. For example:
+ *
+ * <pre>
+ * {
+ *   "results": [
+ *     { "id": "foo",
+ *       "docs": [
+ *         { "ok": { "_id": "foo", "_rev": "2-b", "_revisions": { ... }, ... } },
+ *         { "error": { "id": "foo", "rev": "2-c", "error": "not_found", "reason": "missing" } }
+ *       ]
+ *     }
+ *   ]
+ * }
+ * </pre>
+ *
+ * There is one result for each {@code id, rev} pair in the request, so the same document id
+ * may appear in more than one result.
+ */
+public class BulkGetResponse {
+
+    public List<Result> results;
+
+    public static class Result {
+        public String id;
+        public List<OpenRevision> docs;
+    }
+}
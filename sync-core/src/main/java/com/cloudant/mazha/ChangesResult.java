@@ -75,6 +75,18 @@ public class ChangesResult {
         return this.getResults() == null ? 0 : this.getResults().size();
     }
 
+	/**
+	 * Receives the rows of a changes feed as they are read.
+	 *
+	 * @see com.cloudant.mazha.json.ChangesResultParser
+	 */
+	public interface RowHandler {
+		/**
+		 * @return true to carry on reading the changes feed, false to stop
+		 */
+		boolean row(Row row);
+	}
+
 	/**
 	 * Represent a row in Changes result.
 	 */
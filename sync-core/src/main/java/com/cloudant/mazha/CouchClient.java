@@ -21,32 +21,48 @@ package com.cloudant.mazha;
 
 import com.cloudant.http.Http;
 import com.cloudant.http.HttpConnection;
+import com.cloudant.mazha.json.ChangesResultParser;
+import com.cloudant.mazha.json.JSONCodec;
 import com.cloudant.mazha.json.JSONHelper;
 import com.cloudant.sync.datastore.MultipartAttachmentWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.net.URI;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CouchClient  {
 
     protected final JSONHelper jsonHelper;
+    // shared by all clients, reads responses straight from the response stream
+    private final JSONCodec codec;
     private CouchURIHelper uriHelper;
+    // whether to gzip the bodies of requests which send many documents, see CouchConfig
+    private final boolean requestCompressionEnabled;
+
+    // changes feed requests in progress, so they can be aborted by abortChanges()
+    private final Set<HttpConnection> changesConnections =
+            Collections.newSetFromMap(new ConcurrentHashMap<HttpConnection, Boolean>());
 
     public CouchClient(CouchConfig config) {
         this.jsonHelper = new JSONHelper();
+        this.codec = JSONCodec.getInstance();
         this.uriHelper = new CouchURIHelper(config.getRootUri());
+        this.requestCompressionEnabled = config.isRequestCompressionEnabled();
     }
 
     public URI getRootUri() {
@@ -63,6 +79,11 @@ public class CouchClient  {
 
         // all couchclient requests want to receive application/json responses
         connection.requestProperties.put("Accept", "application/json");
+        // JSON compresses well, so ask for a gzipped response unless the caller has asked for
+        // a particular encoding, in which case it wants the encoded bytes (eg attachments)
+        if (!connection.requestProperties.containsKey("Accept-Encoding")) {
+            connection.setResponseCompressionAccepted(true);
+        }
         InputStream is = null; // input stream - response from server on success
         InputStream es = null; // error stream - response from server for a 500 etc
         String response = null;
@@ -79,6 +100,12 @@ public class CouchClient  {
             cause = ioe;
         }
 
+        // the request was aborted, there is no response to look at
+        if (connection.isDisconnected()) {
+            closeQuietly(is);
+            throw new CouchException("Request was aborted", cause, -1);
+        }
+
         try {
             code = connection.getConnection().getResponseCode();
             response = connection.getConnection().getResponseMessage();
@@ -86,11 +113,13 @@ public class CouchClient  {
             if (code / 100 == 2) { // success [200,299]
                 return is;
             } else if (code == 404) {
+                // close the error stream (in finally) so the connection can be reused
+                es = connection.errorAsInputStream();
                 throw new NoResourceException(response, cause);
             } else {
-                es = connection.getConnection().getErrorStream();
+                es = connection.errorAsInputStream();
                 // TODO what if deserialisation fails?
-                CouchException ex = this.jsonHelper.fromJson(new InputStreamReader(es), CouchException.class);
+                CouchException ex = this.codec.read(es, CouchException.class);
                 ex.setStatusCode(code);
                 throw ex;
             }
@@ -109,9 +138,13 @@ public class CouchClient  {
 
     private <T> T executeToJsonObject(HttpConnection connection, Class<T> c) throws CouchException {
         InputStream is = this.executeToInputStream(connection);
-        InputStreamReader isr = new InputStreamReader(is);
-        T json = new JSONHelper().fromJson(isr, c);
-        return json;
+        try {
+            return this.codec.read(is, c);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
+        } finally {
+            closeQuietly(is);
+        }
     }
 
     public void createDb() {
@@ -151,6 +184,54 @@ public class CouchClient  {
     }
 
     public ChangesResult changes(String filterName, Map<String, String> filterParameters, Object since, Integer limit) {
+        return this.changes(changesOptions(filterName, filterParameters, since, limit));
+    }
+
+    /**
+     * Reads the changes feed, passing each row to {@code handler} as soon as it has been
+     * read from the response rather than building the whole {@link ChangesResult} first.
+     *
+     * @return the {@code last_seq} of the feed, or {@code null} if {@code handler} stopped
+     *         reading before the end of the feed
+     */
+    public Object changes(String filterName, Map<String, String> filterParameters, Object since,
+                          Integer limit, ChangesResult.RowHandler handler) {
+        return this.changes(changesOptions(filterName, filterParameters, since, limit), handler);
+    }
+
+    /**
+     * <p>Reads the changes feed using {@code feed=longpoll}, passing each row to
+     * {@code handler} as it is read.</p>
+     *
+     * <p>If there are changes since {@code since} the request returns straight away, like
+     * a normal changes feed. Otherwise the server holds the request open until a change is
+     * made, or until {@code timeoutMillis} have passed, in which case the feed has no rows.
+     * The request can be aborted from another thread with {@link #abortChanges()}.</p>
+     *
+     * @return the {@code last_seq} of the feed, or {@code null} if {@code handler} stopped
+     *         reading before the end of the feed
+     */
+    public Object longpollChanges(String filterName, Map<String, String> filterParameters,
+                                  Object since, Integer limit, long timeoutMillis,
+                                  ChangesResult.RowHandler handler) {
+        Map<String, Object> options = changesOptions(filterName, filterParameters, since, limit);
+        options.put("feed", "longpoll");
+        options.put("timeout", timeoutMillis);
+        return this.changes(options, handler);
+    }
+
+    /**
+     * Aborts the changes feed requests this client has in progress. The threads reading them
+     * get a {@link CouchException}.
+     */
+    public void abortChanges() {
+        for (HttpConnection connection : changesConnections) {
+            connection.disconnect();
+        }
+    }
+
+    private Map<String, Object> changesOptions(String filterName, Map<String, String> filterParameters,
+                                               Object since, Integer limit) {
         Map<String, Object> options = getDefaultChangeFeeOptions();
         if(filterName != null) {
             options.put("filter", filterName);
@@ -164,14 +245,39 @@ public class CouchClient  {
         if (limit != null) {
             options.put("limit", limit);
         }
-        return this.changes(options);
+        return options;
     }
 
     public ChangesResult changes(Map<String, Object> options) {
         Preconditions.checkNotNull(options, "options must not be null");
         URI changesFeedUri = this.uriHelper.changesUri(options);
         HttpConnection connection = Http.GET(changesFeedUri);
-        return executeToJsonObject(connection, ChangesResult.class);
+        InputStream is = this.executeToInputStream(connection);
+        try {
+            return this.codec.readChangesResult(is);
+        } catch (IOException e) {
+            throw new CouchException("Error reading changes feed", e, -1);
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    public Object changes(Map<String, Object> options, ChangesResult.RowHandler handler) {
+        Preconditions.checkNotNull(options, "options must not be null");
+        Preconditions.checkNotNull(handler, "handler must not be null");
+        URI changesFeedUri = this.uriHelper.changesUri(options);
+        HttpConnection connection = Http.GET(changesFeedUri);
+        changesConnections.add(connection);
+        InputStream is = null;
+        try {
+            is = this.executeToInputStream(connection);
+            return new ChangesResultParser().parse(is, handler);
+        } catch (IOException e) {
+            throw new CouchException("Error reading changes feed", e, -1);
+        } finally {
+            changesConnections.remove(connection);
+            closeQuietly(is);
+        }
     }
 
     // TODO does this still work the same way we expect it to?
@@ -180,7 +286,7 @@ public class CouchClient  {
         URI doc = this.uriHelper.documentUri(id);
         try {
             HttpConnection connection = Http.HEAD(doc);
-            this.executeToInputStream(connection);
+            closeQuietly(this.executeToInputStream(connection));
             return true;
         } catch (Exception e) {
             return false;
@@ -269,7 +375,7 @@ public class CouchClient  {
         URI doc = this.uriHelper.attachmentUri(id, queries, attachmentName);
         HttpConnection connection = Http.PUT(doc, "application/json");
         connection.setRequestBody(attachmentString);
-        this.executeToInputStream(connection);
+        closeQuietly(this.executeToInputStream(connection));
     }
 
     public void putAttachmentStream(String id, String rev, String attachmentName, String contentType, byte[] attachmentData) {
@@ -280,7 +386,7 @@ public class CouchClient  {
         URI doc = this.uriHelper.attachmentUri(id, queries, attachmentName);
         HttpConnection connection = Http.PUT(doc, contentType);
         connection.setRequestBody(attachmentData);
-        this.executeToInputStream(connection);
+        closeQuietly(this.executeToInputStream(connection));
     }
 
     /**
@@ -329,8 +435,87 @@ public class CouchClient  {
             options.put("att_encoding_info", true);
         }
         options.put("open_revs", jsonHelper.toJson(revisions));
-        return this.getDocument(id, options, new TypeReference<List<OpenRevision>>() {
-        });
+
+        URI doc = this.uriHelper.documentUri(id, options);
+        InputStream is = null;
+        try {
+            HttpConnection connection = Http.GET(doc);
+            is = this.executeToInputStream(connection);
+            return this.codec.readOpenRevisions(is);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
+        } finally {
+            closeQuietly(is);
+        }
+    }
+
+    /**
+     * Returns true if the server supports the {@code _bulk_get} endpoint.
+     *
+     * The endpoint only accepts POST, so a server which supports it rejects a GET with
+     * 405 Method Not Allowed; other servers treat {@code _bulk_get} as a document id and
+     * respond with an error such as 404 or 400.
+     */
+    public boolean isBulkSupported() {
+        HttpConnection connection = Http.GET(this.uriHelper.bulkGetUri(null));
+        try {
+            closeQuietly(this.executeToInputStream(connection));
+            return false;
+        } catch (CouchException e) {
+            return e.getStatusCode() == 405;
+        }
+    }
+
+    /**
+     * Fetches the given open revisions of many documents, along with their revision history,
+     * in a single {@code _bulk_get} request. This is the bulk equivalent of
+     * {@link #getDocWithOpenRevisions(String, java.util.Collection, java.util.Collection, boolean)}
+     * and should only be used if {@link #isBulkSupported()} returns true.
+     *
+     * @return the response, containing one result for each requested revision
+     */
+    public BulkGetResponse bulkReadDocsWithOpenRevisions(List<BulkGetRequest> request,
+                                                         boolean pullAttachmentsInline) {
+        Preconditions.checkNotNull(request, "request must not be null");
+
+        Map<String, Object> options = new HashMap<String, Object>();
+        options.put("revs", true);
+        if (pullAttachmentsInline) {
+            options.put("attachments", true);
+        } else {
+            options.put("attachments", false);
+            options.put("att_encoding_info", true);
+        }
+
+        // _bulk_get takes one entry per revision rather than a list of open revisions
+        List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+        for (BulkGetRequest r : request) {
+            for (String rev : r.revs) {
+                Map<String, Object> doc = new HashMap<String, Object>();
+                doc.put("id", r.id);
+                doc.put("rev", rev);
+                if (pullAttachmentsInline && r.atts_since != null) {
+                    doc.put("atts_since", r.atts_since);
+                }
+                docs.add(doc);
+            }
+        }
+        Map<String, Object> body = new HashMap<String, Object>();
+        body.put("docs", docs);
+
+        HttpConnection connection = Http.POST(this.uriHelper.bulkGetUri(options),
+                "application/json");
+        connection.setRequestBody(jsonHelper.toJson(body));
+        connection.setRequestBodyCompressed(requestCompressionEnabled);
+        InputStream is = null;
+        try {
+            is = this.executeToInputStream(connection);
+            return this.codec.read(is, BulkGetResponse.class);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
+        } finally {
+            closeQuietly(is);
+        }
     }
 
     public Map<String, Object> getDocument(String id) {
@@ -355,7 +540,9 @@ public class CouchClient  {
         try {
             HttpConnection connection = Http.GET(doc);
             is = this.executeToInputStream(connection);
-            return jsonHelper.fromJson(new InputStreamReader(is), type);
+            return this.codec.read(is, type);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
         } finally {
             closeQuietly(is);
         }
@@ -373,7 +560,9 @@ public class CouchClient  {
         InputStream is = null;
         try {
             is = this.getDocumentStream(id, rev);
-            return jsonHelper.fromJson(new InputStreamReader(is), type);
+            return this.codec.read(is, type);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
         } finally {
             closeQuietly(is);
         }
@@ -410,7 +599,9 @@ public class CouchClient  {
         try {
             HttpConnection connection = Http.GET(findRevs);
             is = this.executeToInputStream(connection);
-            return jsonHelper.fromJson(new InputStreamReader(is), type);
+            return this.codec.read(is, type);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
         } finally {
             closeQuietly(is);
         }
@@ -467,14 +658,20 @@ public class CouchClient  {
         }
     }
 
-    InputStream bulkInputStream(List<?> objects) {
+    InputStream bulkInputStream(final List<?> objects) {
         Preconditions.checkNotNull(objects, "Object list must not be null.");
-        String newEditsVal = "\"new_edits\": false, ";
         URI uri = this.uriHelper.bulkDocsUri();
-        String payload = String.format("{%s%s%s}", newEditsVal, "\"docs\": ",
-                jsonHelper.toJson(objects));
         HttpConnection connection = Http.POST(uri, "application/json");
-        connection.setRequestBody(payload);
+        // each object is serialised straight to the connection as it is sent
+        connection.setRequestBody(new BulkDocsWriter() {
+            @Override
+            void writeDocs(JsonGenerator generator) throws IOException {
+                for (Object object : objects) {
+                    generator.writeObject(object);
+                }
+            }
+        });
+        connection.setRequestBodyCompressed(requestCompressionEnabled);
         return this.executeToInputStream(connection);
     }
 
@@ -486,7 +683,9 @@ public class CouchClient  {
         InputStream is = null;
         try {
             is = bulkInputStream(objects);
-            return jsonHelper.fromJsonToList(new InputStreamReader(is), new TypeReference<List<Response>>() {});
+            return this.codec.readResponses(is);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
         } finally {
             closeQuietly(is);
         }
@@ -510,33 +709,52 @@ public class CouchClient  {
      * @param serializedDocs list of JSON documents
      * @return list of Response
      */
-    public List<Response> bulkSerializedDocs(List<String> serializedDocs) {
+    public List<Response> bulkSerializedDocs(final List<String> serializedDocs) {
         Preconditions.checkNotNull(serializedDocs, "Serialized doc list must not be null.");
-        String payload = createBulkSerializedDocsPayload(serializedDocs);
         URI uri = this.uriHelper.bulkDocsUri();
         InputStream is = null;
         HttpConnection connection = Http.POST(uri, "application/json");
-        connection.setRequestBody(payload);
+        connection.setRequestBody(new BulkDocsWriter() {
+            @Override
+            void writeDocs(JsonGenerator generator) throws IOException {
+                for (String doc : serializedDocs) {
+                    generator.writeRawValue(doc);
+                }
+            }
+        });
+        connection.setRequestBodyCompressed(requestCompressionEnabled);
         try {
             is = this.executeToInputStream(connection);
-            return jsonHelper.fromJsonToList(new InputStreamReader(is), new TypeReference<List<Response>>() {});
-        }
-        finally {
+            return this.codec.readResponses(is);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
+        } finally {
             closeQuietly(is);
         }
     }
 
-    private String createBulkSerializedDocsPayload(List<String> serializedDocs) {
-        String newEditsVal = "\"new_edits\": false, ";
-        StringBuilder sb = new StringBuilder("[");
-        for(String doc : serializedDocs) {
-            if(sb.length() > 1) {
-                sb.append(", ");
-            }
-            sb.append(doc);
+    /**
+     * Writes a {@code _bulk_docs} request body, {@code {"new_edits": false, "docs": [...]}},
+     * straight to the connection, so the whole body is never held in memory.
+     */
+    private abstract class BulkDocsWriter implements HttpConnection.RequestBodyWriter {
+
+        @Override
+        public void writeTo(OutputStream os) throws IOException {
+            JsonGenerator generator = jsonHelper.createGenerator(os);
+            generator.writeStartObject();
+            generator.writeBooleanField("new_edits", false);
+            generator.writeArrayFieldStart("docs");
+            writeDocs(generator);
+            generator.writeEndArray();
+            generator.writeEndObject();
+            generator.flush();
         }
-        sb.append("]");
-        return String.format("{%s%s%s}", newEditsVal, "\"docs\": ", sb.toString());
+
+        /**
+         * Writes the documents, as elements of the {@code docs} array.
+         */
+        abstract void writeDocs(JsonGenerator generator) throws IOException;
     }
 
     /**
@@ -571,15 +789,22 @@ public class CouchClient  {
         try {
             HttpConnection connection = Http.POST(uri, "application/json");
             connection.setRequestBody(payload);
+            connection.setRequestBodyCompressed(requestCompressionEnabled);
+            connection.setResponseCompressionAccepted(true);
             try {
                 is = connection.execute().responseAsInputStream();
-                Map<String, MissingRevisions> diff = jsonHelper.fromJson(new InputStreamReader(is),
-                    new TypeReference<Map<String, MissingRevisions>>() { });
-                return diff;
             } catch (IOException ioe) {
-                // return empty map
+                // close the error stream so the connection can be reused, and return empty map
+                try {
+                    closeQuietly(connection.errorAsInputStream());
+                } catch (IOException e) {
+                    // the connection won't be reused
+                }
                 return new HashMap<String, MissingRevisions>();
             }
+            return this.codec.readMissingRevisions(is);
+        } catch (IOException e) {
+            throw new CouchException("Error reading response", e, -1);
         } finally {
             closeQuietly(is);
         }
@@ -51,6 +51,9 @@ public class CouchConfig {
 
     private boolean handleRedirectEnabled = Boolean.FALSE;
 
+    // Whether to gzip large request bodies, see setRequestCompressionEnabled()
+    private boolean requestCompressionEnabled = Boolean.FALSE;
+
     // Optional custom headers
     private Map<String, String> customHeaders;
 
@@ -70,6 +73,21 @@ public class CouchConfig {
         this.handleRedirectEnabled = handleRedirectEnabled;
     }
 
+    public boolean isRequestCompressionEnabled() {
+        return requestCompressionEnabled;
+    }
+
+    /**
+     * Gzip the bodies of requests which send many documents or revisions at once, such as
+     * {@code _bulk_docs}. Responses are decompressed whenever the server compresses them, but
+     * not all servers accept compressed request bodies, so this is off by default.
+     *
+     * @param requestCompressionEnabled whether to compress large request bodies
+     */
+    public void setRequestCompressionEnabled(boolean requestCompressionEnabled) {
+        this.requestCompressionEnabled = requestCompressionEnabled;
+    }
+
     public int getBufferSize() {
         return bufferSize;
     }
@@ -90,6 +108,11 @@ public class CouchConfig {
 		return connectionTimeout;
 	}
 
+    /**
+     * @deprecated not used, connections are pooled for the whole process. Use
+     * {@link com.cloudant.http.ConnectionPool#configure(int, long)} instead.
+     */
+    @Deprecated
 	public int getMaxConnections() {
 		return maxConnections;
 	}
@@ -102,6 +125,11 @@ public class CouchConfig {
 		this.connectionTimeout = connectionTimeout;
 	}
 
+    /**
+     * @deprecated not used, connections are pooled for the whole process. Use
+     * {@link com.cloudant.http.ConnectionPool#configure(int, long)} instead.
+     */
+    @Deprecated
 	public void setMaxConnections(int maxConnections) {
 		this.maxConnections = maxConnections;
 	}
@@ -19,7 +19,7 @@
 package com.cloudant.mazha;
 
 import com.cloudant.common.CouchConstants;
-import com.cloudant.mazha.json.JSONHelper;
+import com.cloudant.mazha.json.JSONCodec;
 import com.google.common.base.Joiner;
 
 import java.net.URI;
@@ -69,8 +69,7 @@ public class CouchURIHelper {
             Object since = query.get("since");
             if(!(since instanceof String)){
                 //json encode the seq number since it isn't a string
-                JSONHelper helper = new JSONHelper();
-                query.put("since",helper.toJson(since));
+                query.put("since", JSONCodec.getInstance().toJson(since));
             }
         }
 
@@ -90,6 +89,19 @@ public class CouchURIHelper {
         return uriFor(uri);
     }
 
+    /**
+     * Returns URI for {@code _bulk_get} endpoint.
+     */
+    public URI bulkGetUri(Map<String, Object> query) {
+        String base_uri = String.format(
+                "%s/%s",
+                this.rootUriString,
+                "_bulk_get"
+        );
+        String uri = appendQueryString(base_uri, query);
+        return uriFor(uri);
+    }
+
     /**
      * Returns URI for {@code _revs_diff} endpoi
      */
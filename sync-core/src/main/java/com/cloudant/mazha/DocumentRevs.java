@@ -19,9 +19,11 @@
 package com.cloudant.mazha;
 
 import com.cloudant.common.CouchConstants;
+import com.cloudant.mazha.json.AttachmentsDeserializer;
 import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 import java.util.HashMap;
 import java.util.List;
@@ -66,6 +68,7 @@ public class DocumentRevs {
     private Revisions revisions;
 
     @JsonProperty(CouchConstants._attachments)
+    @JsonDeserialize(using = AttachmentsDeserializer.class)
     private Map<String, Object> attachments = new HashMap<String, Object>();
 
     private Map<String, Object> others = new HashMap<String, Object>();
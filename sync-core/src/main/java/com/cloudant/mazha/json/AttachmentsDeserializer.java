@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Reads a document's {@code _attachments} object into the same maps as
+ * Jackson's default deserialisation, except that the base64 {@code data} of
+ * inline attachments is decoded straight from the parser's buffer into a
+ * {@code byte[]}.</p>
+ *
+ * <p>This avoids creating a {@code String} of the base64 data, which takes
+ * more than twice the memory of the attachment itself, only to decode it
+ * again when the attachment is saved.</p>
+ */
+public class AttachmentsDeserializer extends JsonDeserializer<Map<String, Object>> {
+
+    @Override
+    public Map<String, Object> deserialize(JsonParser jp, DeserializationContext ctxt)
+            throws IOException {
+        Map<String, Object> attachments = new HashMap<String, Object>();
+        expectObject(jp, ctxt);
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jp.getCurrentName();
+            jp.nextToken();
+            attachments.put(name, readAttachment(jp, ctxt));
+        }
+        return attachments;
+    }
+
+    private static Map<String, Object> readAttachment(JsonParser jp, DeserializationContext ctxt)
+            throws IOException {
+        Map<String, Object> attachment = new HashMap<String, Object>();
+        expectObject(jp, ctxt);
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken value = jp.nextToken();
+            if ("data".equals(field) && value == JsonToken.VALUE_STRING) {
+                attachment.put(field, jp.getBinaryValue());
+            } else {
+                attachment.put(field, jp.readValueAs(Object.class));
+            }
+        }
+        return attachment;
+    }
+
+    private static void expectObject(JsonParser jp, DeserializationContext ctxt)
+            throws IOException {
+        if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw ctxt.mappingException(Map.class);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.cloudant.mazha.ChangesResult;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Reads a {@code _changes} response token by token, passing each row to a
+ * {@link ChangesResult.RowHandler} as soon as it has been read, so that the rows
+ * of a large feed don't all have to be held in memory at once.</p>
+ *
+ * <p>Only the fields of {@link ChangesResult} are read, other fields are skipped
+ * without being parsed into objects.</p>
+ */
+public class ChangesResultParser {
+
+    // MappingJsonFactory parsers can read values like seq, which may be a number,
+    // a string or an array depending on the server, as plain Java objects
+    private static final JsonFactory FACTORY = new MappingJsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+
+    /**
+     * Reads the changes feed from {@code in}, which is not closed.
+     *
+     * @return the {@code last_seq} of the feed, or {@code null} if {@code handler}
+     *         stopped reading the feed before the end
+     */
+    public Object parse(InputStream in, ChangesResult.RowHandler handler) throws IOException {
+        JsonParser jp = FACTORY.createParser(in);
+        try {
+            expect(jp, jp.nextToken(), JsonToken.START_OBJECT);
+            Object lastSeq = null;
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                JsonToken value = jp.nextToken();
+                if ("results".equals(field)) {
+                    expect(jp, value, JsonToken.START_ARRAY);
+                    while (jp.nextToken() == JsonToken.START_OBJECT) {
+                        if (!handler.row(readRow(jp))) {
+                            return null;
+                        }
+                    }
+                } else if ("last_seq".equals(field)) {
+                    lastSeq = jp.readValueAs(Object.class);
+                } else {
+                    jp.skipChildren();
+                }
+            }
+            return lastSeq;
+        } finally {
+            jp.close();
+        }
+    }
+
+    /**
+     * Reads the whole changes feed from {@code in}, which is not closed.
+     */
+    public ChangesResult parse(InputStream in) throws IOException {
+        final List<ChangesResult.Row> rows = new ArrayList<ChangesResult.Row>();
+        Object lastSeq = parse(in, new ChangesResult.RowHandler() {
+            @Override
+            public boolean row(ChangesResult.Row row) {
+                rows.add(row);
+                return true;
+            }
+        });
+        ChangesResult result = new ChangesResult();
+        result.setResults(rows);
+        result.setLastSeq(lastSeq);
+        return result;
+    }
+
+    private ChangesResult.Row readRow(JsonParser jp) throws IOException {
+        ChangesResult.Row row = new ChangesResult.Row();
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            JsonToken value = jp.nextToken();
+            if ("id".equals(field)) {
+                row.setId(jp.getText());
+            } else if ("seq".equals(field)) {
+                row.setSeq(jp.readValueAs(Object.class));
+            } else if ("deleted".equals(field)) {
+                row.setDeleted(value == JsonToken.VALUE_TRUE);
+            } else if ("changes".equals(field)) {
+                expect(jp, value, JsonToken.START_ARRAY);
+                row.setChanges(readRevs(jp));
+            } else if ("doc".equals(field) && value == JsonToken.START_OBJECT) {
+                row.setDoc(jp.readValueAs(Map.class));
+            } else {
+                jp.skipChildren();
+            }
+        }
+        return row;
+    }
+
+    private List<ChangesResult.Row.Rev> readRevs(JsonParser jp) throws IOException {
+        List<ChangesResult.Row.Rev> revs = new ArrayList<ChangesResult.Row.Rev>();
+        while (jp.nextToken() == JsonToken.START_OBJECT) {
+            ChangesResult.Row.Rev rev = new ChangesResult.Row.Rev();
+            while (jp.nextToken() == JsonToken.FIELD_NAME) {
+                String field = jp.getCurrentName();
+                jp.nextToken();
+                if ("rev".equals(field)) {
+                    rev.setRev(jp.getText());
+                } else {
+                    jp.skipChildren();
+                }
+            }
+            revs.add(rev);
+        }
+        return revs;
+    }
+
+    private static void expect(JsonParser jp, JsonToken actual, JsonToken expected)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(String.format("Expected %s in changes feed but found %s",
+                    expected, actual), jp.getCurrentLocation());
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.cloudant.mazha.ChangesResult;
+import com.cloudant.mazha.CouchClient;
+import com.cloudant.mazha.CouchDbInfo;
+import com.cloudant.mazha.OpenRevision;
+import com.cloudant.mazha.Response;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Shared JSON codec for the responses the mazha client reads.</p>
+ *
+ * <p>Jackson's {@code ObjectMapper} is expensive to create, and the first
+ * use of a type is slow as its deserialiser is built by reflection. The codec
+ * creates one mapper for the whole process, configured the same way as
+ * {@link JSONHelper}'s, along with readers for the response types read
+ * during replication. These are immutable, so the codec can be used from
+ * any number of threads at once.</p>
+ *
+ * <p>Responses are parsed directly from the bytes of the {@code InputStream},
+ * which is left open for the caller to close, rather than being decoded to
+ * characters first.</p>
+ */
+public final class JSONCodec {
+
+    private static final JSONCodec INSTANCE = new JSONCodec();
+
+    private final ObjectMapper mapper;
+    private final ObjectWriter writer;
+
+    // readers for classes, built the first time each class is read
+    private final ConcurrentMap<Class<?>, ObjectReader> readers =
+            new ConcurrentHashMap<Class<?>, ObjectReader>();
+    private final ObjectReader responseListReader;
+    private final ObjectReader openRevisionListReader;
+    private final ObjectReader missingRevisionsReader;
+
+    public static JSONCodec getInstance() {
+        return INSTANCE;
+    }
+
+    private JSONCodec() {
+        mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+
+        writer = mapper.writer();
+        // build the readers used in every replication up front
+        readers.put(CouchDbInfo.class, mapper.reader(CouchDbInfo.class));
+        readers.put(Response.class, mapper.reader(Response.class));
+        responseListReader = mapper.reader(new TypeReference<List<Response>>() {});
+        openRevisionListReader = mapper.reader(new TypeReference<List<OpenRevision>>() {});
+        missingRevisionsReader = mapper.reader(
+                new TypeReference<Map<String, CouchClient.MissingRevisions>>() {});
+    }
+
+    /**
+     * Reads a whole {@code _changes} response, using {@link ChangesResultParser}
+     * so that fields the replicator doesn't use are skipped rather than bound.
+     */
+    public ChangesResult readChangesResult(InputStream in) throws IOException {
+        return new ChangesResultParser().parse(in);
+    }
+
+    /**
+     * Reads the response to a {@code _bulk_docs} request.
+     */
+    public List<Response> readResponses(InputStream in) throws IOException {
+        return responseListReader.readValue(in);
+    }
+
+    /**
+     * Reads the response to a document request with the {@code open_revs} option.
+     */
+    public List<OpenRevision> readOpenRevisions(InputStream in) throws IOException {
+        return openRevisionListReader.readValue(in);
+    }
+
+    /**
+     * Reads the response to a {@code _revs_diff} request.
+     */
+    public Map<String, CouchClient.MissingRevisions> readMissingRevisions(InputStream in)
+            throws IOException {
+        return missingRevisionsReader.readValue(in);
+    }
+
+    /**
+     * Reads an object of the given class, such as {@link Response} or
+     * {@link CouchDbInfo}. The reader for each class is kept, so only the first
+     * read of a class pays for building it.
+     */
+    public <T> T read(InputStream in, Class<T> type) throws IOException {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = mapper.reader(type);
+            readers.putIfAbsent(type, reader);
+        }
+        return reader.readValue(in);
+    }
+
+    /**
+     * Reads an object of a generic type, such as a document as a
+     * {@code Map<String, Object>}. The mapper caches the deserialiser for the
+     * type, but the reader is built on every call.
+     */
+    public <T> T read(InputStream in, TypeReference<T> type) throws IOException {
+        return mapper.reader(type).readValue(in);
+    }
+
+    public String toJson(Object object) {
+        try {
+            return writer.writeValueAsString(object);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
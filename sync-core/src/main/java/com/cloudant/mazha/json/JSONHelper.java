@@ -15,12 +15,15 @@
 package com.cloudant.mazha.json;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.util.List;
 import java.util.Map;
@@ -75,6 +78,16 @@ public class JSONHelper {
         }
     }
 
+    /**
+     * Returns a generator which writes UTF-8 JSON to {@code os}, serialising the objects
+     * passed to its {@code writeObject} method in the same way as {@link #toJson(Object)}.
+     * The generator must be flushed once written, and not closed, as closing it closes
+     * {@code os}.
+     */
+    public JsonGenerator createGenerator(OutputStream os) throws IOException {
+        return objectMapper.getFactory().createGenerator(os, JsonEncoding.UTF8);
+    }
+
     public String toPrettyJson(Object object) {
         try {
             return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(object);
@@ -14,13 +14,15 @@
 
 package com.cloudant.mazha.json;
 
+import com.cloudant.mazha.DocumentRevs;
 import com.cloudant.mazha.MissingOpenRevision;
 import com.cloudant.mazha.OkOpenRevision;
 import com.cloudant.mazha.OpenRevision;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import java.io.IOException;
 
@@ -29,14 +31,36 @@ public class OpenRevisionDeserializer extends JsonDeserializer<OpenRevision> {
     @Override
     public OpenRevision deserialize(JsonParser jp, DeserializationContext ctxt)
             throws IOException {
-        ObjectNode node = jp.readValueAsTree();
-        if(node.has("ok")) {
-            return jp.getCodec().treeToValue(node, OkOpenRevision.class);
-        } else if(node.has("missing")) {
-            return jp.getCodec().treeToValue(node, MissingOpenRevision.class);
-        } else {
+        // the single field of the object says what kind of open revision it is, so the
+        // document can be read as it is parsed rather than being buffered as a tree first
+        OpenRevision openRevision = null;
+        while (jp.nextToken() == JsonToken.FIELD_NAME) {
+            String field = jp.getCurrentName();
+            jp.nextToken();
+            if (openRevision != null) {
+                jp.skipChildren();
+            } else if ("ok".equals(field)) {
+                OkOpenRevision ok = new OkOpenRevision();
+                ok.setDocumentRevs(jp.readValueAs(DocumentRevs.class));
+                openRevision = ok;
+            } else if ("missing".equals(field)) {
+                MissingOpenRevision missing = new MissingOpenRevision();
+                missing.setRevision(jp.getText());
+                openRevision = missing;
+            } else if ("error".equals(field)) {
+                // _bulk_get reports revisions it can't find as errors rather than as "missing"
+                JsonNode error = jp.readValueAsTree();
+                MissingOpenRevision missing = new MissingOpenRevision();
+                missing.setRevision(error.path("rev").asText());
+                openRevision = missing;
+            } else {
+                jp.skipChildren();
+            }
+        }
+        if (openRevision == null) {
             // Should never happen
             throw new IllegalStateException("Unexpected object in open revisions response.");
         }
+        return openRevision;
     }
 }
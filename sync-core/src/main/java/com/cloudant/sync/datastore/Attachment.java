@@ -14,6 +14,9 @@
 
 package com.cloudant.sync.datastore;
 
+import com.cloudant.android.Base64InputStreamFactory;
+
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -59,6 +62,19 @@ public abstract class Attachment implements Comparable<Attachment>{
      */     
     public abstract InputStream getInputStream() throws IOException;
 
+    /**
+     * Returns the contents of the {@code data} field of an inline attachment in a
+     * document's JSON. This is either the base64 string from the JSON, or the
+     * decoded bytes if the JSON was read using
+     * {@link com.cloudant.mazha.json.AttachmentsDeserializer}.
+     */
+    static InputStream inlineDataStream(Object data) {
+        if (data instanceof byte[]) {
+            return new ByteArrayInputStream((byte[]) data);
+        }
+        return Base64InputStreamFactory.get(new ByteArrayInputStream(((String) data).getBytes()));
+    }
+
     public String toString() {
         return "Attachment: "+name+", type: "+type;
     }
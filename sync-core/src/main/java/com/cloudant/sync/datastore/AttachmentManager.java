@@ -30,9 +30,11 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -69,6 +71,33 @@ class AttachmentManager {
             "FROM attachments " +
             "WHERE sequence = ?";
 
+    // Attachments of the leaf revisions of the documents with the given docids
+    private static final String SQL_ATTACHMENTS_SELECT_LEAVES_OF_DOCS = "SELECT " +
+            "attachments.sequence, " +
+            "filename, " +
+            "key, " +
+            "type, " +
+            "encoding, " +
+            "length, " +
+            "encoded_length, " +
+            "revpos " +
+            "FROM attachments, revs, docs " +
+            "WHERE docs.docid IN ( %s ) AND revs.doc_id = docs.doc_id " +
+            "AND attachments.sequence = revs.sequence " +
+            "AND NOT EXISTS (SELECT 1 FROM revs children WHERE children.parent = revs.sequence)";
+
+    // Attachments of the revisions with the given sequences
+    private static final String SQL_ATTACHMENTS_SELECT_SEQUENCES = "SELECT sequence, " +
+            "filename, " +
+            "key, " +
+            "type, " +
+            "encoding, " +
+            "length, " +
+            "encoded_length, " +
+            "revpos " +
+            "FROM attachments " +
+            "WHERE sequence IN ( %s )";
+
     private static final String SQL_ATTACHMENTS_SELECT_ALL_KEYS = "SELECT key " +
             "FROM attachments";
 
@@ -254,6 +283,81 @@ class AttachmentManager {
         }
     }
 
+    /**
+     * Returns the attachments of the leaf revisions of several documents in one query,
+     * keyed by the sequence of the revision they belong to. The number of document IDs
+     * must be within SQLite's limit on placeholders.
+     */
+    protected Map<Long, List<SavedAttachment>> attachmentsForLeafRevisions(SQLDatabase db,
+                                                                          List<String> docIds)
+            throws AttachmentException {
+        Map<Long, List<SavedAttachment>> atts = new HashMap<Long, List<SavedAttachment>>();
+        if (docIds.isEmpty()) {
+            return atts;
+        }
+        Cursor c = null;
+        try {
+            c = db.rawQuery(String.format(SQL_ATTACHMENTS_SELECT_LEAVES_OF_DOCS,
+                    DatabaseUtils.makePlaceholders(docIds.size())),
+                    docIds.toArray(new String[docIds.size()]));
+            addAttachmentsBySequence(c, atts);
+            return atts;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to get attachments", e);
+            throw new AttachmentException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(c);
+        }
+    }
+
+    /**
+     * Returns the attachments of several revisions in one query, keyed by the sequence of
+     * the revision they belong to. The number of sequences must be within SQLite's limit on
+     * placeholders.
+     */
+    protected Map<Long, List<SavedAttachment>> attachmentsForRevisions(SQLDatabase db,
+                                                                      List<Long> sequences)
+            throws AttachmentException {
+        Map<Long, List<SavedAttachment>> atts = new HashMap<Long, List<SavedAttachment>>();
+        if (sequences.isEmpty()) {
+            return atts;
+        }
+        String[] args = new String[sequences.size()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = String.valueOf(sequences.get(i));
+        }
+        Cursor c = null;
+        try {
+            c = db.rawQuery(String.format(SQL_ATTACHMENTS_SELECT_SEQUENCES,
+                    DatabaseUtils.makePlaceholders(args.length)), args);
+            addAttachmentsBySequence(c, atts);
+            return atts;
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to get attachments", e);
+            throw new AttachmentException(e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(c);
+        }
+    }
+
+    private void addAttachmentsBySequence(Cursor c, Map<Long, List<SavedAttachment>> atts) {
+        while (c.moveToNext()) {
+            long sequence = c.getLong(0);
+            String name = c.getString(1);
+            byte[] key = c.getBlob(2);
+            String type = c.getString(3);
+            int encoding = c.getInt(4);
+            int revpos = c.getInt(7);
+            File file = fileFromKey(key);
+            List<SavedAttachment> revAtts = atts.get(sequence);
+            if (revAtts == null) {
+                revAtts = new LinkedList<SavedAttachment>();
+                atts.put(sequence, revAtts);
+            }
+            revAtts.add(new SavedAttachment(name, revpos, sequence, key, type, file, Attachment.Encoding.values()[encoding]));
+        }
+    }
+
     private void copyCursorValuesToNewSequence(SQLDatabase db, Cursor c, long newSequence) {
         while (c.moveToNext()) {
             String filename = c.getString(1);
@@ -17,7 +17,6 @@
 
 package com.cloudant.sync.datastore;
 
-import com.cloudant.android.Base64InputStreamFactory;
 import com.cloudant.sync.notifications.DatabaseClosed;
 import com.cloudant.sync.notifications.DocumentCreated;
 import com.cloudant.sync.notifications.DocumentDeleted;
@@ -40,7 +39,6 @@ import com.google.common.eventbus.EventBus;
 
 import org.apache.commons.io.FilenameUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.SQLException;
@@ -51,6 +49,7 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -73,8 +72,17 @@ class BasicDatastore implements Datastore, DatastoreExtended {
             "SELECT " + FULL_DOCUMENT_COLS + " FROM revs, docs WHERE docs.docid=? AND revs.doc_id=docs.doc_id " +
                     "AND revid=? LIMIT 1";
 
-    public static final String SQL_CHANGE_IDS_SINCE_LIMIT = "SELECT doc_id, max(sequence) FROM revs " +
-            "WHERE sequence > ? AND sequence <= ? GROUP BY doc_id ";
+    // Walks revs in sequence order from since, keeping only each document's latest revision,
+    // so the limit applies to distinct documents rather than to a window of sequence numbers.
+    // The NOT EXISTS check is answered from the revs_current(doc_id, ...) index.
+    private static final String SQL_CHANGES_SINCE_LIMIT = "SELECT " + FULL_DOCUMENT_COLS +
+            ", changed.last_sequence FROM ( " +
+            "SELECT r.doc_id, r.sequence AS last_sequence FROM revs r WHERE r.sequence > ? " +
+            "AND NOT EXISTS (SELECT 1 FROM revs later WHERE later.doc_id = r.doc_id " +
+            "AND later.sequence > r.sequence) " +
+            "ORDER BY r.sequence LIMIT ? ) changed, revs, docs " +
+            "WHERE revs.doc_id = changed.doc_id AND revs.current = 1 " +
+            "AND docs.doc_id = changed.doc_id ORDER BY changed.last_sequence";
 
     // Limit of parameters (placeholders) one query can have.
     // SQLite has limit on the number of placeholders on a single query, default 999.
@@ -88,12 +96,34 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     final String datastoreDir;
     final String extensionsDir;
 
+    // Statements run for every revision written. Their SQL is constant so that the compiled
+    // statements are cached and reused by the database, see SQLDatabase#executeInsert.
+    private static final String SQL_INSERT_DOC = "INSERT INTO docs (docid) VALUES (?)";
+
+    private static final String SQL_INSERT_REV = "INSERT INTO revs " +
+            "(doc_id, revid, parent, current, deleted, available, json) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String SQL_UPDATE_REV_CURRENT =
+            "UPDATE revs SET current = ? WHERE sequence = ?";
+
     private static final String DB_FILE_NAME = "db.sync";
 
     //Single thread executor to esnure only one tread accesses the db
     private final SQLDatabaseQueue queue;
 
     public BasicDatastore(String dir, String name) throws SQLException, IOException, DatastoreException {
+        this(dir, name, 0);
+    }
+
+    /**
+     * Opens the datastore, using write-ahead logging and {@code readConnections} read-only
+     * connections for reads if {@code readConnections} is greater than 0.
+     *
+     * @see SQLDatabaseQueue#SQLDatabaseQueue(String, int)
+     */
+    public BasicDatastore(String dir, String name, int readConnections)
+            throws SQLException, IOException, DatastoreException {
         Preconditions.checkNotNull(dir);
         Preconditions.checkNotNull(name);
 
@@ -101,7 +131,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
         this.datastoreName = name;
         this.extensionsDir = FilenameUtils.concat(this.datastoreDir, "extensions");
         final String dbFilename = FilenameUtils.concat(this.datastoreDir, DB_FILE_NAME);
-        queue = new SQLDatabaseQueue(dbFilename);
+        queue = new SQLDatabaseQueue(dbFilename, readConnections);
         int dbVersion = queue.getVersion();
         if(dbVersion >= 100){
             throw new DatastoreException(String.format("Database version is higher than the version supported " +
@@ -327,6 +357,67 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
 
+    @Override
+    public Map<String, DocumentRevisionTree> getAllRevisionsOfDocuments(final List<String> docIds) {
+        Preconditions.checkState(this.isOpen(), "Database is closed");
+        Preconditions.checkNotNull(docIds, "Input document id list can not be null");
+
+        try {
+            return queue.submit(new SQLQueueCallable<Map<String, DocumentRevisionTree>>() {
+                @Override
+                public Map<String, DocumentRevisionTree> call(SQLDatabase db) throws Exception {
+                    Map<String, DocumentRevisionTree> trees = new HashMap<String, DocumentRevisionTree>();
+                    List<String> uniqueIds = new ArrayList<String>(new LinkedHashSet<String>(docIds));
+                    for (List<String> batch : Lists.partition(uniqueIds, SQLITE_QUERY_PLACEHOLDERS_LIMIT)) {
+                        getAllRevisionsOfDocumentsInQueue(db, batch, trees);
+                    }
+                    return trees;
+                }
+            }).get();
+        } catch (InterruptedException e) {
+            logger.log(Level.SEVERE, "Failed to get all revisions of documents", e);
+        } catch (ExecutionException e) {
+            logger.log(Level.SEVERE, "Failed to get all revisions of documents", e);
+        }
+        return null;
+    }
+
+    private void getAllRevisionsOfDocumentsInQueue(SQLDatabase db,
+                                                   List<String> docIds,
+                                                   Map<String, DocumentRevisionTree> trees)
+            throws AttachmentException, DatastoreException {
+        // Non-leaf revisions get an empty body rather than their JSON, which may be large
+        // and isn't needed to walk the tree (and may have been removed by compaction).
+        final String sql = "SELECT docs.docid, docs.doc_id, revid, sequence, " +
+                "CASE WHEN EXISTS (SELECT 1 FROM revs children WHERE children.parent = revs.sequence) " +
+                "THEN X'7B7D' ELSE json END AS json, current, deleted, parent FROM revs, docs " +
+                "WHERE docs.docid IN ( %s ) AND revs.doc_id = docs.doc_id ORDER BY sequence ASC";
+
+        Map<Long, List<SavedAttachment>> atts = attachmentManager.attachmentsForLeafRevisions(db, docIds);
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(String.format(sql, DatabaseUtils.makePlaceholders(docIds.size())),
+                    docIds.toArray(new String[docIds.size()]));
+            while (cursor.moveToNext()) {
+                List<SavedAttachment> revAtts = atts.get(cursor.getLong(3));
+                BasicDocumentRevision rev = getFullRevisionFromCurrentCursor(cursor,
+                        revAtts != null ? revAtts : Collections.<SavedAttachment>emptyList());
+                DocumentRevisionTree tree = trees.get(rev.getId());
+                if (tree == null) {
+                    tree = new DocumentRevisionTree();
+                    trees.put(rev.getId(), tree);
+                }
+                // sequence order adds each parent before its children
+                tree.add(rev);
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Error getting all revisions of documents", e);
+            throw new DatastoreException("Error getting all revisions of documents", e);
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
     @Override
     public Changes changes(long since,final int limit) {
         Preconditions.checkState(this.isOpen(), "Database is closed");
@@ -337,22 +428,36 @@ class BasicDatastore implements Datastore, DatastoreExtended {
             return queue.submit(new SQLQueueCallable<Changes>() {
                 @Override
                 public Changes call(SQLDatabase db) throws Exception {
-                    String[] args = {Long.toString(verifiedSince), Long.toString(verifiedSince + limit)};
+                    String[] args = {Long.toString(verifiedSince), Integer.toString(limit)};
                     Cursor cursor = null;
                     try {
-                        Long lastSequence = verifiedSince;
-                        List<Long> ids = new ArrayList<Long>();
-                        cursor = db.rawQuery(SQL_CHANGE_IDS_SINCE_LIMIT, args);
+                        long lastSequence = verifiedSince;
+                        List<DocumentRevisionBuilder> builders = new ArrayList<DocumentRevisionBuilder>();
+                        List<Long> sequences = new ArrayList<Long>();
+                        cursor = db.rawQuery(SQL_CHANGES_SINCE_LIMIT, args);
                         while (cursor.moveToNext()) {
-                            ids.add(cursor.getLong(0));
-                            lastSequence = Math.max(lastSequence, cursor.getLong(1));
+                            builders.add(getRevisionBuilderFromCurrentCursor(cursor));
+                            sequences.add(cursor.getLong(3));
+                            lastSequence = Math.max(lastSequence,
+                                    cursor.getLong(cursor.getColumnIndex("last_sequence")));
                         }
-                        List<BasicDocumentRevision> results = getDocumentsWithInternalIdsInQueue(db, ids);
-                        if(results.size() != ids.size()) {
-                            throw new IllegalStateException("The number of document does not match number of ids, " +
-                                    "something must be wrong here.");
+
+                        // load the attachments of the whole page at once, rather than a
+                        // query per revision
+                        Map<Long, List<SavedAttachment>> atts =
+                                new HashMap<Long, List<SavedAttachment>>();
+                        for (List<Long> batch : Lists.partition(sequences,
+                                SQLITE_QUERY_PLACEHOLDERS_LIMIT)) {
+                            atts.putAll(attachmentManager.attachmentsForRevisions(db, batch));
                         }
 
+                        List<BasicDocumentRevision> results =
+                                new ArrayList<BasicDocumentRevision>(builders.size());
+                        for (int i = 0; i < builders.size(); i++) {
+                            List<SavedAttachment> revAtts = atts.get(sequences.get(i));
+                            results.add(builders.get(i).setAttachments(revAtts != null ? revAtts :
+                                    Collections.<SavedAttachment>emptyList()).build());
+                        }
                         return new Changes(lastSequence, results);
                     } catch (SQLException e) {
                         throw new IllegalStateException("Error querying all changes since: " + verifiedSince + ", limit: " + limit, e);
@@ -656,7 +761,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
     private void validateDBBody(DocumentBody body) {
-        for(String name : body.asMap().keySet()) {
+        for(String name : DocumentBodyFactory.asReadOnlyMap(body).keySet()) {
             if(name.startsWith("_")) {
                 throw new InvalidDocumentException("Field name start with '_' is not allowed. ");
             }
@@ -794,7 +899,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
                 "Input document id can not be empty");
 
         try {
-            queue.submit(new SQLQueueCallable<Object>() {
+            queue.submitWrite(new SQLQueueCallable<Object>() {
                 @Override
                 public Object call(SQLDatabase db) throws Exception {
                     String[] whereArgs = {docId};
@@ -814,9 +919,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
     private long insertDocumentID(SQLDatabase db, String docId) {
-        ContentValues args = new ContentValues();
-        args.put("docid", docId);
-        return db.insert("docs", args);
+        return db.executeInsert(SQL_INSERT_DOC, new Object[]{docId});
     }
 
     private  class InsertRevisionOptions {
@@ -856,19 +959,18 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     private long insertRevision(SQLDatabase db,InsertRevisionOptions options) {
 
         long newSequence;
-            ContentValues args = new ContentValues();
-            args.put("doc_id", options.docNumericId);
-            args.put("revid", options.revId);
-            // parent field is a foreign key
-            if (options.parentSequence > 0) {
-                args.put("parent", options.parentSequence);
-            }
-            args.put("current", options.current);
-            args.put("deleted", options.deleted);
-            args.put("available", options.available);
-            args.put("json", options.data);
+            Object[] args = new Object[]{
+                    options.docNumericId,
+                    options.revId,
+                    // parent field is a foreign key
+                    options.parentSequence > 0 ? options.parentSequence : null,
+                    options.current,
+                    options.deleted,
+                    options.available,
+                    options.data
+            };
             logger.fine("New revision inserted: " + options.docNumericId + ", " + options.revId);
-            newSequence = db.insert("revs", args);
+            newSequence = db.executeInsert(SQL_INSERT_REV, args);
             if (newSequence < 0) {
                 throw new IllegalStateException("Unknown error inserting new updated doc, please check log");
             }
@@ -900,7 +1002,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
             if (cursor.moveToFirst()) {
                 byte[] json = cursor.getBlob(0);
 
-                return new LocalDocument(docId,BasicDocumentBody.bodyWith(json));
+                return new LocalDocument(docId,BasicDocumentBody.trustedBodyWith(json));
             } else {
                 throw new DocumentNotFoundException(String.format("No local document found with id: %s", docId));
             }
@@ -971,6 +1073,51 @@ class BasicDatastore implements Datastore, DatastoreExtended {
                             final boolean pullAttachmentsInline) throws DocumentException {
         Preconditions.checkState(this.isOpen(), "Database is closed");
         Preconditions.checkNotNull(rev, "Input document revision can not be null");
+        this.forceInsert(Collections.singletonList(new ForceInsertItem(rev, revisionHistory,
+                attachments, preparedAttachments, pullAttachmentsInline)));
+    }
+
+    @Override
+    public void forceInsert(final List<ForceInsertItem> items) throws DocumentException {
+        Preconditions.checkState(this.isOpen(), "Database is closed");
+        Preconditions.checkNotNull(items, "Input items can not be null");
+        for (ForceInsertItem item : items) {
+            validateForceInsertItem(item);
+        }
+
+        try {
+            List<Object> events = queue.submitTransaction(new SQLQueueCallable<List<Object>>(){
+                @Override
+                public List<Object> call(SQLDatabase db) throws Exception {
+                    List<Object> events = new ArrayList<Object>();
+                    for (ForceInsertItem item : items) {
+                        Object event = doForceInsertInQueue(db, item);
+                        if (event != null) {
+                            events.add(event);
+                        }
+                    }
+                    return events;
+                }
+            }).get();
+
+            // only tell subscribers about the revisions once they are all committed
+            for (Object event : events) {
+                eventBus.post(event);
+            }
+
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new DocumentException(e);
+        }
+
+    }
+
+    private void validateForceInsertItem(ForceInsertItem item) {
+        Preconditions.checkNotNull(item, "Input item can not be null");
+        BasicDocumentRevision rev = item.rev;
+        List<String> revisionHistory = item.revisionHistory;
+        Preconditions.checkNotNull(rev, "Input document revision can not be null");
         Preconditions.checkNotNull(revisionHistory, "Input revision history must not be null");
         Preconditions.checkArgument(revisionHistory.size() > 0, "Input revision history must not be empty");
         Preconditions.checkArgument(checkCurrentRevisionIsInRevisionHistory(rev, revisionHistory),
@@ -982,128 +1129,121 @@ class BasicDatastore implements Datastore, DatastoreExtended {
 
         logger.finer("forceInsert(): " + rev.toString() + ",\n" + JSONUtils.toPrettyJson
                 (revisionHistory));
+    }
 
-        try {
-            Object event = queue.submitTransaction(new SQLQueueCallable<Object>(){
-                @Override
-                public Object call(SQLDatabase db) throws Exception{
-                    DocumentCreated documentCreated = null;
-                    DocumentUpdated documentUpdated = null;
+    /**
+     * Inserts a single revision as part of a {@code forceInsert} transaction.
+     *
+     * @return the event to post once the transaction commits, or null
+     */
+    private Object doForceInsertInQueue(SQLDatabase db, ForceInsertItem item) throws Exception {
+        BasicDocumentRevision rev = item.rev;
+        List<String> revisionHistory = item.revisionHistory;
+        Map<String, Object> attachments = item.attachments;
+        Map<String[],List<PreparedAttachment>> preparedAttachments = item.preparedAttachments;
+        boolean pullAttachmentsInline = item.pullAttachmentsInline;
 
-                    boolean ok = true;
+        DocumentCreated documentCreated = null;
+        DocumentUpdated documentUpdated = null;
 
-                    long seq = 0;
+        boolean ok = true;
 
+        long seq = 0;
 
-                    // sequence here is -1, but we need it to insert the attachment - also might
-                    // be wanted by subscribers
-                    BasicDocumentRevision revisionFromDB = null;
-                    try {
-                        revisionFromDB = getDocumentInQueue(db,rev.getId(),null);
-                    } catch (DocumentNotFoundException e){
-                        // this is expected since this method is normally used by replication
-                        // we may be missing the document from our copy
-                    }
 
-                    if (revisionFromDB != null) {
-                        seq = doForceInsertExistingDocumentWithHistory(db, rev, revisionHistory,
-                                attachments);
-                        rev.initialiseSequence(seq);
-                        // TODO fetch the parent doc?
-                        documentUpdated = new DocumentUpdated(null, rev);
-                    } else {
-                        seq = doForceInsertNewDocumentWithHistory(db, rev, revisionHistory);
-                        rev.initialiseSequence(seq);
-                        documentCreated = new DocumentCreated(rev);
-                    }
+        // sequence here is -1, but we need it to insert the attachment - also might
+        // be wanted by subscribers
+        BasicDocumentRevision revisionFromDB = null;
+        try {
+            revisionFromDB = getDocumentInQueue(db,rev.getId(),null);
+        } catch (DocumentNotFoundException e){
+            // this is expected since this method is normally used by replication
+            // we may be missing the document from our copy
+        }
 
-                    // now deal with any attachments
-                    if (pullAttachmentsInline) {
-                        if (attachments != null) {
-                            for (String att : attachments.keySet()) {
-                                Boolean stub = ((Map<String, Boolean>) attachments.get(att)).get
-                                        ("stub");
-                                if (stub != null && stub.booleanValue()) {
-                                    // stubs get copied forward at the end of
-                                    // insertDocumentHistoryIntoExistingTree - nothing to do here
-                                    continue;
-                                }
-                                String data = (String) ((Map<String,
-                                        Object>) attachments.get(att)).get("data");
-                                InputStream is = Base64InputStreamFactory.get(new
-                                        ByteArrayInputStream(data.getBytes()));
-                                String type = (String) ((Map<String,
-                                        Object>) attachments.get(att)).get("content_type");
-                                // inline attachments are automatically decompressed,
-                                // so we don't have to worry about that
-                                UnsavedStreamAttachment usa = new UnsavedStreamAttachment(is,
-                                        att, type);
-                                try {
-                                    PreparedAttachment pa = prepareAttachment(usa);
-                                    attachmentManager.addAttachment(db, pa, rev);
-                                } catch (Exception e) {
-                                    logger.log(Level.SEVERE, "There was a problem adding the " +
-                                                    "attachment "
-                                                    + usa + "to the datastore for document " + rev,
-                                            e);
-                                    throw e;
-                                }
-                            }
-                        }
-                    } else {
+        if (revisionFromDB != null) {
+            seq = doForceInsertExistingDocumentWithHistory(db, rev, revisionHistory,
+                    attachments);
+            rev.initialiseSequence(seq);
+            // TODO fetch the parent doc?
+            documentUpdated = new DocumentUpdated(null, rev);
+        } else {
+            seq = doForceInsertNewDocumentWithHistory(db, rev, revisionHistory);
+            rev.initialiseSequence(seq);
+            documentCreated = new DocumentCreated(rev);
+        }
+
+        // now deal with any attachments
+        if (pullAttachmentsInline) {
+            if (attachments != null) {
+                for (String att : attachments.keySet()) {
+                    Boolean stub = ((Map<String, Boolean>) attachments.get(att)).get
+                            ("stub");
+                    if (stub != null && stub.booleanValue()) {
+                        // stubs get copied forward at the end of
+                        // insertDocumentHistoryIntoExistingTree - nothing to do here
+                        continue;
+                    }
+                    InputStream is = Attachment.inlineDataStream(((Map<String,
+                            Object>) attachments.get(att)).get("data"));
+                    String type = (String) ((Map<String,
+                            Object>) attachments.get(att)).get("content_type");
+                    // inline attachments are automatically decompressed,
+                    // so we don't have to worry about that
+                    UnsavedStreamAttachment usa = new UnsavedStreamAttachment(is,
+                            att, type);
+                    try {
+                        PreparedAttachment pa = prepareAttachment(usa);
+                        attachmentManager.addAttachment(db, pa, rev);
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE, "There was a problem adding the " +
+                                        "attachment "
+                                        + usa + "to the datastore for document " + rev,
+                                e);
+                        throw e;
+                    }
+                }
+            }
+        } else {
 
+            try {
+                if (preparedAttachments != null) {
+                    for (String[] key : preparedAttachments.keySet()) {
+                        String id = key[0];
+                        String revId = key[1];
                         try {
-                            if (preparedAttachments != null) {
-                                for (String[] key : preparedAttachments.keySet()) {
-                                    String id = key[0];
-                                    String rev = key[1];
-                                    try {
-                                        BasicDocumentRevision doc = getDocumentInQueue(db, id, rev);
-                                        if (doc != null) {
-                                            for (PreparedAttachment att : preparedAttachments.get
-                                                    (key)) {
-                                                attachmentManager.addAttachment(db, att, doc);
-                                            }
-                                        }
-                                    } catch (DocumentNotFoundException e){
-                                        //safe to continue, previously getDocumentInQueue could return
-                                        // null and this was deemed safe and expected behaviour
-                                        // DocumentNotFoundException is thrown instead of returning
-                                        // null now.
-                                        continue;
-                                    }
+                            BasicDocumentRevision doc = getDocumentInQueue(db, id, revId);
+                            if (doc != null) {
+                                for (PreparedAttachment att : preparedAttachments.get
+                                        (key)) {
+                                    attachmentManager.addAttachment(db, att, doc);
                                 }
                             }
-                        } catch (Exception e) {
-                            logger.log(Level.SEVERE, "There was a problem adding an " +
-                                    "attachment to the datastore", e);
-                            throw e;
-                        }
-
-                    }
-                    if (ok) {
-                        logger.log(Level.FINER, "Inserted revision: %s", rev);
-                        if (documentCreated != null) {
-                            return documentCreated;
-                        } else if (documentUpdated != null) {
-                            return documentUpdated;
+                        } catch (DocumentNotFoundException e){
+                            //safe to continue, previously getDocumentInQueue could return
+                            // null and this was deemed safe and expected behaviour
+                            // DocumentNotFoundException is thrown instead of returning
+                            // null now.
+                            continue;
                         }
                     }
-                    return null;
                 }
-            }).get();
-
-            if(event != null) {
-                eventBus.post(event);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "There was a problem adding an " +
+                        "attachment to the datastore", e);
+                throw e;
             }
 
-
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
-        } catch (ExecutionException e) {
-            throw new DocumentException(e);
         }
-
+        if (ok) {
+            logger.log(Level.FINER, "Inserted revision: %s", rev);
+            if (documentCreated != null) {
+                return documentCreated;
+            } else if (documentUpdated != null) {
+                return documentUpdated;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -1355,16 +1495,13 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
     private void changeDocumentToBeNotCurrent(SQLDatabase db, long sequence) {
-        ContentValues args = new ContentValues();
-        args.put("current", 0);
-        String[] whereArgs = {Long.toString(sequence)};
-        db.update("revs", args, "sequence=?", whereArgs);
+        updateCurrent(db, sequence, false);
     }
 
     @Override
     public void compact() {
         try {
-            queue.submit(new SQLQueueCallable<Object>() {
+            queue.submitWrite(new SQLQueueCallable<Object>() {
                 @Override
                 public Object call(SQLDatabase db) {
                     logger.finer("Deleting JSON of old revisions...");
@@ -1651,14 +1788,26 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
     private void setCurrent(SQLDatabase db,BasicDocumentRevision winner, boolean currentValue) {
-        ContentValues updateContent = new ContentValues();
-        updateContent.put("current", currentValue ? 1 : 0);
-        String[] whereArgs = new String[]{String.valueOf(winner.getSequence())};
-        db.update("revs", updateContent, "sequence=?", whereArgs);
+        updateCurrent(db, winner.getSequence(), currentValue);
+    }
+
+    private void updateCurrent(SQLDatabase db, long sequence, boolean currentValue) {
+        // a failed update must roll back the transaction, or the document could be left
+        // with no current revision or with two
+        int updated = db.executeUpdateDelete(SQL_UPDATE_REV_CURRENT,
+                new Object[]{currentValue ? 1 : 0, sequence});
+        if (updated < 0) {
+            throw new IllegalStateException("Error setting current flag of revision with " +
+                    "sequence " + sequence + ", please check log");
+        }
     }
 
     private static BasicDocumentRevision getFullRevisionFromCurrentCursor(Cursor cursor,
                                                                           List<? extends Attachment> attachments) {
+        return getRevisionBuilderFromCurrentCursor(cursor).setAttachments(attachments).build();
+    }
+
+    private static DocumentRevisionBuilder getRevisionBuilderFromCurrentCursor(Cursor cursor) {
         String docId = cursor.getString(cursor.getColumnIndex("docid"));
         long internalId = cursor.getLong(cursor.getColumnIndex("doc_id"));
         String revId = cursor.getString(cursor.getColumnIndex("revid"));
@@ -1678,15 +1827,14 @@ class BasicDatastore implements Datastore, DatastoreExtended {
         DocumentRevisionBuilder builder = new DocumentRevisionBuilder()
                 .setDocId(docId)
                 .setRevId(revId)
-                .setBody(BasicDocumentBody.bodyWith(json))
+                .setBody(BasicDocumentBody.trustedBodyWith(json))
                 .setDeleted(deleted)
                 .setSequence(sequence)
                 .setInternalId(internalId)
                 .setCurrent(current)
-                .setParent(parent)
-                .setAttachments(attachments);
+                .setParent(parent);
 
-        return builder.build();
+        return builder;
     }
 
 
@@ -1700,7 +1848,7 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     public void addAttachment(final PreparedAttachment att, final BasicDocumentRevision rev) throws AttachmentException {
 
         try {
-            queue.submit(new SQLQueueCallable<Object>(){
+            queue.submitWrite(new SQLQueueCallable<Object>(){
                 @Override
                 public Object call(SQLDatabase db) throws Exception {
                     attachmentManager.addAttachment(db,att, rev);
@@ -1926,6 +2074,6 @@ class BasicDatastore implements Datastore, DatastoreExtended {
     }
 
     <T> Future<T> runOnDbQueue(SQLQueueCallable<T> callable){
-        return queue.submit(callable);
+        return queue.submitWrite(callable);
     }
 }
@@ -20,7 +20,10 @@ package com.cloudant.sync.datastore;
 import com.cloudant.sync.util.JSONUtils;
 import com.google.common.base.Preconditions;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -28,10 +31,15 @@ final class BasicDocumentBody implements DocumentBody {
 
     private byte[] bytes;
     private Map<String, Object> map;
+    private Map<String, Object> readOnlyMap;
 
     protected BasicDocumentBody(byte[] bytes) {
+        this(bytes, false);
+    }
+
+    private BasicDocumentBody(byte[] bytes, boolean trusted) {
         assert bytes != null;
-        if(JSONUtils.isValidJSON(bytes)) {
+        if(trusted || JSONUtils.isValidJSON(bytes)) {
             this.bytes = bytes;
         } else {
             throw new IllegalArgumentException("Input bytes is not valid json data.");
@@ -55,16 +63,59 @@ final class BasicDocumentBody implements DocumentBody {
         return new BasicDocumentBody(map);
     }
 
+    /**
+     * <p>Returns a body for JSON which is already known to be valid, such as
+     * JSON read back from the datastore's database, without parsing it.</p>
+     *
+     * <p>The body keeps a reference to {@code bytes} rather than a copy, so
+     * the caller mustn't modify them afterwards.</p>
+     */
+    static DocumentBody trustedBodyWith(byte[] bytes) {
+        // the JSON of compacted revisions is NULL in the database
+        Preconditions.checkNotNull(bytes, "Document body JSON must not be null");
+        return new BasicDocumentBody(bytes, true);
+    }
+
     @Override
     public byte[] asBytes() {
         byte[] jsonCopy = getJsonBytes();
         return Arrays.copyOf(jsonCopy, jsonCopy.length);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * <p>Returns a stream of the data's JSON.</p>
+     *
+     * <p>The stream reads the data directly rather than a copy of it, so is
+     * the cheaper way to read a body which is only going to be parsed.</p>
+     *
+     * @see DocumentBodyFactory#asInputStream(DocumentBody)
+     */
+    public InputStream asInputStream() {
+        return new ByteArrayInputStream(getJsonBytes());
+    }
+
+    /**
+     * <p>Returns a shallow copy of the data as a map, as {@link DocumentBody#asMap()}
+     * promises; callers such as {@link BasicDocumentRevision} add their own fields to it.</p>
+     */
     @Override
     public Map<String, Object> asMap() {
-        return (Map<String,Object>) getMapObject();
+        return new HashMap<String, Object>(getMapObject());
+    }
+
+    /**
+     * <p>Returns an unmodifiable view of the data as a map.</p>
+     *
+     * <p>The view is created once, rather than copying the data on every call like
+     * {@link #asMap()}, so is the cheaper way to read fields from a body.</p>
+     *
+     * @see DocumentBodyFactory#asReadOnlyMap(DocumentBody)
+     */
+    public Map<String, Object> asReadOnlyMap() {
+        if (readOnlyMap == null) {
+            readOnlyMap = Collections.unmodifiableMap(getMapObject());
+        }
+        return readOnlyMap;
     }
 
     @Override
@@ -83,16 +134,15 @@ final class BasicDocumentBody implements DocumentBody {
             assert map != null;
             bytes = JSONUtils.serializeAsBytes(map);
         }
-        return bytes.clone();
+        return bytes;
     }
 
-    private Map getMapObject() {
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getMapObject() {
         if(map == null) {
             assert bytes != null;
             map = JSONUtils.deserialize(bytes);
         }
-
-        // Return a shallow copy
-        return new HashMap(map);
+        return map;
     }
 }
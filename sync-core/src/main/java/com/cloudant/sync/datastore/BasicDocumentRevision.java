@@ -18,7 +18,6 @@
 package com.cloudant.sync.datastore;
 
 import com.cloudant.sync.util.CouchUtils;
-import com.cloudant.sync.util.JSONUtils;
 
 import java.util.Collections;
 import java.util.HashMap;
@@ -98,7 +97,7 @@ public class BasicDocumentRevision implements DocumentRevision, Comparable<Basic
 
         this.id = docId;
         this.revision = revId;
-        this.body = BasicDocumentBody.bodyWith(JSONUtils.EMPTY_JSON);
+        this.body = DocumentBodyFactory.EMPTY;
     }
 
     /**
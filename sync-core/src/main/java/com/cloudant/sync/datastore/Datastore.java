@@ -179,13 +179,16 @@ public interface Datastore {
     public int getDocumentCount();
 
     /**
-     * <p>Returns a list of changed documents, from {@code since} to
-     * {@code since + limit}, inclusive.</p>
+     * <p>Returns up to {@code limit} documents changed after {@code since}.</p>
+     *
+     * <p>Each document appears once, with its current revision, ordered by
+     * the sequence number of the document's latest change. The last sequence
+     * number of the change set is the latest of these, so passing it as
+     * {@code since} to the next call returns the following changes.</p>
      *
      * @param since the lower bound (exclusive) of the change set
      *              sequence number
-     * @param limit {@code since + limit} is the upper bound (inclusive) of the
-     *              change set sequence number
+     * @param limit the maximum number of documents in the change set
      * @return list of the documents and last sequence number of the change set
      *      (checkpoint)
      */
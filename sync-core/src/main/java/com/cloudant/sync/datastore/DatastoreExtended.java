@@ -78,6 +78,26 @@ public interface DatastoreExtended extends Datastore {
      */
     public DocumentRevisionTree getAllRevisionsOfDocument(String documentId);
 
+    /**
+     * <p>Returns the {@code DocumentRevisionTree}s of several documents,
+     * keyed by document ID.</p>
+     *
+     * <p>The trees are loaded with a constant number of queries for each
+     * few hundred documents, rather than with several queries per document.
+     * Only the leaf revisions have their body and attachments loaded; the
+     * other revisions in the trees have an empty body and no attachments.
+     * This is what replication needs to push the leaf revisions along with
+     * their revision histories.</p>
+     *
+     * <p>Documents which don't exist are left out of the returned map.</p>
+     *
+     * @param documentIds ids of the documents
+     * @return map of document id to the {@code DocumentRevisionTree} of the document
+     *
+     * @see DatastoreExtended#getAllRevisionsOfDocument(String)
+     */
+    public Map<String, DocumentRevisionTree> getAllRevisionsOfDocuments(List<String> documentIds);
+
     /**
      * <p>Inserts a revision of a document with an existing revision ID and
      * revision history.</p>
@@ -131,6 +151,26 @@ public interface DatastoreExtended extends Datastore {
                             Map<String[],List<PreparedAttachment>> preparedAttachments,
                             boolean pullAttachmentsInline) throws DocumentException;
 
+    /**
+     * <p>Inserts several revisions of documents with existing revision IDs,
+     * all in a single database transaction.</p>
+     *
+     * <p>Each item is inserted as by
+     * {@link DatastoreExtended#forceInsert(BasicDocumentRevision, java.util.List, java.util.Map, java.util.Map, boolean)},
+     * in the order given. If any item fails, none of the items are inserted.</p>
+     *
+     * <p>Once the transaction has committed, an event is posted on the event
+     * bus for each inserted revision, as for the single revision version.</p>
+     *
+     * <p>This method should only be called by the replicator, which uses it to
+     * avoid committing a transaction per revision during pull replication.</p>
+     *
+     * @param items the revisions to insert
+     *
+     * @see Datastore#getEventBus()
+     */
+    public void forceInsert(List<ForceInsertItem> items) throws DocumentException;
+
     /**
      * <p>Inserts a revision of a document with an existing revision ID</p>
      *
@@ -67,6 +67,8 @@ public class DatastoreManager {
 
     private final EventBus eventBus = new EventBus();
 
+    private volatile int readConnections = 0;
+
     /**
      * <p>Constructs a {@code DatastoreManager} to manage a directory.</p>
      *
@@ -104,6 +106,36 @@ public class DatastoreManager {
         this.path = directoryPath.getAbsolutePath();
     }
 
+    /**
+     * <p>Sets the number of read-only database connections used by datastores
+     * opened by this manager from now on.</p>
+     *
+     * <p>When greater than 0, datastores use SQLite's write-ahead logging, so
+     * that reads run on their own connections concurrently with each other
+     * and with writes, which are still made one at a time. The default, 0,
+     * uses a single connection for all reads and writes.</p>
+     *
+     * @param readConnections number of read-only connections for each datastore
+     *
+     * @throws IllegalArgumentException if {@code readConnections} is negative
+     */
+    public void setReadConnections(int readConnections) {
+        if (readConnections < 0) {
+            throw new IllegalArgumentException("readConnections must not be negative");
+        }
+        this.readConnections = readConnections;
+    }
+
+    /**
+     * @return the number of read-only database connections used by datastores
+     * opened by this manager
+     *
+     * @see DatastoreManager#setReadConnections(int)
+     */
+    public int getReadConnections() {
+        return readConnections;
+    }
+
     /**
      * Lists all the names of {@link com.cloudant.sync.datastore.Datastore Datastores} managed by this DatastoreManager
      *
@@ -219,7 +251,7 @@ public class DatastoreManager {
             logger.info("dbDirectoryExist: " + dbDirectoryExist);
             // dbDirectory will created in BasicDatastore constructor
             // if it does not exist
-            BasicDatastore ds = new BasicDatastore(dbDirectory, dbName);
+            BasicDatastore ds = new BasicDatastore(dbDirectory, dbName, readConnections);
             if(!dbDirectoryExist) {
                 this.eventBus.post(new DatabaseCreated(dbName));
             }
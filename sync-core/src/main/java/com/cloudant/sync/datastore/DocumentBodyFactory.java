@@ -16,6 +16,9 @@ package com.cloudant.sync.datastore;
 
 import com.cloudant.sync.util.JSONUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -47,4 +50,37 @@ public class DocumentBodyFactory {
     public static DocumentBody create(Map map) {
         return new BasicDocumentBody(map);
     }
+
+    /**
+     * <p>Returns a stream of a {@link DocumentBody}'s JSON.</p>
+     *
+     * <p>For bodies created by this factory, or read from a datastore, the
+     * stream reads the body's data directly rather than a copy of it, so is
+     * the cheaper way to read a body which is only going to be parsed.</p>
+     * @param body the document body
+     * @return stream of the body's JSON
+     */
+    public static InputStream asInputStream(DocumentBody body) {
+        if (body instanceof BasicDocumentBody) {
+            return ((BasicDocumentBody) body).asInputStream();
+        }
+        return new ByteArrayInputStream(body.asBytes());
+    }
+
+    /**
+     * <p>Returns a read-only view of a {@link DocumentBody}'s data as a map.</p>
+     *
+     * <p>For bodies created by this factory, or read from a datastore, the
+     * view is created once rather than copying the data on every call like
+     * {@link DocumentBody#asMap()}, so is the cheaper way to read fields from
+     * a body. Nested values mustn't be modified.</p>
+     * @param body the document body
+     * @return unmodifiable map of the body's data
+     */
+    public static Map<String, Object> asReadOnlyMap(DocumentBody body) {
+        if (body instanceof BasicDocumentBody) {
+            return ((BasicDocumentBody) body).asReadOnlyMap();
+        }
+        return Collections.unmodifiableMap(body.asMap());
+    }
 }
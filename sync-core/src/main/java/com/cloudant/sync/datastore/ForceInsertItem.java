@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.datastore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A single revision to be inserted by
+ * {@link DatastoreExtended#forceInsert(java.util.List)}.</p>
+ *
+ * <p>The fields have the same meaning as the arguments of
+ * {@link DatastoreExtended#forceInsert(BasicDocumentRevision, java.util.List, java.util.Map,
+ * java.util.Map, boolean)}.</p>
+ */
+public class ForceInsertItem {
+
+    public final BasicDocumentRevision rev;
+    public final List<String> revisionHistory;
+    public final Map<String, Object> attachments;
+    public final Map<String[], List<PreparedAttachment>> preparedAttachments;
+    public final boolean pullAttachmentsInline;
+
+    public ForceInsertItem(BasicDocumentRevision rev,
+                           List<String> revisionHistory,
+                           Map<String, Object> attachments,
+                           Map<String[], List<PreparedAttachment>> preparedAttachments,
+                           boolean pullAttachmentsInline) {
+        this.rev = rev;
+        this.revisionHistory = revisionHistory;
+        this.attachments = attachments;
+        this.preparedAttachments = preparedAttachments;
+        this.pullAttachmentsInline = pullAttachmentsInline;
+    }
+}
@@ -14,14 +14,13 @@
 
 package com.cloudant.sync.datastore;
 
-import com.cloudant.sync.util.Misc;
-
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.UUID;
 
 /**
@@ -35,6 +34,8 @@ public class PreparedAttachment {
     /**
      * Prepare an attachment by copying it to a temp location and calculating its sha1.
      *
+     * The sha1 is calculated as the attachment is copied, so the attachment is only read once.
+     *
      * @param attachment The attachment to prepare
      * @param attachmentsDir The 'BLOB store' or location where attachments are stored for this database
      * @throws AttachmentNotSavedException
@@ -43,15 +44,16 @@ public class PreparedAttachment {
                               String attachmentsDir) throws AttachmentException {
         this.attachment = attachment;
         this.tempFile = new File(attachmentsDir, "temp" + UUID.randomUUID());
-        FileInputStream tempFileIS = null;
         try {
-            FileUtils.copyInputStreamToFile(attachment.getInputStream(), tempFile);
-            this.sha1 = Misc.getSha1((tempFileIS = new FileInputStream(tempFile)));
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            // copyInputStreamToFile closes the attachment's stream once copied
+            FileUtils.copyInputStreamToFile(
+                    new DigestInputStream(attachment.getInputStream(), sha1), tempFile);
+            this.sha1 = sha1.digest();
         } catch (IOException e) {
             throw new AttachmentNotSavedException(e);
-        } finally {
-            //ensure the temp file is closed after calculating the hash
-            IOUtils.closeQuietly(tempFileIS);
+        } catch (NoSuchAlgorithmException e) {
+            throw new AttachmentNotSavedException(e);
         }
     }
 
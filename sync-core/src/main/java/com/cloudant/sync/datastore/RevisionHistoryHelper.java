@@ -14,17 +14,18 @@
 
 package com.cloudant.sync.datastore;
 
-import com.cloudant.android.Base64OutputStreamFactory;
 import com.cloudant.common.CouchConstants;
 import com.cloudant.mazha.DocumentRevs;
 import com.cloudant.sync.replication.PushAttachmentsInline;
 import com.cloudant.sync.util.CouchUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
 import com.google.common.base.Preconditions;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
@@ -209,7 +210,8 @@ public class RevisionHistoryHelper {
 
     /**
      * Add attachment entries to the _attachments dictionary of the revision
-     * If the attachment should be inlined, then insert the attachment data as a base64 string
+     * If the attachment should be inlined, then insert the attachment data, which is base64
+     * encoded as it is serialised, see {@link InlineAttachmentData}
      * If it isn't inlined, set follows=true to show it will be included in the multipart/related
      */
     private static void addAttachments(List<? extends Attachment> attachments,
@@ -229,25 +231,10 @@ public class RevisionHistoryHelper {
                         theAtt.put("follows", true);
                     } else {
                         theAtt.put("follows", false);
-                        // base64 encode this attachment
-                        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                        OutputStream bos = Base64OutputStreamFactory.get(baos);
-                        InputStream fis = savedAtt.getInputStream();
-                        int bufSiz = 1024;
-                        byte[] buf = new byte[bufSiz];
-                        int n = 0;
-                        do {
-                            n = fis.read(buf);
-                            if (n > 0) {
-                                bos.write(buf, 0, n);
-                            }
-                        } while (n > 0);
-                        // out of paranoia, close and flush - docs don't say what you have to do to
-                        // ensure all base64 is written, but close seems to do the right thing with
-                        // the apache codec implementation
-                        bos.flush();
-                        bos.close();
-                        theAtt.put("data", baos.toString());  //base64 of data
+                        // check the attachment can be read now, so an unreadable attachment is
+                        // skipped rather than failing the request it is being serialised into
+                        savedAtt.getInputStream().close();
+                        theAtt.put("data", new InlineAttachmentData(savedAtt));
                     }
                     theAtt.put("length", savedAtt.getSize());
                     theAtt.put("content_type", savedAtt.type);
@@ -268,6 +255,39 @@ public class RevisionHistoryHelper {
         }
     }
 
+    /**
+     * The data of an inline attachment, which is base64 encoded straight from the attachment
+     * file to the JSON generator when it is serialised. This means that pushing an inline
+     * attachment only needs the generator's buffer, rather than several copies of the
+     * attachment in memory.
+     */
+    private static class InlineAttachmentData implements JsonSerializable {
+
+        private final Attachment attachment;
+
+        InlineAttachmentData(Attachment attachment) {
+            this.attachment = attachment;
+        }
+
+        @Override
+        public void serialize(JsonGenerator jgen, SerializerProvider provider)
+                throws IOException {
+            InputStream is = attachment.getInputStream();
+            try {
+                // -1 as the length of decompressed data isn't known until it has been read
+                jgen.writeBinary(is, -1);
+            } finally {
+                is.close();
+            }
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator jgen, SerializerProvider provider,
+                                      TypeSerializer typeSer) throws IOException {
+            serialize(jgen, provider);
+        }
+    }
+
     private static Map<String, Object> createRevisions(List<BasicDocumentRevision> history) {
         BasicDocumentRevision currentNode = history.get(0);
         int start = CouchUtils.generationFromRevId(currentNode.getRevision());
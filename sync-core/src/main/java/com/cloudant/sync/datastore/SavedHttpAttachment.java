@@ -13,7 +13,6 @@
  */
 package com.cloudant.sync.datastore;
 
-import com.cloudant.android.Base64InputStreamFactory;
 import com.cloudant.http.Http;
 import com.cloudant.http.HttpConnection;
 
@@ -52,13 +51,12 @@ public class SavedHttpAttachment extends Attachment {
          super(name, (String)attachmentData.get("content_type"), Encoding.Plain);
          Boolean stub = (Boolean) attachmentData.get("stub");
          Number length = (Number)attachmentData.get("length");
-         String data = (String)attachmentData.get("data");
          String encoding =  (String)attachmentData.get("encoding");
          this.encoding = Attachment.getEncodingFromString(encoding);
          if(!stub){
-            byte[] dataArray =  data.getBytes();
-            InputStream is = Base64InputStreamFactory.get(new ByteArrayInputStream(dataArray));
-            this.data = IOUtils.toByteArray(is);
+            Object data = attachmentData.get("data");
+            this.data = (data instanceof byte[]) ? (byte[]) data :
+                    IOUtils.toByteArray(Attachment.inlineDataStream(data));
          }
 
          this.attachmentURI = attachmentURI;
@@ -32,6 +32,9 @@ import java.util.logging.Logger;
 
 /**
  *  Handles creating indexes for a given datastore.
+ *
+ *  New indexes are brought up to date as they are created, so callers must hold the
+ *  {@link IndexManager}'s update lock.
  */
 class IndexCreator {
 
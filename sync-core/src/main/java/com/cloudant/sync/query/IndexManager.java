@@ -37,10 +37,12 @@
 package com.cloudant.sync.query;
 
 import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.notifications.DocumentModified;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.sqlite.SQLDatabaseFactory;
 import com.cloudant.sync.util.DatabaseUtils;
+import com.google.common.eventbus.Subscribe;
 
 import java.io.File;
 import java.sql.SQLException;
@@ -54,6 +56,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -67,6 +73,11 @@ import java.util.regex.Pattern;
  *  - delete indexes
  *  - execute queries
  *  - update indexes (usually done automatically)
+ *
+ *  By default indexes are updated when a query is executed. Call
+ *  {@link #startBackgroundIndexing()} to have them updated in the background as
+ *  documents change instead, so that queries only need to index the changes
+ *  made since the last background update.
  */
 public class IndexManager {
 
@@ -77,6 +88,10 @@ public class IndexManager {
     private static final String EXTENSION_NAME = "com.cloudant.sync.query";
     private static final String INDEX_FIELD_NAME_PATTERN = "^[a-zA-Z][a-zA-Z0-9_]*$";
 
+    // Time between a document changing and the index update it triggers, so that changes
+    // made in quick succession, such as a replication's inserts, are indexed in one batch.
+    static final long BACKGROUND_INDEXING_DELAY_MS = 500;
+
     private static final Logger logger = Logger.getLogger(IndexManager.class.getName());
 
     private final Datastore datastore;
@@ -86,6 +101,12 @@ public class IndexManager {
 
     private boolean textSearchEnabled;
 
+    // held while indexes are created, updated or deleted, so background and query-time
+    // updates don't index the same changes at the same time
+    private final Object updateLock = new Object();
+
+    private BackgroundIndexer backgroundIndexer;  // guarded by this
+
     /**
      *  Constructs a new IndexManager which indexes documents in 'datastore'
      */
@@ -117,6 +138,7 @@ public class IndexManager {
     }
 
     public void close() {
+        stopBackgroundIndexing();
         try {
             queue.submit(new Runnable() {
                 @Override
@@ -229,10 +251,7 @@ public class IndexManager {
      *  @return name of created index
      */
     public String ensureIndexed(List<Object> fieldNames, String indexName) {
-        return IndexCreator.ensureIndexed(Index.getInstance(fieldNames, indexName),
-                                          database,
-                                          datastore,
-                                          queue);
+        return ensureIndexed(Index.getInstance(fieldNames, indexName));
     }
 
     /**
@@ -265,13 +284,14 @@ public class IndexManager {
                                 String indexName,
                                 String indexType,
                                 Map<String, String> indexSettings) {
-        return IndexCreator.ensureIndexed(Index.getInstance(fieldNames,
-                                                            indexName,
-                                                            indexType,
-                                                            indexSettings),
-                                          database,
-                                          datastore,
-                                          queue);
+        return ensureIndexed(Index.getInstance(fieldNames, indexName, indexType, indexSettings));
+    }
+
+    private String ensureIndexed(Index index) {
+        // creating an index also brings it up to date, which mustn't race a background update
+        synchronized (updateLock) {
+            return IndexCreator.ensureIndexed(index, database, datastore, queue);
+        }
     }
 
     /**
@@ -286,6 +306,12 @@ public class IndexManager {
             return false;
         }
 
+        synchronized (updateLock) {
+            return deleteIndex(indexName);
+        }
+    }
+
+    private boolean deleteIndex(final String indexName) {
         Future<Boolean> result = queue.submit(new Callable<Boolean>() {
             @Override
             public Boolean call() {
@@ -336,9 +362,51 @@ public class IndexManager {
      *  @return update status as true/false
      */
     public boolean updateAllIndexes() {
-        Map<String, Object> indexes = listIndexes();
+        synchronized (updateLock) {
+            Map<String, Object> indexes = listIndexes();
 
-        return IndexUpdater.updateAllIndexes(indexes, database, datastore, queue);
+            return IndexUpdater.updateAllIndexes(indexes, database, datastore, queue);
+        }
+    }
+
+    /**
+     *  Start updating indexes in the background as documents in the datastore change.
+     *
+     *  Changes are indexed in batches, shortly after they are made, on a thread belonging
+     *  to this manager. Queries still bring the indexes up to date before they run, but
+     *  then only have to index the changes made since the last background update, unless
+     *  they are run with {@code staleOk}.
+     *
+     *  Background indexing is stopped by {@link #stopBackgroundIndexing()} or
+     *  {@link #close()}.
+     */
+    public synchronized void startBackgroundIndexing() {
+        if (backgroundIndexer == null) {
+            backgroundIndexer = new BackgroundIndexer();
+            datastore.getEventBus().register(backgroundIndexer);
+            // index any changes made before we started listening
+            backgroundIndexer.schedule();
+        }
+    }
+
+    /**
+     *  Stop updating indexes in the background, waiting for an update in progress to
+     *  finish.
+     */
+    public synchronized void stopBackgroundIndexing() {
+        if (backgroundIndexer != null) {
+            datastore.getEventBus().unregister(backgroundIndexer);
+            backgroundIndexer.stop();
+            backgroundIndexer = null;
+        }
+    }
+
+    public synchronized boolean isBackgroundIndexing() {
+        return backgroundIndexer != null;
+    }
+
+    synchronized BackgroundIndexer getBackgroundIndexer() {
+        return backgroundIndexer;
     }
 
     public QueryResult find(Map<String, Object> query) {
@@ -350,12 +418,31 @@ public class IndexManager {
                             long limit,
                             List<String> fields,
                             List<Map<String, String>> sortDocument) {
+        return find(query, skip, limit, fields, sortDocument, false);
+    }
+
+    /**
+     *  Execute a query.
+     *
+     *  @param staleOk if true, the query is run against the indexes as they are, without
+     *                 first indexing recent changes to the datastore. This is faster, but
+     *                 the results may not reflect the latest changes. Most useful with
+     *                 {@link #startBackgroundIndexing()}, which keeps the indexes close to
+     *                 up to date.
+     *  @return the query result, or null if there was a problem
+     */
+    public QueryResult find(Map<String, Object> query,
+                            long skip,
+                            long limit,
+                            List<String> fields,
+                            List<Map<String, String>> sortDocument,
+                            boolean staleOk) {
         if (query == null) {
             logger.log(Level.SEVERE, "-find called with null selector; bailing.");
             return null;
         }
 
-        if (!updateAllIndexes()) {
+        if (!staleOk && !updateAllIndexes()) {
             return null;
         }
 
@@ -438,4 +525,66 @@ public class IndexManager {
         return textSearchEnabled;
     }
 
+    /**
+     *  Updates the indexes shortly after documents change, coalescing the changes made
+     *  in the meantime into a single update.
+     */
+    class BackgroundIndexer {
+
+        private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+        BackgroundIndexer() {
+            // don't run an update which is only scheduled when we're stopped
+            executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        }
+
+        @Subscribe
+        public void onDocumentModified(DocumentModified event) {
+            schedule();
+        }
+
+        void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                // the update already scheduled will index this change too
+                return;
+            }
+            try {
+                executor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        // changes from now on need another update
+                        scheduled.set(false);
+                        try {
+                            if (!updateAllIndexes()) {
+                                logger.log(Level.WARNING, "Background index update failed.");
+                            }
+                        } catch (RuntimeException e) {
+                            logger.log(Level.SEVERE, "Background index update failed.", e);
+                        }
+                    }
+                }, BACKGROUND_INDEXING_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // stopped
+                scheduled.set(false);
+            }
+        }
+
+        void stop() {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    logger.log(Level.WARNING, "Timed out waiting for background indexing to stop.");
+                }
+            } catch (InterruptedException e) {
+                logger.log(Level.WARNING, "Interrupted waiting for background indexing to stop.", e);
+            }
+        }
+
+        boolean isStopped() {
+            return executor.isTerminated();
+        }
+    }
+
 }
@@ -15,15 +15,21 @@ package com.cloudant.sync.query;
 import com.cloudant.sync.datastore.BasicDocumentRevision;
 import com.cloudant.sync.datastore.Changes;
 import com.cloudant.sync.datastore.Datastore;
+import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.sqlite.ContentValues;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.JSONFieldExtractor;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -97,90 +103,104 @@ class IndexUpdater {
 
     @SuppressWarnings("unchecked")
     private boolean updateAllIndexes(Map<String, Object> indexes) {
-        boolean success = true;
-
+        Map<String, List<String>> fieldNamesByIndex = new HashMap<String, List<String>>();
         for (String indexName: indexes.keySet()) {
             Map<String, Object> index = (Map<String, Object>) indexes.get(indexName);
-            List<String> fields = (ArrayList<String>) index.get("fields");
-            success = updateIndex(indexName, fields);
-            if (!success) {
-                break;
-            }
+            fieldNamesByIndex.put(indexName, (List<String>) index.get("fields"));
         }
 
-        return success;
+        return updateIndexes(fieldNamesByIndex);
     }
 
     private boolean updateIndex(String indexName, List<String> fieldNames) {
+        if (indexName == null || indexName.isEmpty()) {
+            return false;
+        }
+
+        return updateIndexes(Collections.singletonMap(indexName, fieldNames));
+    }
+
+    /**
+     *  Brings a set of indexes up to date in a single pass over the datastore's changes.
+     *
+     *  The changes feed is read once, from the lowest sequence number of the indexes, and each
+     *  changed document is deserialised once and added to every index which hasn't yet seen
+     *  its sequence number. Each page of changes is indexed in a single transaction, which also
+     *  records the new sequence numbers of the indexes.
+     */
+    private boolean updateIndexes(Map<String, List<String>> fieldNamesByIndex) {
+        if (fieldNamesByIndex.isEmpty()) {
+            return true;
+        }
+
+        Map<String, Long> sequences = new HashMap<String, Long>();
+        long lastSequence = Long.MAX_VALUE;
+        for (String indexName: fieldNamesByIndex.keySet()) {
+            long sequence = sequenceNumberForIndex(indexName);
+            sequences.put(indexName, sequence);
+            lastSequence = Math.min(lastSequence, sequence);
+        }
+
+        // only the indexed fields are read from each revision's JSON body
+        Set<String> bodyFieldNames = new HashSet<String>();
+        for (List<String> fieldNames: fieldNamesByIndex.values()) {
+            bodyFieldNames.addAll(fieldNames);
+        }
+        bodyFieldNames.remove("_id");
+        bodyFieldNames.remove("_rev");
+        JSONFieldExtractor extractor = new JSONFieldExtractor(bodyFieldNames);
+
         boolean success;
         Changes changes;
-        long lastSequence = sequenceNumberForIndex(indexName);
-
         do {
             changes = datastore.changes(lastSequence, 10000);
-            success = updateIndex(indexName, fieldNames, changes, lastSequence);
+            success = updateIndexes(fieldNamesByIndex, extractor, sequences, changes);
             lastSequence = changes.getLastSequence();
         } while (success && changes.size() > 0);
 
         // raise error
         if (!success) {
-            logger.log(Level.SEVERE, String.format("Problem updating index %s", indexName));
+            logger.log(Level.SEVERE, String.format("Problem updating indexes %s",
+                                                   fieldNamesByIndex.keySet()));
         }
 
         return success;
     }
 
-    private boolean updateIndex(final String indexName,
-                                final List<String> fieldNames,
-                                final Changes changes,
-                                long lastSequence) {
-        if (indexName == null || indexName.isEmpty()) {
-            return false;
-        }
-
+    private boolean updateIndexes(final Map<String, List<String>> fieldNamesByIndex,
+                                  final JSONFieldExtractor extractor,
+                                  final Map<String, Long> sequences,
+                                  final Changes changes) {
         Future<Boolean> result = queue.submit( new Callable<Boolean>() {
             @Override
             public Boolean call() {
                 boolean transactionSuccess = true;
                 database.beginTransaction();
-                for (BasicDocumentRevision rev: changes.getResults()) {
-                    // Delete existing values
-                    String tableName = IndexManager.tableNameForIndex(indexName);
-                    database.delete(tableName, " _id = ? ", new String[]{rev.getId()});
-
-                    // Insert new values if the rev isn't deleted
-                    if (!rev.isDeleted()) {
-                        // If we are indexing a document where one field is an array, we
-                        // have multiple rows to insert into the index.
-                        List<DBParameter> parameters = parametersToIndexRevision(rev,
-                                                                                 indexName,
-                                                                                 fieldNames);
-                        if (parameters == null) {
-                            continue;
+                try {
+                    for (BasicDocumentRevision rev: changes.getResults()) {
+                        transactionSuccess = indexRevision(rev, fieldNamesByIndex, extractor, sequences);
+                        if (!transactionSuccess) {
+                            break;
                         }
-                        for (DBParameter parameter: parameters) {
-                            if (parameter != null) {
-                                long rowId = database.insert(parameter.tableName,
-                                                             parameter.contentValues);
-                                if (rowId < 0) {
-                                    transactionSuccess = false;
+                    }
+                    if (transactionSuccess) {
+                        for (String indexName: fieldNamesByIndex.keySet()) {
+                            // an index may be ahead of this page if it was updated on its own
+                            if (sequences.get(indexName) < changes.getLastSequence()) {
+                                transactionSuccess = updateMetadataForIndex(indexName,
+                                        changes.getLastSequence());
+                                if (!transactionSuccess) {
+                                    break;
                                 }
                             }
-                            if (!transactionSuccess) {
-                                String msg = String.format("Updating index %s failed.", indexName);
-                                logger.log(Level.SEVERE, msg);
-                                break;
-                            }
                         }
                     }
-                    if (!transactionSuccess) {
-                        break;
+                    if (transactionSuccess) {
+                        database.setTransactionSuccessful();
                     }
+                } finally {
+                    database.endTransaction();
                 }
-                if (transactionSuccess) {
-                    database.setTransactionSuccessful();
-                }
-                database.endTransaction();
 
                 return transactionSuccess;
             }
@@ -197,14 +217,67 @@ class IndexUpdater {
             success = false;
         }
 
-        // if there was a problem, we rolled back, so the sequence won't be updated
+        // if there was a problem, we rolled back, so the sequences weren't updated
         if (success) {
-            success = updateMetadataForIndex(indexName, lastSequence);
+            for (Map.Entry<String, Long> sequence: sequences.entrySet()) {
+                sequence.setValue(Math.max(sequence.getValue(), changes.getLastSequence()));
+            }
         }
 
         return success;
     }
 
+    /**
+     *  Replaces the rows for a revision in each index which hasn't yet seen its sequence
+     *  number. Must be called on the queue, in a transaction.
+     */
+    private boolean indexRevision(BasicDocumentRevision rev,
+                                  Map<String, List<String>> fieldNamesByIndex,
+                                  JSONFieldExtractor extractor,
+                                  Map<String, Long> sequences) {
+        // the indexed fields are extracted at most once, however many indexes the
+        // revision is added to
+        Map<String, Object> body = null;
+        for (Map.Entry<String, List<String>> index: fieldNamesByIndex.entrySet()) {
+            String indexName = index.getKey();
+            if (rev.getSequence() <= sequences.get(indexName)) {
+                continue;
+            }
+
+            // Delete existing values
+            String tableName = IndexManager.tableNameForIndex(indexName);
+            database.delete(tableName, " _id = ? ", new String[]{rev.getId()});
+
+            // Insert new values if the rev isn't deleted
+            if (rev.isDeleted()) {
+                continue;
+            }
+            if (body == null) {
+                body = extractor.extract(DocumentBodyFactory.asInputStream(rev.getBody()));
+            }
+            // If we are indexing a document where one field is an array, we
+            // have multiple rows to insert into the index.
+            List<DBParameter> parameters = parametersToIndexRevision(rev,
+                                                                     body,
+                                                                     indexName,
+                                                                     index.getValue());
+            if (parameters == null) {
+                continue;
+            }
+            for (DBParameter parameter: parameters) {
+                if (parameter != null) {
+                    long rowId = database.insert(parameter.tableName, parameter.contentValues);
+                    if (rowId < 0) {
+                        String msg = String.format("Updating index %s failed.", indexName);
+                        logger.log(Level.SEVERE, msg);
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
     /**
      *  Returns a List of DBParameters containing table name and ContentValues to index
      *  a document in an index.
@@ -214,6 +287,7 @@ class IndexUpdater {
      */
     @SuppressWarnings("unchecked")
     private List<DBParameter> parametersToIndexRevision (BasicDocumentRevision rev,
+                                                         Map<String, Object> body,
                                                          String indexName,
                                                          List<String> fieldNames) {
         if (rev == null) {
@@ -231,7 +305,7 @@ class IndexUpdater {
         int arrayCount = 0;
         String arrayFieldName = null; // only record the last, as error if more than one
         for (String fieldName: fieldNames) {
-            Object value = ValueExtractor.extractValueForFieldName(fieldName, rev.getBody());
+            Object value = ValueExtractor.extractValueForFieldName(fieldName, body);
             if (value != null && value instanceof ArrayList) {
                 arrayCount = arrayCount + 1;
                 arrayFieldName = fieldName;
@@ -263,7 +337,7 @@ class IndexUpdater {
                                                         initialIncludedFields,
                                                         initialArgs,
                                                         indexName,
-                                                        rev);
+                                                        body);
             if (parameter == null) {
                 return null;
             }
@@ -272,7 +346,7 @@ class IndexUpdater {
             // We know the value is an array, we found this out in the check above
             List<Object> arrayFieldValues;
             arrayFieldValues = (ArrayList) ValueExtractor.extractValueForFieldName(arrayFieldName,
-                                                                                   rev.getBody());
+                                                                                   body);
             for (Object value: arrayFieldValues) {
                 List<String> initialIncludedFields = new ArrayList<String>();
                 initialIncludedFields.add("_id");
@@ -287,7 +361,7 @@ class IndexUpdater {
                                                 initialIncludedFields,
                                                 initialArgs,
                                                 indexName,
-                                                rev);
+                                                body);
                 if (parameter == null) {
                     return null;
                 }
@@ -302,7 +376,7 @@ class IndexUpdater {
                                             List<String> initialIncludedFields,
                                             List<Object> initialArgs,
                                             String indexName,
-                                            BasicDocumentRevision rev) {
+                                            Map<String, Object> body) {
         List<String> includeFieldNames = new ArrayList<String>();
         includeFieldNames.addAll(initialIncludedFields);
         List<Object> args = new ArrayList<Object>();
@@ -315,7 +389,7 @@ class IndexUpdater {
                 continue;
             }
 
-            Object value = ValueExtractor.extractValueForFieldName(fieldName, rev.getBody());
+            Object value = ValueExtractor.extractValueForFieldName(fieldName, body);
 
             if (value != null) {
                 includeFieldNames.add(fieldName);
@@ -366,9 +440,8 @@ class IndexUpdater {
                 Cursor cursor = null;
                 try {
                     cursor = database.rawQuery(sql, new String[]{ indexName });
-                    if (cursor.getCount() > 0) {
+                    if (cursor.moveToFirst()) {
                         // All rows for a given index will have the same last_sequence
-                        cursor.moveToNext();
                         result = cursor.getLong(0);
                     }
                 } catch (SQLException e) {
@@ -392,36 +465,17 @@ class IndexUpdater {
         return lastSequenceNumber;
     }
 
-    private boolean updateMetadataForIndex(final String indexName, final long lastSequence) {
-        Future<Boolean> result = queue.submit(new Callable<Boolean>() {
-            @Override
-            public Boolean call() {
-                boolean updateSuccess = true;
-                ContentValues v = new ContentValues();
-                v.put("last_sequence", lastSequence);
-                int row = database.update(IndexManager.INDEX_METADATA_TABLE_NAME,
-                                          v,
-                                          " index_name = ? ",
-                                          new String[]{ indexName });
-                if (row <= 0) {
-                    updateSuccess = false;
-                }
-                return updateSuccess;
-            }
-        });
-
-        boolean success;
-        try {
-            success = result.get();
-        } catch (ExecutionException e) {
-            logger.log(Level.SEVERE, "Execution error encountered:", e);
-            success = false;
-        } catch (InterruptedException e) {
-            logger.log(Level.SEVERE, "Execution interrupted error encountered:", e);
-            success = false;
-        }
-
-        return success;
+    /**
+     *  Records the sequence number an index has been updated to. Must be called on the queue.
+     */
+    private boolean updateMetadataForIndex(String indexName, long lastSequence) {
+        ContentValues v = new ContentValues();
+        v.put("last_sequence", lastSequence);
+        int row = database.update(IndexManager.INDEX_METADATA_TABLE_NAME,
+                                  v,
+                                  " index_name = ? ",
+                                  new String[]{ indexName });
+        return row > 0;
     }
 
     private class DBParameter {
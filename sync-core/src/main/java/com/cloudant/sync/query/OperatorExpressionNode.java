@@ -1,31 +0,0 @@
-//  Copyright (c) 2015 Cloudant. All rights reserved.
-//
-//  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
-//  except in compliance with the License. You may obtain a copy of the License at
-//
-//    http://www.apache.org/licenses/LICENSE-2.0
-//
-//  Unless required by applicable law or agreed to in writing, software distributed under the
-//  License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
-//  either express or implied. See the License for the specific language governing permissions
-//  and limitations under the License.
-
-package com.cloudant.sync.query;
-
-import java.util.Map;
-
-/**
- *  An OperatorExpressionNode object is used by the
- *  {@link com.cloudant.sync.query.UnindexedMatcher}.  Since some methods within the
- *  {@link com.cloudant.sync.query.UnindexedMatcher} class that utilize an OperatorExpressionNode
- *  object are static in nature, the OperatorExpressionNode class cannot be implemented as an
- *  inner class to {@link com.cloudant.sync.query.UnindexedMatcher} and must be
- *  implemented this way instead.
- *
- *  @see com.cloudant.sync.query.UnindexedMatcher
- */
-class OperatorExpressionNode implements QueryNode {
-
-    public Map<String, Object> expression;
-
-}
@@ -71,8 +71,8 @@ class QueryExecutor {
      */
     public QueryResult find(Map<String, Object> query,
                             final Map<String, Object> indexes,
-                            long skip,
-                            long limit,
+                            final long skip,
+                            final long limit,
                             List<String> fields,
                             final List<Map<String, String>> sortDocument) {
         //
@@ -108,10 +108,37 @@ class QueryExecutor {
             return null;
         }
 
+        UnindexedMatcher matcher = matcherForIndexCoverage(indexesCoverQuery, query);
+
+        // Without a matcher, every document ID the indexes return is a result, so skip
+        // and limit can be applied to the IDs rather than to the loaded documents.
+        final boolean pageIds = (matcher == null);
+        final SqlParts treeSql = QuerySqlTranslator.sqlForQueryTree(root);
+
         Future<List<String>> result = queue.submit(new Callable<List<String>>() {
             @Override
             public List<String> call() throws Exception {
-                Set<String> docIdSet = executeQueryTree(root, database);
+                if (treeSql != null && pageIds) {
+                    // SQLite does the set operations, sort, skip and limit in one statement
+                    SqlParts page = sqlToPageIds(treeSql, sortDocument, indexes, skip, limit);
+                    if (page == null) {
+                        return null;
+                    }
+                    List<String> docIds = executeIdQuery(page, database);
+                    if (docIds != null) {
+                        return docIds;
+                    }
+                }
+
+                Set<String> docIdSet = null;
+                if (treeSql != null) {
+                    List<String> docIds = executeIdQuery(treeSql, database);
+                    docIdSet = docIds != null ? new HashSet<String>(docIds) : null;
+                }
+                if (docIdSet == null) {
+                    // fall back to running each node's SQL and merging the results here
+                    docIdSet = executeQueryTree(root, database);
+                }
                 List<String> docIdList;
 
                 // sorting
@@ -121,6 +148,10 @@ class QueryExecutor {
                     docIdList = docIdSet != null ? new ArrayList<String>(docIdSet) : null;
                 }
 
+                if (docIdList != null && pageIds) {
+                    docIdList = pageOfIds(docIdList, skip, limit);
+                }
+
                 return docIdList;
             }
         });
@@ -140,7 +171,9 @@ class QueryExecutor {
             return null;
         }
 
-        UnindexedMatcher matcher = matcherForIndexCoverage(indexesCoverQuery, query);
+        if (pageIds) {
+            return new QueryResult(docIds, datastore, fields, 0, 0, null);
+        }
 
         if (matcher != null) {
             String msg = "Query could not be executed using indexes alone; falling back to ";
@@ -152,6 +185,29 @@ class QueryExecutor {
         return new QueryResult(docIds, datastore, fields, skip, limit, matcher);
     }
 
+    private static List<String> pageOfIds(List<String> docIds, long skip, long limit) {
+        int from = (int) Math.min(skip, docIds.size());
+        int to = limit > 0 ? (int) Math.min(from + limit, docIds.size()) : docIds.size();
+        return new ArrayList<String>(docIds.subList(from, to));
+    }
+
+    private static List<String> executeIdQuery(SqlParts sqlParts, SQLDatabase db) {
+        List<String> docIds = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(sqlParts.sqlWithPlaceHolders, sqlParts.placeHolderValues);
+            while (cursor.moveToNext()) {
+                docIds.add(cursor.getString(0));
+            }
+        } catch (SQLException e) {
+            logger.log(Level.SEVERE, "Failed to get a list of doc ids.", e);
+            return null;
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+        return docIds;
+    }
+
     protected ChildrenQueryNode translateQuery(Map<String, Object> query,
                                                Map<String, Object> indexes,
                                                Boolean[] indexesCoverQuery) {
@@ -362,15 +418,6 @@ class QueryExecutor {
         // for large result sets:
         // SELECT _id FROM idx ORDER BY fieldName ASC, fieldName2 DESC
 
-        List<String> orderClauses = new ArrayList<String>();
-        for (Map<String, String> clause : sortDocument) {
-            String fieldName = (String) clause.keySet().toArray()[0];
-            String direction = clause.get(fieldName);
-
-            String orderClause = String.format("\"%s\" %s", fieldName, direction.toUpperCase());
-            orderClauses.add(orderClause);
-        }
-
         // If we have few results, it's more efficient to reduce the search space
         // for SQLite. 500 placeholders should be a safe value.
         List<String> parameterList = new ArrayList<String>();
@@ -387,7 +434,7 @@ class QueryExecutor {
             whereClause = String.format("WHERE _id IN (%s)", joiner.join(placeholders));
         }
 
-        String orderBy = joiner.join(orderClauses);
+        String orderBy = orderByForSortDocument(sortDocument);
         String sql = String.format("SELECT DISTINCT _id FROM %s %s ORDER BY %s", indexTable,
                                                                                  whereClause,
                                                                                  orderBy);
@@ -395,6 +442,65 @@ class QueryExecutor {
         return SqlParts.partsForSql(sql, parameterList.toArray(parameters));
     }
 
+    /**
+     *  Return SQL to get a sorted page of the document IDs selected by a query.
+     *
+     *  Method assumes `sortDocument` is valid.
+     *
+     *  @param idsQuery SQL selecting the document IDs matching the query
+     *  @param sortDocument Array of ordering definitions, or null to leave the IDs unsorted
+     *                      [ { "fieldName" : "asc" }, { "fieldName2", "desc" } ]
+     *  @param indexes dictionary of indexes
+     *  @param skip how many IDs to skip, 0 to skip none
+     *  @param limit maximum number of IDs to return, 0 for no limit
+     *  @return the SQL selecting the page of IDs, or null if no index can satisfy the sort
+     */
+    protected static SqlParts sqlToPageIds(SqlParts idsQuery,
+                                           List<Map<String, String>> sortDocument,
+                                           Map<String, Object> indexes,
+                                           long skip,
+                                           long limit) {
+        // without sorting:
+        // SELECT DISTINCT _id FROM (SELECT _id FROM idx WHERE ...) LIMIT 10 OFFSET 20
+        // with sorting:
+        // SELECT DISTINCT _id FROM sortIdx WHERE _id IN (SELECT _id FROM idx WHERE ...)
+        //     ORDER BY fieldName ASC, fieldName2 DESC LIMIT 10 OFFSET 20
+        String sql;
+        if (sortDocument == null || sortDocument.isEmpty()) {
+            sql = String.format("SELECT DISTINCT _id FROM (%s)", idsQuery.sqlWithPlaceHolders);
+        } else {
+            String chosenIndex = chooseIndexForSort(sortDocument, indexes);
+            if (chosenIndex == null) {
+                String msg = String.format("No single index can satisfy order %s", sortDocument);
+                logger.log(Level.SEVERE, msg);
+                return null;
+            }
+            sql = String.format("SELECT DISTINCT _id FROM %s WHERE _id IN (%s) ORDER BY %s",
+                                IndexManager.tableNameForIndex(chosenIndex),
+                                idsQuery.sqlWithPlaceHolders,
+                                orderByForSortDocument(sortDocument));
+        }
+
+        if (skip > 0 || limit > 0) {
+            // a negative limit means no limit
+            sql = String.format("%s LIMIT %d OFFSET %d", sql, limit > 0 ? limit : -1, skip);
+        }
+
+        return SqlParts.partsForSql(sql, idsQuery.placeHolderValues);
+    }
+
+    private static String orderByForSortDocument(List<Map<String, String>> sortDocument) {
+        List<String> orderClauses = new ArrayList<String>();
+        for (Map<String, String> clause : sortDocument) {
+            String fieldName = (String) clause.keySet().toArray()[0];
+            String direction = clause.get(fieldName);
+
+            String orderClause = String.format("\"%s\" %s", fieldName, direction.toUpperCase());
+            orderClauses.add(orderClause);
+        }
+        return Joiner.on(", ").join(orderClauses);
+    }
+
     @SuppressWarnings("unchecked")
     private static String chooseIndexForSort(List<Map<String, String>> sortDocument,
                                       Map<String, Object> indexes) {
@@ -181,7 +181,7 @@ public class QueryResult implements Iterable<DocumentRevision> {
                                            BasicDocumentRevision rev,
                                            Datastore datastore) {
         // grab the map filter fields and rebuild object
-        Map<String, Object> originalBody = rev.getBody().asMap();
+        Map<String, Object> originalBody = DocumentBodyFactory.asReadOnlyMap(rev.getBody());
         Map<String, Object> body = new HashMap<String, Object>();
         for (String key : originalBody.keySet()) {
             if (fields.contains(key)) {
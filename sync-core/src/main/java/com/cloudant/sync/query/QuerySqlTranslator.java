@@ -36,11 +36,17 @@ import java.util.logging.Logger;
  *  can perform the needed AND and OR operations between the document ID sets returned
  *  by the SQL queries.
  *
- *  This merging of results in code allows us to make more intelligent use of indexes
- *  within the SQLite database. As SQLite allows us to use just a single index per query,
- *  performing several queries over indexes and then using set operations works out
+ *  This merging of results allows us to make more intelligent use of indexes
+ *  within the SQLite database. As SQLite uses just a single index per SELECT,
+ *  performing several SELECTs over indexes and then using set operations works out
  *  more flexible and likely more efficient.
  *
+ *  The tree is normally compiled into a single compound SQL statement by
+ *  {@link #sqlForQueryTree(QueryNode)}, where AND nodes become INTERSECTs and OR nodes
+ *  UNIONs, so that SQLite performs the set operations without the document IDs for
+ *  each clause being loaded into memory. Trees too large for a single statement are
+ *  interpreted instead, running the SQL for each node and merging the results in code.
+ *
  *  The SQL must be executed separately so we can do it in a transaction so we're doing
  *  it over a consistent view of the index.
  *
@@ -98,6 +104,10 @@ class QuerySqlTranslator {
 
     private static final Logger logger = Logger.getLogger(QuerySqlTranslator.class.getName());
 
+    // SQLite's default limits are 500 terms in a compound SELECT and 999 parameters
+    private static final int MAX_COMPOUND_SELECTS = 500;
+    private static final int MAX_SQL_PARAMETERS = 999;
+
     public static QueryNode translateQuery(Map<String, Object> query,
                                            Map<String, Object> indexes,
                                            Boolean[] indexesCoverQuery) {
@@ -149,6 +159,72 @@ class QuerySqlTranslator {
         }
     }
 
+    /**
+     *  Compiles a query tree into a single SQL statement selecting the document IDs
+     *  matching the query.
+     *
+     *  The SQL for the children of an AND node is combined using INTERSECT, and the SQL
+     *  for the children of an OR node using UNION. Nested AND and OR nodes become
+     *  sub-selects.
+     *
+     *  @param node root of the query tree
+     *  @return the compound SQL statement, or null if the tree selects nothing or is
+     *          too large to be run as a single statement, in which case the tree must
+     *          be interpreted instead.
+     */
+    protected static SqlParts sqlForQueryTree(QueryNode node) {
+        List<String> parameters = new ArrayList<String>();
+        int[] selectCount = new int[]{ 0 };
+        String sql = sqlForQueryNode(node, parameters, selectCount);
+
+        if (sql == null) {
+            return null;
+        }
+        if (selectCount[0] > MAX_COMPOUND_SELECTS ||
+                parameters.size() > MAX_SQL_PARAMETERS) {
+            String msg = String.format("Query needs %d SELECTs and %d parameters, too many for " +
+                                       "a single statement", selectCount[0], parameters.size());
+            logger.log(Level.FINE, msg);
+            return null;
+        }
+
+        return SqlParts.partsForSql(sql, parameters.toArray(new String[parameters.size()]));
+    }
+
+    private static String sqlForQueryNode(QueryNode node,
+                                          List<String> parameters,
+                                          int[] selectCount) {
+        if (node instanceof SqlQueryNode) {
+            SqlParts sqlParts = ((SqlQueryNode) node).sql;
+            if (sqlParts == null) {
+                return null;
+            }
+            selectCount[0] = selectCount[0] + 1;
+            parameters.addAll(Arrays.asList(sqlParts.placeHolderValues));
+            return sqlParts.sqlWithPlaceHolders;
+        } else if (node instanceof ChildrenQueryNode) {
+            String operator = (node instanceof OrQueryNode) ? " UNION " : " INTERSECT ";
+
+            List<String> selects = new ArrayList<String>();
+            for (QueryNode child: ((ChildrenQueryNode) node).children) {
+                String childSql = sqlForQueryNode(child, parameters, selectCount);
+                if (childSql == null) {
+                    // as for the interpreter, a child selecting nothing is ignored
+                    continue;
+                }
+                if (child instanceof ChildrenQueryNode) {
+                    // SQLite doesn't allow a compound SELECT as an operand of another
+                    childSql = String.format("SELECT _id FROM (%s)", childSql);
+                }
+                selects.add(childSql);
+            }
+
+            return selects.isEmpty() ? null : Joiner.on(operator).join(selects);
+        } else {
+            return null;
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private static QueryNode translateQuery(Map<String, Object> query,
                                            Map<String, Object> indexes,
@@ -12,14 +12,18 @@
 
 package com.cloudant.sync.query;
 
+import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.datastore.DocumentRevision;
+import com.cloudant.sync.util.JSONFieldExtractor;
 
 import static com.cloudant.sync.query.QueryConstants.*;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,15 +35,17 @@ import java.util.logging.Logger;
  *  representation and is able to then determine whether a document
  *  matches that selector.
  *
- *  The matcher works by first creating a simple tree, which is then
- *  executed against each document it's asked to match.
+ *  The matcher works by first compiling the selector into a tree of predicates,
+ *  which is then evaluated against each document it's asked to match. Field paths
+ *  are split and comparison operands typed when the tree is compiled, so matching a
+ *  document doesn't need to look anything up in the selector.
  *
  *
  *  Some examples:
  *
  *  AND : [ { x: X }, { y: Y } ]
  *
- *  This can be represented by a two operator expressions and AND tree node:
+ *  This can be represented by a two field predicates and AND tree node:
  *
  *          AND
  *         /   \
@@ -48,7 +54,7 @@ import java.util.logging.Logger;
  *
  *  OR : [ { x: X }, { y: Y } ]
  *
- *  This is a single OR node and two operator expressions:
+ *  This is a single OR node and two field predicates:
  *
  *          OR
  *         /  \
@@ -82,7 +88,13 @@ import java.util.logging.Logger;
  */
 class UnindexedMatcher {
 
-    private ChildrenQueryNode root;
+    private Predicate root;
+
+    // fields the predicates need from the document body, rather than _id and _rev
+    private final Set<String> bodyFieldNames = new HashSet<String>();
+
+    // reads just those fields from each document's JSON
+    private JSONFieldExtractor extractor;
 
     private static final Logger logger = Logger.getLogger(UnindexedMatcher.class.getName());
 
@@ -93,56 +105,49 @@ class UnindexedMatcher {
      *  the query processing.
      */
     public static UnindexedMatcher matcherWithSelector(Map<String, Object> selector) {
-        ChildrenQueryNode root = buildExecutionTreeForSelector(selector);
+        UnindexedMatcher matcher = new UnindexedMatcher();
+        matcher.root = matcher.compileSelector(selector);
 
-        if (root == null) {
+        if (matcher.root == null) {
             return null;
         }
 
-        UnindexedMatcher matcher = new UnindexedMatcher();
-        matcher.root = root;
+        matcher.extractor = new JSONFieldExtractor(matcher.bodyFieldNames);
 
         return matcher;
     }
 
     @SuppressWarnings("unchecked")
-    private static ChildrenQueryNode buildExecutionTreeForSelector(Map<String, Object> selector) {
+    private Predicate compileSelector(Map<String, Object> selector) {
         // At this point we will have a root compound predicate, AND or OR, and
         // the query will be reduced to a single entry:
         // { "$and": [ ... predicates (possibly compound) ... ] }
         // { "$or": [ ... predicates (possibly compound) ... ] }
 
-        ChildrenQueryNode root = null;
-        List<Object> clauses = new ArrayList<Object>();
+        boolean isAnd;
+        List<Object> clauses;
 
         if (selector.get(AND) != null) {
             clauses = (List<Object>) selector.get(AND);
-            root = new AndQueryNode();
+            isAnd = true;
         } else if (selector.get(OR) != null) {
             clauses = (List<Object>) selector.get(OR);
-            root = new OrQueryNode();
+            isAnd = false;
+        } else {
+            return null;
         }
 
+        List<Predicate> children = new ArrayList<Predicate>();
+
         //
         // First handle the simple "field": { "$operator": "value" } clauses.
         //
 
-        List<Object> basicClauses = new ArrayList<Object>();
-
         for (Object rawClause: clauses) {
             Map<String, Object> clause = (Map<String, Object>) rawClause;
-            String field = (String) clause.keySet().toArray()[0];
+            String field = clause.keySet().iterator().next();
             if (!field.startsWith("$")) {
-                basicClauses.add(rawClause);
-            }
-        }
-
-        // Execution step will evaluate each child node and AND or OR the results.
-        for (Object expression: basicClauses) {
-            OperatorExpressionNode node = new OperatorExpressionNode();
-            node.expression = (Map<String, Object>) expression;
-            if (root != null) {
-                root.children.add(node);
+                children.add(compileFieldClause(field, (Map<String, Object>) clause.get(field)));
             }
         }
 
@@ -152,156 +157,96 @@ class UnindexedMatcher {
         // clauses, for predictability.
         //
 
-        // Add subclauses that are OR
-        for (Object rawClause: clauses) {
-            Map<String, Object> clause = (Map<String, Object>) rawClause;
-            String field = (String) clause.keySet().toArray()[0];
-            if (field.equals(OR)) {
-                QueryNode orNode = buildExecutionTreeForSelector(clause);
-                if (root != null) {
-                    root.children.add(orNode);
+        for (String compound: new String[]{ OR, AND }) {
+            for (Object rawClause: clauses) {
+                Map<String, Object> clause = (Map<String, Object>) rawClause;
+                String field = clause.keySet().iterator().next();
+                if (field.equals(compound)) {
+                    Predicate child = compileSelector(clause);
+                    if (child != null) {
+                        children.add(child);
+                    }
                 }
             }
         }
 
-        // Add subclauses that are AND
-        for (Object rawClause: clauses) {
-            Map<String, Object> clause = (Map<String, Object>) rawClause;
-            String field = (String) clause.keySet().toArray()[0];
-            if (field.equals(AND)) {
-                QueryNode andNode = buildExecutionTreeForSelector(clause);
-                if (root != null) {
-                    root.children.add(andNode);
-                }
-            }
-        }
-
-        return root;
-    }
-
-    /**
-     * Returns true is a document matches this matcher's selector.
-     *
-     * @param rev The document revision to match selector to.
-     * @return document and matcher's selector matching status.
-     */
-    public boolean matches(DocumentRevision rev) {
-        return executeSelectorTree(root, rev);
+        Predicate[] childArray = children.toArray(new Predicate[children.size()]);
+        return isAnd ? new AndPredicate(childArray) : new OrPredicate(childArray);
     }
 
     @SuppressWarnings("unchecked")
-    private boolean executeSelectorTree(QueryNode node, DocumentRevision rev) {
-        if (node instanceof AndQueryNode) {
-            boolean passed = true;
-
-            AndQueryNode andNode = (AndQueryNode) node;
-
-            for (QueryNode child: andNode.children) {
-                passed = passed && executeSelectorTree(child, rev);
-            }
-
-            return passed;
+    private Predicate compileFieldClause(String fieldName,
+                                         Map<String, Object> operatorExpression) {
+        // Here we could have:
+        //   { fieldName: { operator: value } }
+        // or
+        //   { fieldName: { $not: { operator: value } } }
+
+        String operator = operatorExpression.keySet().iterator().next();
+
+        // First work out whether we need to invert the result when done
+        boolean invertResult = operator.equals(NOT);
+        if (invertResult) {
+            operatorExpression = (Map<String, Object>) operatorExpression.get(NOT);
+            operator = operatorExpression.keySet().iterator().next();
         }
-        if (node instanceof OrQueryNode) {
-            boolean passed = false;
 
-            OrQueryNode orNode = (OrQueryNode) node;
+        Object expected = operatorExpression.get(operator);
 
-            for (QueryNode child: orNode.children) {
-                passed = passed || executeSelectorTree(child, rev);
-            }
-
-            return passed;
-        } else if (node instanceof OperatorExpressionNode) {
-            Map<String, Object> expression = ((OperatorExpressionNode) node).expression;
-
-            // Here we could have:
-            //   { fieldName: { operator: value } }
-            // or
-            //   { fieldName: { $not: { operator: value } } }
-
-            // Next evaluate the result
-            String fieldName = (String) expression.keySet().toArray()[0];
-            Map<String, Object> operatorExpression;
-            operatorExpression = (Map<String, Object>) expression.get(fieldName);
-
-            String operator = (String) operatorExpression.keySet().toArray()[0];
-
-            // First work out whether we need to invert the result when done
-            boolean invertResult = operator.equals(NOT);
-            if (invertResult) {
-                operatorExpression = (Map<String, Object>) operatorExpression.get(NOT);
-                operator = (String) operatorExpression.keySet().toArray()[0];
-            }
-
-            Object expected = operatorExpression.get(operator);
-            Object actual = ValueExtractor.extractValueForFieldName(fieldName, rev);
-            // Since $in is the same as a series of $eq comparisons -
-            // Treat them the same by:
-            // - Ensuring that both expected and actual are Lists.
-            // - Convert the $in operator to the $eq operator.
-            if (!(expected instanceof List)) {
-                expected = Arrays.asList(expected);
-            }
-            if (!(actual instanceof List)) {
-                actual = Arrays.asList(actual);
-            }
-            if (operator.equals(IN)) {
-                operator = EQ;
-            }
-
-            boolean passed = false;
-            for (Object expectedItem : (List<Object>) expected) {
-                for (Object actualItem: (List<Object>) actual) {
-                    // OR since any actual item can match any value in the expected list
-                    passed = passed || valueCompare(actualItem, operator, expectedItem);
-                }
-            }
+        // Since $in is the same as a series of $eq comparisons, treat them
+        // the same by making expected a list and using the $eq operator.
+        List<Object> expectedList = (expected instanceof List) ?
+                (List<Object>) expected : Collections.singletonList(expected);
+        Operand[] operands = new Operand[expectedList.size()];
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = new Operand(expectedList.get(i));
+        }
 
-            return invertResult ? !passed : passed;
-        } else {
-            // We constructed the tree, so shouldn't end up here; error if we do.
-            String msg = String.format("Found unexpected selector execution tree: %s", node);
-            logger.log(Level.SEVERE, msg);
-            return false;
+        FieldPredicate predicate = new FieldPredicate(fieldName,
+                                                      comparisonForOperator(operator),
+                                                      operands,
+                                                      invertResult);
+        if (predicate.fromBody) {
+            bodyFieldNames.add(fieldName);
         }
+        return predicate;
     }
 
-    private boolean valueCompare(Object actual, String operator, Object expected) {
-        boolean passed;
-
-        if (operator.equals(EQ)) {
-            passed = compareEq(actual, expected);
+    private static Comparison comparisonForOperator(String operator) {
+        if (operator.equals(EQ) || operator.equals(IN)) {
+            return Comparison.EQ;
         } else if (operator.equals(LT)) {
-            passed = compareLT(actual, expected);
+            return Comparison.LT;
         } else if (operator.equals(LTE)) {
-            passed = compareLTE(actual, expected);
+            return Comparison.LTE;
         } else if (operator.equals(GT)) {
-            passed = compareGT(actual, expected);
+            return Comparison.GT;
         } else if (operator.equals(GTE)) {
-            passed = compareGTE(actual, expected);
+            return Comparison.GTE;
         } else if (operator.equals(EXISTS)) {
-            boolean expectedBool = (Boolean) expected;
-            boolean exists = (actual != null);
-            passed = (exists == expectedBool);
+            return Comparison.EXISTS;
         } else {
             String msg = String.format("Found unexpected operator in selector: %s", operator);
             logger.log(Level.WARNING, msg);
-            passed = false;
+            return Comparison.NONE;
         }
+    }
 
-        return passed;
+    /**
+     * Returns true is a document matches this matcher's selector.
+     *
+     * @param rev The document revision to match selector to.
+     * @return document and matcher's selector matching status.
+     */
+    public boolean matches(DocumentRevision rev) {
+        // the fields are extracted from the body once, for all the predicates
+        Map<String, Object> body = bodyFieldNames.isEmpty() ?
+                null : extractor.extract(DocumentBodyFactory.asInputStream(rev.getBody()));
+        return root.matches(rev, body);
     }
 
     protected static boolean compareEq(Object l, Object r) {
-        if (l instanceof String && r instanceof String) {
-            return l.equals(r);
-        } else if (l instanceof Boolean && r instanceof Boolean) {
-            return l == r;
-        } else {
-            return l instanceof Number && r instanceof Number &&
-                    ((Number) l).doubleValue() == ((Number) r).doubleValue();
-        }
+        return Comparison.EQ.compare(l, new Operand(r));
     }
 
     //
@@ -311,66 +256,232 @@ class UnindexedMatcher {
     //  3. TEXT
     //  4. BLOB
     protected static boolean compareLT(Object l, Object r) {
-        if (l == null || r == null) {
-            return false;  // null fails all lt/gt/lte/gte tests
-        } else if (!(l instanceof String || l instanceof Number)) {
-            String msg = String.format("Value in document not a Number or String: %s", l);
-            logger.log(Level.WARNING, msg);
-            return false;  // Not sure how to compare values that are not numbers or strings
-        } else if (l instanceof String) {
-            if (r instanceof Number) {
-                return false;  // INT < STRING
+        return Comparison.LT.compare(l, new Operand(r));
+    }
+
+    protected static boolean compareLTE(Object l, Object r) {
+        return Comparison.LTE.compare(l, new Operand(r));
+    }
+
+    protected static boolean compareGT(Object l, Object r) {
+        return Comparison.GT.compare(l, new Operand(r));
+    }
+
+    protected static boolean compareGTE(Object l, Object r) {
+        return Comparison.GTE.compare(l, new Operand(r));
+    }
+
+    private static abstract class Predicate {
+        abstract boolean matches(DocumentRevision rev, Map<String, Object> body);
+    }
+
+    private static final class AndPredicate extends Predicate {
+        private final Predicate[] children;
+
+        AndPredicate(Predicate[] children) {
+            this.children = children;
+        }
+
+        @Override
+        boolean matches(DocumentRevision rev, Map<String, Object> body) {
+            for (Predicate child: children) {
+                if (!child.matches(rev, body)) {
+                    return false;
+                }
             }
+            return true;
+        }
+    }
 
-            String lStr = (String) l;
-            String rStr = (String) r;
+    private static final class OrPredicate extends Predicate {
+        private final Predicate[] children;
 
-            return lStr.compareTo(rStr) < 0;
-        } else if (r instanceof String) {
-            // At this point in the logic l can only be a number
-            return true;  // INT < STRING
-        } else {
-            // At this point in the logic both l and r can only be numbers
-            Number lNum = (Number) l;
-            Number rNum = (Number) r;
+        OrPredicate(Predicate[] children) {
+            this.children = children;
+        }
 
-            return lNum.doubleValue() < rNum.doubleValue();
+        @Override
+        boolean matches(DocumentRevision rev, Map<String, Object> body) {
+            for (Predicate child: children) {
+                if (child.matches(rev, body)) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
 
-    protected static boolean compareLTE(Object l, Object r) {
-        if (l == null || r == null) {
-            return false;  // null fails all lt/gt/lte/gte tests
-        } else if (!(l instanceof String || l instanceof Number)) {
-            String msg = String.format("Value in document not a Number or String: %s", l);
-            logger.log(Level.WARNING, msg);
-            return false;  // Not sure how to compare values that are not numbers or strings
-        } else {
-            return compareLT(l, r) || compareEq(l, r);
+    /**
+     *  Compares the value of a field with one or more operands, passing if any value
+     *  of the field (which may be an array) compares successfully with any operand.
+     */
+    private static final class FieldPredicate extends Predicate {
+        private final String fieldName;
+        // _id and _rev come from the revision rather than its body
+        private final boolean isId;
+        private final boolean isRev;
+        private final boolean fromBody;
+        private final String[] path;
+        private final Comparison comparison;
+        private final Operand[] operands;
+        private final boolean invertResult;
+
+        FieldPredicate(String fieldName,
+                       Comparison comparison,
+                       Operand[] operands,
+                       boolean invertResult) {
+            this.fieldName = fieldName;
+            this.isId = fieldName.equals("_id");
+            this.isRev = fieldName.equals("_rev");
+            this.fromBody = !isId && !isRev;
+            this.path = fieldName.split("\\.");
+            this.comparison = comparison;
+            this.operands = operands;
+            this.invertResult = invertResult;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        boolean matches(DocumentRevision rev, Map<String, Object> body) {
+            Object actual = actualValue(rev, body);
+
+            boolean passed = false;
+            if (actual instanceof List) {
+                List<Object> actualList = (List<Object>) actual;
+                for (int i = 0, size = actualList.size(); i < size && !passed; i++) {
+                    passed = compareWithOperands(actualList.get(i));
+                }
+            } else {
+                passed = compareWithOperands(actual);
+            }
+
+            return invertResult ? !passed : passed;
+        }
+
+        private boolean compareWithOperands(Object actual) {
+            for (Operand operand: operands) {
+                if (comparison.compare(actual, operand)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Object actualValue(DocumentRevision rev, Map<String, Object> body) {
+            if (isId) {
+                return rev.getId();
+            } else if (isRev) {
+                return rev.getRevision();
+            }
+
+            Map<String, Object> currentLevel = body;
+            for (int i = 0; i < path.length - 1; i++) {
+                Object map = currentLevel.get(path[i]);
+                if (map instanceof Map) {
+                    currentLevel = (Map<String, Object>) map;
+                } else {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, String.format(
+                                "Could not extract field %s from document.", fieldName));
+                    }
+                    return null;
+                }
+            }
+            return currentLevel.get(path[path.length - 1]);
         }
     }
 
-    protected static boolean compareGT(Object l, Object r) {
-        if (l == null || r == null) {
-            return false;  // null fails all lt/gt/lte/gte tests
-        } else if (!(l instanceof String || l instanceof Number)) {
-            String msg = String.format("Value in document not a Number or String: %s", l);
-            logger.log(Level.WARNING, msg);
-            return false;  // Not sure how to compare values that are not numbers or strings
-        } else {
-            return !compareLTE(l, r);
+    /**
+     *  A selector value, typed once when the selector is compiled.
+     */
+    private static final class Operand {
+        private final Object value;
+        private final String string;
+        private final Boolean bool;
+        private final boolean isNumber;
+        private final double number;
+
+        Operand(Object value) {
+            this.value = value;
+            this.string = (value instanceof String) ? (String) value : null;
+            this.bool = (value instanceof Boolean) ? (Boolean) value : null;
+            this.isNumber = value instanceof Number;
+            this.number = isNumber ? ((Number) value).doubleValue() : 0;
         }
     }
 
-    protected static boolean compareGTE(Object l, Object r) {
-        if (l == null || r == null) {
-            return false;  // null fails all lt/gt/lte/gte tests
-        } else if (!(l instanceof String || l instanceof Number)) {
-            String msg = String.format("Value in document not a Number or String: %s", l);
-            logger.log(Level.WARNING, msg);
-            return false;  // Not sure how to compare values that are not numbers or strings
-        } else {
-            return !compareLT(l, r);
+    private enum Comparison {
+        EQ {
+            @Override
+            boolean compare(Object l, Operand r) {
+                if (r.string != null) {
+                    return r.string.equals(l);
+                } else if (r.bool != null) {
+                    return r.bool.equals(l);
+                } else {
+                    return r.isNumber && l instanceof Number &&
+                            ((Number) l).doubleValue() == r.number;
+                }
+            }
+        },
+        LT {
+            @Override
+            boolean compare(Object l, Operand r) {
+                if (!orderable(l, r)) {
+                    return false;
+                } else if (l instanceof String) {
+                    // INT < STRING
+                    return r.string != null && ((String) l).compareTo(r.string) < 0;
+                } else {
+                    // At this point in the logic l can only be a number; INT < STRING
+                    return r.string != null || (r.isNumber && ((Number) l).doubleValue() < r.number);
+                }
+            }
+        },
+        LTE {
+            @Override
+            boolean compare(Object l, Operand r) {
+                return orderable(l, r) && (LT.compare(l, r) || EQ.compare(l, r));
+            }
+        },
+        GT {
+            @Override
+            boolean compare(Object l, Operand r) {
+                return orderable(l, r) && !LTE.compare(l, r);
+            }
+        },
+        GTE {
+            @Override
+            boolean compare(Object l, Operand r) {
+                return orderable(l, r) && !LT.compare(l, r);
+            }
+        },
+        EXISTS {
+            @Override
+            boolean compare(Object l, Operand r) {
+                boolean exists = (l != null);
+                return r.bool != null && exists == r.bool;
+            }
+        },
+        NONE {
+            @Override
+            boolean compare(Object l, Operand r) {
+                return false;
+            }
+        };
+
+        abstract boolean compare(Object l, Operand r);
+
+        private static boolean orderable(Object l, Operand r) {
+            if (l == null || r.value == null) {
+                return false;  // null fails all lt/gt/lte/gte tests
+            } else if (!(l instanceof String || l instanceof Number)) {
+                String msg = String.format("Value in document not a Number or String: %s", l);
+                logger.log(Level.WARNING, msg);
+                return false;  // Not sure how to compare values that are not numbers or strings
+            }
+            return true;
         }
     }
 
@@ -13,6 +13,7 @@
 package com.cloudant.sync.query;
 
 import com.cloudant.sync.datastore.DocumentBody;
+import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.datastore.DocumentRevision;
 
 import java.util.ArrayList;
@@ -39,8 +40,18 @@ class ValueExtractor {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public static Object extractValueForFieldName(String possiblyDottedField, DocumentBody body) {
+        return extractValueForFieldName(possiblyDottedField,
+                DocumentBodyFactory.asReadOnlyMap(body));
+    }
+
+    /**
+     *  Extracts a value from an already deserialised document body, so that callers extracting
+     *  several fields from the same document only deserialise it once.
+     */
+    @SuppressWarnings("unchecked")
+    public static Object extractValueForFieldName(String possiblyDottedField,
+                                                  Map<String, Object> body) {
         // The algorithm here is to split the fields into a "path" and a "lastSegment".
         // The path leads us to the final sub-document. We know that if we have either
         // nil or a non-dictionary object while traversing path that the body doesn't
@@ -54,7 +65,7 @@ class ValueExtractor {
         List<String> path = new ArrayList<String>(Arrays.asList(fields));
         String lastSegment = path.remove(path.size() - 1);
 
-        Map<String, Object> currentLevel = body.asMap();
+        Map<String, Object> currentLevel = body;
         for (String field: path) {
             Object map = currentLevel.get(field);
             if (map != null && map instanceof Map) {
@@ -14,6 +14,7 @@
 
 package com.cloudant.sync.replication;
 
+import com.cloudant.mazha.BulkGetRequest;
 import com.cloudant.mazha.ChangesResult;
 import com.cloudant.mazha.CouchConfig;
 import com.cloudant.mazha.DocumentRevs;
@@ -24,6 +25,7 @@ import com.cloudant.sync.datastore.BasicDocumentRevision;
 import com.cloudant.sync.datastore.DocumentException;
 import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevsList;
+import com.cloudant.sync.datastore.ForceInsertItem;
 import com.cloudant.sync.datastore.PreparedAttachment;
 import com.cloudant.sync.datastore.UnsavedStreamAttachment;
 import com.cloudant.sync.util.JSONUtils;
@@ -38,17 +40,25 @@ import org.apache.commons.codec.binary.Hex;
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -56,18 +66,48 @@ class BasicPullStrategy implements ReplicationStrategy {
 
     private static final Logger logger = Logger.getLogger(BasicPullStrategy.class.getCanonicalName());
     private static final String LOG_TAG = "BasicPullStrategy";
+
+    // How often a thread waiting for the executor checks whether the replication was cancelled
+    private static final long CANCEL_POLL_INTERVAL_MS = 500;
+
+    // Rows of the changes feed are handed over to the replication thread in chunks of
+    // this many rows as they are read, and at most MAX_CHUNKS_QUEUED chunks are read ahead,
+    // so that large pages of changes needn't be held in memory at once.
+    static final int ROWS_PER_CHUNK = 100;
+    private static final int MAX_CHUNKS_QUEUED = 4;
+    private static final List<ChangesResult.Row> END_OF_PAGE = new ArrayList<ChangesResult.Row>(0);
+
+    // How long a continuous replication waits for a change before requesting the feed again
+    static final long LONGPOLL_TIMEOUT_MS = 60 * 1000;
+
     CouchDB sourceDb;
     Replication.Filter filter;
     DatastoreWrapper targetDb;
 
     ExecutorService executor;
+    // reads the changes feed, a page at a time
+    private final ExecutorService changesExecutor = Executors.newSingleThreadExecutor();
+    // downloads attachments which aren't pulled inline, maxAttachmentDownloads at a time
+    private final ExecutorService attachmentExecutor;
+    // bytes of attachments which may be downloaded at once, see maxAttachmentBytesInFlight
+    private final Semaphore attachmentBytes;
     private PullConfiguration config;
 
     int documentCounter = 0;
     int batchCounter = 0;
 
+    // Whether the source supports fetching many documents per request with _bulk_get,
+    // set once the replication starts.
+    boolean useBulkGet = false;
+
     private final String name;
 
+    // Whether to keep pulling changes once caught up, see PullReplication#continuous
+    final boolean continuous;
+
+    // computed once, as it's needed for each checkpoint
+    private String replicationId;
+
     // Flag to stop the replication thread.
     // Volatile as might be set from another thread.
     private volatile boolean cancel = false;
@@ -100,7 +140,10 @@ class BasicPullStrategy implements ReplicationStrategy {
 
         this.executor = executorService;
         this.config = config;
+        this.attachmentExecutor = Executors.newFixedThreadPool(config.maxAttachmentDownloads);
+        this.attachmentBytes = new Semaphore(config.maxAttachmentBytesInFlight, true);
         this.filter = pullReplication.filter;
+        this.continuous = pullReplication.continuous;
 
         CouchConfig couchConfig = pullReplication.getCouchConfig();
         this.sourceDb = new CouchClientWrapper(couchConfig);
@@ -119,6 +162,10 @@ class BasicPullStrategy implements ReplicationStrategy {
 
         // Don't process further tasks to hasten shutdown
         this.executor.shutdownNow();
+        this.changesExecutor.shutdownNow();
+        this.attachmentExecutor.shutdownNow();
+        // stop waiting for changes on a longpoll feed
+        this.sourceDb.abortChanges();
     }
 
     public int getDocumentCounter() {
@@ -151,6 +198,8 @@ class BasicPullStrategy implements ReplicationStrategy {
             errorInfo = new ErrorInfo(e);
         } finally {
             this.executor.shutdownNow();
+            this.changesExecutor.shutdownNow();
+            this.attachmentExecutor.shutdownNow();
         }
 
         // Give the in-flight HTTP requests time to complete. It's not vital
@@ -190,8 +239,23 @@ class BasicPullStrategy implements ReplicationStrategy {
                     "Database not found " + this.sourceDb.getIdentifier());
         }
 
+        this.useBulkGet = this.sourceDb.isBulkSupported();
+        logger.info(String.format("Source database %s _bulk_get",
+                this.useBulkGet ? "supports" : "does not support"));
+
         this.documentCounter = 0;
-        for (this.batchCounter = 1; this.batchCounter < config.batchLimitPerRun; this.batchCounter++) {
+
+        // The changes feed is read on its own thread and processed as its rows arrive. Once
+        // a page has been read the next page is requested straight away, from the last
+        // sequence of the previous page rather than from the stored checkpoint, as the
+        // checkpoint only advances once a page is fully inserted.
+        Object since = this.targetDb.getCheckpoint(this.getReplicationId());
+        logger.fine("last checkpoint "+since);
+        ChangesPage changes = readChanges(since, 1);
+
+        // A continuous replication has no limit on the number of batches
+        for (this.batchCounter = 1; this.continuous || this.batchCounter < config.batchLimitPerRun;
+             this.batchCounter++) {
 
             if (this.cancel) { return; }
 
@@ -203,23 +267,20 @@ class BasicPullStrategy implements ReplicationStrategy {
             logger.info(msg);
             long batchStartTime = System.currentTimeMillis();
 
-            ChangesResultWrapper changeFeeds = this.nextBatch();
-            int batchChangesProcessed = 0;
+            int batchChangesProcessed = processOneChangesBatch(changes);
+            documentCounter += batchChangesProcessed;
+
+            if (this.cancel) { return; }
 
             // So we can check whether all changes were processed during
             // a log analysis.
             msg = String.format(
-                    "Batch %s contains %s changes",
+                    "Batch %s contained %s changes",
                     this.batchCounter,
-                    changeFeeds.size()
+                    changes.size()
             );
             logger.info(msg);
 
-            if (changeFeeds.size() > 0) {
-                batchChangesProcessed = processOneChangesBatch(changeFeeds);
-                documentCounter += batchChangesProcessed;
-            }
-
             long batchEndTime = System.currentTimeMillis();
             msg =  String.format(
                     "Batch %s completed in %sms (batch was %s changes)",
@@ -231,7 +292,14 @@ class BasicPullStrategy implements ReplicationStrategy {
 
             // This logic depends on the changes in the feed rather than the
             // changes we actually processed.
-            if (changeFeeds.size() < this.config.changeLimitPerBatch) {
+            if (changes.nextPage != null) {
+                changes = changes.nextPage;
+            } else if (this.continuous) {
+                // Caught up, so wait for further changes. The next page is only requested
+                // once this one has been inserted, so that changes made while we were busy
+                // are pulled in one batch rather than one request each.
+                changes = readChanges(changes.getLastSeq(), this.batchCounter + 1);
+            } else {
                 break;
             }
         }
@@ -246,108 +314,80 @@ class BasicPullStrategy implements ReplicationStrategy {
         logger.info(msg);
     }
 
-    private int processOneChangesBatch(ChangesResultWrapper changeFeeds)
+    private int processOneChangesBatch(ChangesPage changes)
             throws ExecutionException, InterruptedException, DocumentException {
-        String feed = String.format(
-                "Change feed: { last_seq: %s, change size: %s}",
-                changeFeeds.getLastSeq(),
-                changeFeeds.getResults().size()
-        );
-        logger.info(feed);
+        int changesProcessed = 0;
 
-        Multimap<String, String> openRevs = changeFeeds.openRevisions(0, changeFeeds.size());
-        Map<String, Collection<String>> missingRevisions = this.targetDb.getDbCore().revsDiff(openRevs);
+        // Documents are fetched on the executor, at most maxFetchesInFlight at a time, as the
+        // rows of the changes feed arrive, and inserted in batches on this thread as the
+        // fetches complete, so that reading changes, downloading and inserting overlap.
+        LinkedList<Callable<FetchedRevisions>> pending = new LinkedList<Callable<FetchedRevisions>>();
+        CompletionService<FetchedRevisions> fetches =
+                new ExecutorCompletionService<FetchedRevisions>(this.executor);
+        int fetchesInFlight = 0;
+        boolean pageRead = false;
+
+        List<ForceInsertItem> items = new ArrayList<ForceInsertItem>();
+        int documentsToInsert = 0;
+        try {
+            while (!this.cancel) {
+                // read enough changes to keep the fetches going
+                while (!pageRead && pending.size() < config.maxFetchesInFlight) {
+                    List<ChangesResult.Row> rows = changes.nextChunk();
+                    if (rows == null) {
+                        pageRead = true;
+                    } else {
+                        pending.addAll(createFetchTasks(rows));
+                    }
+                }
 
-        int changesProcessed = 0;
+                while (!pending.isEmpty() && fetchesInFlight < config.maxFetchesInFlight) {
+                    fetches.submit(pending.removeFirst());
+                    fetchesInFlight++;
+                }
 
-        // Process the changes in batches
-        List<String> ids = Lists.newArrayList(missingRevisions.keySet());
-        List<List<String>> batches = Lists.partition(ids, this.config.insertBatchSize);
-        for (List<String> batch : batches) {
+                // nothing in flight, so the whole page has been read and fetched
+                if (fetchesInFlight == 0) { break; }
 
-            if (this.cancel) { break; }
+                FetchedRevisions fetched = waitForNextFetch(fetches);
 
-            List<Callable<DocumentRevsList>> tasks = createTasks(batch, missingRevisions);
-            try {
-                List<Future<DocumentRevsList>> futures = executor.invokeAll(tasks);
-                for(Future<DocumentRevsList> future : futures) {
-                    DocumentRevsList result = future.get();
-
-                    // We promise not to insert documents after cancel is set
-                    if (this.cancel) { break; }
-
-                    // attachments, keyed by docId and revId, so that
-                    // we can add the attachments to the correct leaf
-                    // nodes
-                    HashMap<String[], List<PreparedAttachment>> atts = new HashMap<String[], List<PreparedAttachment>>();
-
-                    // now put together a list of attachments we need to download
-                    if (!config.pullAttachmentsInline) {
-                        try {
-                            for (DocumentRevs documentRevs : result) {
-                                Map<String, Object> attachments = documentRevs.getAttachments();
-                                // keep track of attachments we are going to prepare
-                                ArrayList<PreparedAttachment> preparedAtts = new ArrayList<PreparedAttachment>();
-                                atts.put(new String[]{documentRevs.getId(), documentRevs.getRev()}, preparedAtts);
-
-                                for (String attachmentName : attachments.keySet()) {
-                                    int revpos = (Integer) ((Map<String, Object>) attachments.get(attachmentName)).get("revpos");
-                                    // do we already have the attachment @ this revpos?
-                                    // look back up the tree for this document and see:
-                                    // if we already have it, then we don't need to fetch it
-                                    DocumentRevs.Revisions revs = documentRevs.getRevisions();
-                                    int offset = revs.getStart() - revpos;
-                                    if (offset >= 0 && offset < revs.getIds().size()) {
-                                        String revId = String.valueOf(revpos) + "-" + revs.getIds().get(offset);
-                                        try {
-                                            BasicDocumentRevision dr = this.targetDb.getDbCore().getDocument(documentRevs.getId(), revId);
-                                                Attachment a = this.targetDb.getDbCore()
-                                                        .getAttachment(dr, attachmentName);
-                                                if (a != null) {
-                                                    // skip attachment, already got it
-                                                    continue;
-                                                }
-                                        } catch (DocumentNotFoundException e){
-                                            //do nothing, we may not have the document yet
-                                        }
-                                    }
-                                    String contentType = ((Map<String, String>) attachments.get(attachmentName)).get("content_type");
-                                    String encoding = (String) ((Map<String, Object>) attachments.get(attachmentName)).get("encoding");
-                                    UnsavedStreamAttachment usa = this.sourceDb.getAttachmentStream(documentRevs.getId(), documentRevs.getRev(), attachmentName, contentType, encoding);
-
-                                    // by preparing the attachment here, it is downloaded outside of the database transaction
-                                    preparedAtts.add(this.targetDb.prepareAttachment(usa));
-                                }
-                            }
-                        } catch (Exception e) {
-                            logger.log(Level.SEVERE,
-                                    "There was a problem downloading an attachment to the" +
-                                            " datastore, terminating replication",
-                                    e);
-                            this.cancel = true;
-                        }
-                    }
+                // We promise not to insert documents after cancel is set
+                if (fetched == null || this.cancel) { break; }
 
-                    if (this.cancel)
-                        break;
+                fetchesInFlight--;
+                items.addAll(fetched.items);
+                documentsToInsert += fetched.documents;
 
-                    this.targetDb.bulkInsert(result, atts, config.pullAttachmentsInline);
-                    changesProcessed++;
-                }
-            } catch (InterruptedException ex) {
-                // invokeAll() or future.get() was interrupted, expected on
-                // cancelling as shutdownNow is called in setCancel()
-                if (this.cancel) {
-                    break;
-                } else {
-                    throw ex;
+                // the revisions of a whole batch are inserted in a single transaction
+                if (documentsToInsert >= this.config.insertBatchSize) {
+                    this.targetDb.bulkInsert(items);
+                    changesProcessed += documentsToInsert;
+                    items = new ArrayList<ForceInsertItem>();
+                    documentsToInsert = 0;
                 }
             }
+        } catch (InterruptedException ex) {
+            // waiting for a fetch was interrupted, expected on cancelling
+            // as shutdownNow is called in setCancel()
+            if (!this.cancel) {
+                throw ex;
+            }
+        }
+
+        if (!this.cancel && !items.isEmpty()) {
+            this.targetDb.bulkInsert(items);
+            changesProcessed += documentsToInsert;
         }
 
-        if (!this.cancel) {
+        if (!this.cancel && changes.size() > 0) {
+            String feed = String.format(
+                    "Change feed: { last_seq: %s, change size: %s}",
+                    changes.getLastSeq(),
+                    changes.size()
+            );
+            logger.info(feed);
             try {
-                this.targetDb.putCheckpoint(this.getReplicationId(), changeFeeds.getLastSeq());
+                this.targetDb.putCheckpoint(this.getReplicationId(), changes.getLastSeq());
             } catch (DatastoreException e){
                 logger.log(Level.WARNING,"Failed to put checkpoint doc, next replication will start from previous checkpoint",e);
             }
@@ -356,7 +396,31 @@ class BasicPullStrategy implements ReplicationStrategy {
         return changesProcessed;
     }
 
+    /**
+     * Creates the tasks which fetch the revisions in {@code rows} of the changes feed
+     * which are missing from the local datastore.
+     */
+    private List<Callable<FetchedRevisions>> createFetchTasks(List<ChangesResult.Row> rows) {
+        if (logger.isLoggable(Level.FINER)) {
+            logger.finer("changes feed: " + JSONUtils.toPrettyJson(rows));
+        }
+        ChangesResult chunk = new ChangesResult();
+        chunk.setResults(rows);
+        ChangesResultWrapper changeFeeds = new ChangesResultWrapper(chunk);
+
+        Multimap<String, String> openRevs = changeFeeds.openRevisions(0, changeFeeds.size());
+        Map<String, Collection<String>> missingRevisions = this.targetDb.getDbCore().revsDiff(openRevs);
+        return createFetchTasks(Lists.newArrayList(missingRevisions.keySet()), missingRevisions);
+    }
+
     public String getReplicationId() throws DatastoreException {
+        if (this.replicationId == null) {
+            this.replicationId = computeReplicationId();
+        }
+        return this.replicationId;
+    }
+
+    private String computeReplicationId() throws DatastoreException {
         HashMap<String, String> dict = new HashMap<String, String>();
         dict.put("source", this.sourceDb.getIdentifier());
         dict.put("target", this.targetDb.getIdentifier());
@@ -370,15 +434,263 @@ class BasicPullStrategy implements ReplicationStrategy {
         return new String(sha1Hex);
     }
 
-    private ChangesResultWrapper nextBatch() throws DatastoreException {
-        final Object lastCheckpoint = this.targetDb.getCheckpoint(this.getReplicationId());
-        logger.fine("last checkpoint "+lastCheckpoint);
-        ChangesResult changeFeeds = this.sourceDb.changes(
-                filter,
-                lastCheckpoint,
-                this.config.changeLimitPerBatch);
-        logger.finer("changes feed: "+JSONUtils.toPrettyJson(changeFeeds));
-        return new ChangesResultWrapper(changeFeeds);
+    /**
+     * Starts reading the page of changes since {@code since} for batch {@code batch}.
+     */
+    private ChangesPage readChanges(Object since, int batch) {
+        ChangesPage page = new ChangesPage(since, batch);
+        page.future = this.changesExecutor.submit(page);
+        return page;
+    }
+
+    /**
+     * A page of the changes feed, read on {@code changesExecutor} and handed over to the
+     * replication thread in chunks of rows as they are read.
+     */
+    private class ChangesPage implements Callable<Void>, ChangesResult.RowHandler {
+
+        private final Object since;
+        private final int batch;
+        private final BlockingQueue<List<ChangesResult.Row>> chunks =
+                new LinkedBlockingQueue<List<ChangesResult.Row>>(MAX_CHUNKS_QUEUED);
+        private List<ChangesResult.Row> chunk = new ArrayList<ChangesResult.Row>();
+        private Future<Void> future;
+
+        // set by the reading thread before it queues END_OF_PAGE
+        private volatile int size = 0;
+        private volatile Object lastSeq;
+        private volatile ChangesPage nextPage;
+        private boolean stopped = false;
+
+        ChangesPage(Object since, int batch) {
+            this.since = since;
+            this.batch = batch;
+        }
+
+        @Override
+        public Void call() {
+            if (cancel) {
+                return null;
+            }
+            Object lastSeq = continuous
+                    ? sourceDb.longpollChanges(filter, since, config.changeLimitPerBatch,
+                            LONGPOLL_TIMEOUT_MS, this)
+                    : sourceDb.changes(filter, since, config.changeLimitPerBatch, this);
+            if (stopped) {
+                // the replication was cancelled
+                return null;
+            }
+            Preconditions.checkState(lastSeq != null, "Changes feed has no last_seq");
+            if (!chunk.isEmpty() && !queue(chunk)) {
+                return null;
+            }
+            chunk = null;
+            this.lastSeq = lastSeq;
+            // read ahead if there may be more changes and the replication will get to them
+            if (size >= config.changeLimitPerBatch
+                    && (continuous || batch + 1 < config.batchLimitPerRun)) {
+                nextPage = readChanges(lastSeq, batch + 1);
+            }
+            queue(END_OF_PAGE);
+            return null;
+        }
+
+        @Override
+        public boolean row(ChangesResult.Row row) {
+            size++;
+            chunk.add(row);
+            if (chunk.size() >= ROWS_PER_CHUNK) {
+                List<ChangesResult.Row> full = chunk;
+                chunk = new ArrayList<ChangesResult.Row>();
+                return queue(full);
+            }
+            return true;
+        }
+
+        private boolean queue(List<ChangesResult.Row> rows) {
+            try {
+                chunks.put(rows);
+                return true;
+            } catch (InterruptedException e) {
+                // interrupted by shutdownNow on cancelling
+                Thread.currentThread().interrupt();
+                stopped = true;
+                return false;
+            }
+        }
+
+        /**
+         * @return the next chunk of rows, or null once the whole page has been read or if the
+         *         replication was cancelled
+         */
+        List<ChangesResult.Row> nextChunk() throws ExecutionException, InterruptedException {
+            while (!cancel) {
+                List<ChangesResult.Row> rows = chunks.poll(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                if (rows == END_OF_PAGE) {
+                    return null;
+                } else if (rows != null) {
+                    return rows;
+                } else if (future.isDone() && chunks.isEmpty()) {
+                    // reading the changes feed failed, rethrow its exception
+                    waitFor(future);
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        int size() {
+            return size;
+        }
+
+        Object getLastSeq() {
+            return lastSeq;
+        }
+    }
+
+    /**
+     * Waits for a task submitted to the executor, checking regularly whether the
+     * replication has been cancelled.
+     *
+     * @return the result of the task, or null if the replication was cancelled
+     */
+    private <T> T waitFor(Future<T> future) throws ExecutionException, InterruptedException {
+        while (!this.cancel) {
+            try {
+                return future.get(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // check for cancel and carry on waiting
+            } catch (ExecutionException e) {
+                // tasks interrupted by setCancel() fail, which isn't an error
+                if (this.cancel) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Waits for the next fetch to complete, in whatever order they complete.
+     *
+     * @return the fetched revisions, or null if the replication was cancelled
+     */
+    private FetchedRevisions waitForNextFetch(CompletionService<FetchedRevisions> fetches)
+            throws ExecutionException, InterruptedException {
+        while (!this.cancel) {
+            Future<FetchedRevisions> future =
+                    fetches.poll(CANCEL_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (future != null) {
+                return waitFor(future);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the tasks which fetch the missing revisions of the documents, with their
+     * attachments: a task per {@code insertBatchSize} documents using {@code _bulk_get}
+     * if the source supports it, or a task per document otherwise.
+     */
+    private List<Callable<FetchedRevisions>> createFetchTasks(List<String> ids,
+                                                            Map<String, Collection<String>> revisions) {
+        List<Callable<FetchedRevisions>> tasks = new ArrayList<Callable<FetchedRevisions>>();
+        if (this.useBulkGet) {
+            for (List<String> batch : Lists.partition(ids, this.config.insertBatchSize)) {
+                List<BulkGetRequest> requests = createBulkGetRequests(batch, revisions);
+                if (!requests.isEmpty()) {
+                    tasks.add(new FetchTask(BulkGetRevisionTask.createBulkGetRevisionTask(
+                            this.sourceDb, requests, config.pullAttachmentsInline)));
+                }
+            }
+        } else {
+            for (final Callable<DocumentRevsList> task : createTasks(ids, revisions)) {
+                tasks.add(new FetchTask(new Callable<List<DocumentRevsList>>() {
+                    @Override
+                    public List<DocumentRevsList> call() throws Exception {
+                        return Collections.singletonList(task.call());
+                    }
+                }));
+            }
+        }
+        return tasks;
+    }
+
+    /**
+     * Starts downloading the attachments of the revisions in {@code result} which aren't
+     * already in the local datastore, on {@code attachmentExecutor}.
+     *
+     * @return the attachment downloads, keyed by docId and revId, so that
+     *         we can add the attachments to the correct leaf nodes
+     */
+    private HashMap<String[], List<Future<PreparedAttachment>>> startAttachmentDownloads(
+            DocumentRevsList result) {
+        HashMap<String[], List<Future<PreparedAttachment>>> atts =
+                new HashMap<String[], List<Future<PreparedAttachment>>>();
+        for (DocumentRevs documentRevs : result) {
+            Map<String, Object> attachments = documentRevs.getAttachments();
+            // keep track of attachments we are going to prepare
+            ArrayList<Future<PreparedAttachment>> preparedAtts =
+                    new ArrayList<Future<PreparedAttachment>>();
+            atts.put(new String[]{documentRevs.getId(), documentRevs.getRev()}, preparedAtts);
+
+            for (String attachmentName : attachments.keySet()) {
+                int revpos = (Integer) ((Map<String, Object>) attachments.get(attachmentName)).get("revpos");
+                // do we already have the attachment @ this revpos?
+                // look back up the tree for this document and see:
+                // if we already have it, then we don't need to fetch it
+                DocumentRevs.Revisions revs = documentRevs.getRevisions();
+                int offset = revs.getStart() - revpos;
+                if (offset >= 0 && offset < revs.getIds().size()) {
+                    String revId = String.valueOf(revpos) + "-" + revs.getIds().get(offset);
+                    try {
+                        BasicDocumentRevision dr = this.targetDb.getDbCore().getDocument(documentRevs.getId(), revId);
+                            Attachment a = this.targetDb.getDbCore()
+                                    .getAttachment(dr, attachmentName);
+                            if (a != null) {
+                                // skip attachment, already got it
+                                continue;
+                            }
+                    } catch (DocumentNotFoundException e){
+                        //do nothing, we may not have the document yet
+                    }
+                }
+                preparedAtts.add(this.attachmentExecutor.submit(new AttachmentDownload(
+                        documentRevs.getId(), documentRevs.getRev(), attachmentName,
+                        (Map<String, Object>) attachments.get(attachmentName))));
+            }
+        }
+        return atts;
+    }
+
+    /**
+     * Waits for the attachment downloads started by {@link #startAttachmentDownloads}.
+     */
+    private HashMap<String[], List<PreparedAttachment>> waitForAttachmentDownloads(
+            HashMap<String[], List<Future<PreparedAttachment>>> downloads)
+            throws ExecutionException, InterruptedException {
+        HashMap<String[], List<PreparedAttachment>> atts =
+                new HashMap<String[], List<PreparedAttachment>>();
+        for (Map.Entry<String[], List<Future<PreparedAttachment>>> e : downloads.entrySet()) {
+            List<PreparedAttachment> preparedAtts = new ArrayList<PreparedAttachment>();
+            for (Future<PreparedAttachment> download : e.getValue()) {
+                preparedAtts.add(download.get());
+            }
+            atts.put(e.getKey(), preparedAtts);
+        }
+        return atts;
+    }
+
+    private static void cancelAttachmentDownloads(
+            List<HashMap<String[], List<Future<PreparedAttachment>>>> downloads) {
+        for (HashMap<String[], List<Future<PreparedAttachment>>> atts : downloads) {
+            for (List<Future<PreparedAttachment>> futures : atts.values()) {
+                for (Future<PreparedAttachment> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
     }
 
     public List<Callable<DocumentRevsList>> createTasks(List<String> ids,
@@ -392,25 +704,152 @@ class BasicPullStrategy implements ReplicationStrategy {
                 logger.info("Found document with empty ID in change feed, skipping");
                 continue;
             }
-            // get list for atts_since (these are possible ancestors we have, it's ok to be eager
-            // and get all revision IDs higher up in the tree even if they're not our ancestors and
-            // belong to a different subtree)
-            HashSet<String> possibleAncestors = new HashSet<String>();
-            for (String revId : revisions.get(id)) {
-                List<String> thesePossibleAncestors = targetDb.getDbCore().getPossibleAncestorRevisionIDs(id, revId, 50);
-                if (thesePossibleAncestors != null) {
-                    possibleAncestors.addAll(thesePossibleAncestors);
-                }
-            }
             tasks.add(GetRevisionTask.createGetRevisionTask(this.sourceDb,
                     id,
                     revisions.get(id),
-                    possibleAncestors,
+                    getPossibleAncestors(id, revisions.get(id)),
                     config.pullAttachmentsInline));
         }
         return tasks;
     }
+
+    public List<BulkGetRequest> createBulkGetRequests(List<String> ids,
+                                                      Map<String, Collection<String>> revisions) {
+        List<BulkGetRequest> requests = new ArrayList<BulkGetRequest>();
+        for(String id : ids) {
+            //skip any document with an empty id
+            if(id.isEmpty()){
+                logger.info("Found document with empty ID in change feed, skipping");
+                continue;
+            }
+            requests.add(new BulkGetRequest(id,
+                    revisions.get(id),
+                    getPossibleAncestors(id, revisions.get(id))));
+        }
+        return requests;
+    }
+
+    private Collection<String> getPossibleAncestors(String id, Collection<String> revIds) {
+        // get list for atts_since (these are possible ancestors we have, it's ok to be eager
+        // and get all revision IDs higher up in the tree even if they're not our ancestors and
+        // belong to a different subtree)
+        HashSet<String> possibleAncestors = new HashSet<String>();
+        for (String revId : revIds) {
+            List<String> thesePossibleAncestors = targetDb.getDbCore().getPossibleAncestorRevisionIDs(id, revId, 50);
+            if (thesePossibleAncestors != null) {
+                possibleAncestors.addAll(thesePossibleAncestors);
+            }
+        }
+        return possibleAncestors;
+    }
     
+    /**
+     * The revisions of one or more documents, with their attachments, ready to be inserted.
+     */
+    private static class FetchedRevisions {
+        final List<ForceInsertItem> items = new ArrayList<ForceInsertItem>();
+        int documents = 0;
+    }
+
+    /**
+     * Fetches the missing revisions of one or more documents and downloads their attachments,
+     * outside of any database transaction.
+     */
+    private class FetchTask implements Callable<FetchedRevisions> {
+
+        private final Callable<List<DocumentRevsList>> revisionsTask;
+
+        FetchTask(Callable<List<DocumentRevsList>> revisionsTask) {
+            this.revisionsTask = revisionsTask;
+        }
+
+        @Override
+        public FetchedRevisions call() throws Exception {
+            FetchedRevisions fetched = new FetchedRevisions();
+            List<DocumentRevsList> results = this.revisionsTask.call();
+
+            // the attachments of all the documents are downloaded in parallel
+            List<HashMap<String[], List<Future<PreparedAttachment>>>> downloads =
+                    new ArrayList<HashMap<String[], List<Future<PreparedAttachment>>>>();
+            if (!config.pullAttachmentsInline) {
+                for (DocumentRevsList result : results) {
+                    if (cancel) { break; }
+                    downloads.add(startAttachmentDownloads(result));
+                }
+            }
+
+            for (int i = 0; i < results.size(); i++) {
+
+                if (cancel) { break; }
+
+                HashMap<String[], List<PreparedAttachment>> atts =
+                        new HashMap<String[], List<PreparedAttachment>>();
+                if (!config.pullAttachmentsInline) {
+                    try {
+                        atts = waitForAttachmentDownloads(downloads.get(i));
+                    } catch (Exception e) {
+                        logger.log(Level.SEVERE,
+                                "There was a problem downloading an attachment to the" +
+                                        " datastore, terminating replication",
+                                e);
+                        cancel = true;
+                        cancelAttachmentDownloads(downloads);
+                        break;
+                    }
+                }
+
+                fetched.items.addAll(targetDb.createForceInsertItems(results.get(i), atts,
+                        config.pullAttachmentsInline));
+                fetched.documents++;
+            }
+            return fetched;
+        }
+    }
+
+    /**
+     * Downloads an attachment and prepares it for adding to the datastore, outside of
+     * the database transaction, once its size fits in the attachment byte budget.
+     */
+    private class AttachmentDownload implements Callable<PreparedAttachment> {
+
+        private final String id;
+        private final String rev;
+        private final String name;
+        private final Map<String, Object> stub;
+
+        AttachmentDownload(String id, String rev, String name, Map<String, Object> stub) {
+            this.id = id;
+            this.rev = rev;
+            this.name = name;
+            this.stub = stub;
+        }
+
+        @Override
+        public PreparedAttachment call() throws Exception {
+            // an attachment larger than the budget is downloaded on its own
+            int permits = (int) Math.min(downloadLength(), config.maxAttachmentBytesInFlight);
+            attachmentBytes.acquire(permits);
+            try {
+                String contentType = (String) stub.get("content_type");
+                String encoding = (String) stub.get("encoding");
+                UnsavedStreamAttachment usa = sourceDb.getAttachmentStream(id, rev, name,
+                        contentType, encoding);
+                return targetDb.prepareAttachment(usa);
+            } finally {
+                attachmentBytes.release(permits);
+            }
+        }
+
+        /**
+         * The number of bytes which will be downloaded, or 0 if the source didn't say.
+         */
+        private long downloadLength() {
+            Object length = stub.containsKey("encoded_length") ?
+                    stub.get("encoded_length") : stub.get("length");
+            return (length instanceof Number) ? ((Number) length).longValue() : 0;
+        }
+    }
+
     @Override
     public EventBus getEventBus() {
         return eventBus;
@@ -16,7 +16,6 @@ package com.cloudant.sync.replication;
 
 import com.cloudant.mazha.CouchClient;
 import com.cloudant.mazha.CouchConfig;
-import com.cloudant.mazha.json.JSONHelper;
 import com.cloudant.sync.datastore.Attachment;
 import com.cloudant.sync.datastore.AttachmentException;
 import com.cloudant.sync.datastore.Changes;
@@ -27,12 +26,15 @@ import com.cloudant.sync.datastore.DocumentException;
 import com.cloudant.sync.datastore.DocumentRevisionTree;
 import com.cloudant.sync.datastore.MultipartAttachmentWriter;
 import com.cloudant.sync.datastore.RevisionHistoryHelper;
+import com.cloudant.sync.notifications.DocumentModified;
 import com.cloudant.sync.util.JSONUtils;
 import com.cloudant.sync.util.Misc;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 
 import org.apache.commons.codec.binary.Hex;
 
@@ -61,6 +63,15 @@ class BasicPushStrategy implements ReplicationStrategy {
 
     private final String name;
 
+    // Whether to keep pushing local changes as they are made, see PushReplication#continuous
+    final boolean continuous;
+
+    // Sequence of the last change pushed, read from the remote checkpoint for the first batch
+    private Long lastPushSequence;
+
+    // Set while a continuous replication is listening for local changes
+    volatile LocalChanges localChanges;
+
     // Flag to stop the replication thread.
     // Volatile as might be set from another thread.
     private volatile boolean cancel;
@@ -73,7 +84,10 @@ class BasicPushStrategy implements ReplicationStrategy {
      */
     private volatile boolean replicationTerminated = false;
 
-    private static JSONHelper sJsonHelper = new JSONHelper();
+    // How long a continuous replication waits for local changes to stop being made before
+    // pushing them, and the longest it waits after the first change.
+    static final long LIVE_PUSH_QUIET_PERIOD_MS = 250;
+    static final long LIVE_PUSH_MAX_DELAY_MS = 2000;
 
     public BasicPushStrategy(PushReplication pushReplication) {
         this(pushReplication, null);
@@ -92,6 +106,7 @@ class BasicPushStrategy implements ReplicationStrategy {
         this.sourceDb = new DatastoreWrapper((DatastoreExtended) pushReplication.source);
         // Push config is immutable
         this.config = config;
+        this.continuous = pushReplication.continuous;
 
         this.name = String.format("%s [%s]", LOG_TAG, pushReplication.getReplicatorName());
     }
@@ -104,6 +119,12 @@ class BasicPushStrategy implements ReplicationStrategy {
     @Override
     public void setCancel() {
         this.cancel = true;
+
+        // stop waiting for local changes
+        LocalChanges localChanges = this.localChanges;
+        if (localChanges != null) {
+            localChanges.cancelled();
+        }
     }
 
     public int getDocumentCounter() {
@@ -161,10 +182,54 @@ class BasicPushStrategy implements ReplicationStrategy {
         }
 
         this.documentCounter = 0;
-        for(this.batchCounter = 1 ; this.batchCounter < config.batchLimitPerRun; this.batchCounter ++) {
+        this.batchCounter = 0;
+
+        // Listen for local changes before pushing the outstanding ones, so that none are
+        // missed in between.
+        LocalChanges localChanges = null;
+        if (this.continuous) {
+            localChanges = new LocalChanges();
+            this.localChanges = localChanges;
+            this.sourceDb.getDbCore().getEventBus().register(localChanges);
+        }
+
+        try {
+            pushOutstandingChanges();
+
+            // Push further local changes as they are made, until cancelled
+            while (this.continuous && localChanges.await()) {
+                pushOutstandingChanges();
+            }
+        } finally {
+            if (localChanges != null) {
+                this.sourceDb.getDbCore().getEventBus().unregister(localChanges);
+                this.localChanges = null;
+            }
+        }
+
+        long endTime = System.currentTimeMillis();
+        long deltaTime = endTime - startTime;
+        String msg =  String.format(
+            "Push completed in %sms (%s total changes processed)",
+            deltaTime,
+            this.documentCounter
+        );
+        logger.info(msg);
+    }
+
+    /**
+     * Pushes the local changes made since the last checkpoint, a batch at a time, until
+     * there are none left or, unless the replication is continuous, the batch limit is
+     * reached.
+     */
+    private void pushOutstandingChanges()
+            throws InterruptedException, ExecutionException, AttachmentException, DatastoreException {
+        for (int batchesThisRun = 1; this.continuous || batchesThisRun < config.batchLimitPerRun;
+             batchesThisRun++) {
 
             if (this.cancel) { return; }
 
+            this.batchCounter++;
             String msg = String.format(
                 "Batch %s started (completed %s changes so far)",
                 this.batchCounter,
@@ -205,21 +270,16 @@ class BasicPushStrategy implements ReplicationStrategy {
                 break;
             }
         }
-
-        long endTime = System.currentTimeMillis();
-        long deltaTime = endTime - startTime;
-        String msg =  String.format(
-            "Push completed in %sms (%s total changes processed)",
-            deltaTime,
-            this.documentCounter
-        );
-        logger.info(msg);
     }
 
     private Changes getNextBatch() throws ExecutionException, InterruptedException , DatastoreException{
-        long lastPushSequence = getLastCheckpointSequence();
-        logger.fine("Last push sequence from remote database: " + lastPushSequence);
-        return this.sourceDb.getDbCore().changes(lastPushSequence,
+        // the checkpoint is only read from the remote database once, after that we
+        // carry on from the last batch pushed
+        if (this.lastPushSequence == null) {
+            this.lastPushSequence = getLastCheckpointSequence();
+            logger.fine("Last push sequence from remote database: " + this.lastPushSequence);
+        }
+        return this.sourceDb.getDbCore().changes(this.lastPushSequence,
                 config.changeLimitPerBatch);
     }
 
@@ -230,14 +290,47 @@ class BasicPushStrategy implements ReplicationStrategy {
     private class ItemsToPush
     {
         public ItemsToPush() {
-            serializedDocs = new ArrayList<String>();
+            docs = new ArrayList<RevisionToPush>();
             multiparts = new ArrayList<MultipartAttachmentWriter>();
         }
 
-        List<String> serializedDocs;
+        List<RevisionToPush> docs;
         List<MultipartAttachmentWriter> multiparts;
     }
 
+    /**
+     * A revision to push via _bulk_docs, which is only converted to JSON when it's
+     * written to the request, so that a batch's JSON is never all in memory at once.
+     */
+    private class RevisionToPush
+    {
+        final List<BasicDocumentRevision> path;
+        final List<Attachment> atts;
+        final int minRevPos;
+
+        RevisionToPush(List<BasicDocumentRevision> path, List<Attachment> atts, int minRevPos) {
+            this.path = path;
+            this.atts = atts;
+            this.minRevPos = minRevPos;
+        }
+
+        Map<String, Object> toJson() {
+            // get the json, and inline any small attachments
+            return RevisionHistoryHelper.revisionHistoryToJson(path,
+                    atts,
+                    config.pushAttachmentsInline,
+                    minRevPos);
+        }
+    }
+
+    private static final Function<RevisionToPush, Map<String, Object>> REVISION_TO_JSON =
+            new Function<RevisionToPush, Map<String, Object>>() {
+                @Override
+                public Map<String, Object> apply(RevisionToPush revision) {
+                    return revision.toJson();
+                }
+            };
+
     private int processOneChangesBatch(Changes changes) throws AttachmentException, DatastoreException {
 
         int changesProcessed = 0;
@@ -257,17 +350,20 @@ class BasicPushStrategy implements ReplicationStrategy {
             Map<String, CouchClient.MissingRevisions> docMissingRevs = this.targetDb.revsDiff(docOpenRevs);
 
             ItemsToPush itemsToPush = missingRevisionsToJsonDocs(allTrees, docMissingRevs);
-            List<String> serialisedMissingRevs = itemsToPush.serializedDocs;
+            // a lazy view, the revisions are converted to JSON as they are sent
+            List<Map<String, Object>> missingRevs =
+                    Lists.transform(itemsToPush.docs, REVISION_TO_JSON);
             List<MultipartAttachmentWriter> multiparts = itemsToPush.multiparts;
 
             if (!this.cancel) {
                 this.targetDb.putMultiparts(multiparts);
-                this.targetDb.bulkSerializedDocs(serialisedMissingRevs);
+                this.targetDb.bulkCreateDocs(missingRevs);
                 changesProcessed += docMissingRevs.size();
             }
         }
 
         if (!this.cancel) {
+            this.lastPushSequence = changes.getLastSequence();
             try {
                 this.putCheckpoint(String.valueOf(changes.getLastSequence()));
             } catch (DatastoreException e){
@@ -280,14 +376,14 @@ class BasicPushStrategy implements ReplicationStrategy {
     }
 
     /**
-     * Generate serialised JSON strings and/or MIME multipart/related writer objects for revisions
+     * Generate revisions to serialise as JSON and/or MIME multipart/related writer objects for revisions
      * which are missing on the server
      *
      * @param allTrees batch of document trees, keyed by document id, in local database
      * @param revisions {@code MissingRevisions} objects, keyed by document id, as returned from
      *                  remote database by querying revs_diff endpoint.
      *
-     * @return {@code ItemsToPush} object representing serialised JSON strings and/or MIME
+     * @return {@code ItemsToPush} object representing revisions to serialise as JSON and/or MIME
      *         multipart/related writer
      *
      * @throws AttachmentException
@@ -309,9 +405,9 @@ class BasicPushStrategy implements ReplicationStrategy {
                 long sequence = tree.lookup(docId, rev).getSequence();
                 List<BasicDocumentRevision> path = tree.getPathForNode(sequence);
 
-                // get the attachments for the leaf of this path
+                // get the attachments for the leaf of this path, loaded with the tree
                 BasicDocumentRevision dr = path.get(0);
-                List<? extends Attachment> atts = this.sourceDb.getDbCore().attachmentsForRevision(dr);
+                List<Attachment> atts = new ArrayList<Attachment>(dr.getAttachments().values());
 
                 // get common ancestor generation - needed to correctly stub out attachments
                 // closest back (first) instance of one of the possible ancestors rev id in the history tree
@@ -323,11 +419,6 @@ class BasicPushStrategy implements ReplicationStrategy {
                     }
                 }
 
-                // get the json, and inline any small attachments
-                Map<String, Object> json = RevisionHistoryHelper.revisionHistoryToJson(path,
-                        atts,
-                        this.config.pushAttachmentsInline,
-                        minRevPos);
                 // if there are any large atts we will get a multipart writer, otherwise null
                 MultipartAttachmentWriter mpw = RevisionHistoryHelper.createMultipartWriter(dr,
                         atts,
@@ -336,7 +427,7 @@ class BasicPushStrategy implements ReplicationStrategy {
 
                 // now we will have either a multipart or a plain doc
                 if (mpw == null) {
-                    itemsToPush.serializedDocs.add(sJsonHelper.toJson(json));
+                    itemsToPush.docs.add(new RevisionToPush(path, atts, minRevPos));
                 } else {
                     itemsToPush.multiparts.add(mpw);
                 }
@@ -375,6 +466,72 @@ class BasicPushStrategy implements ReplicationStrategy {
         targetDb.putCheckpoint(this.getReplicationId(), checkpoint);
     }
     
+    /**
+     * Listens for changes to documents in the local datastore, so that a continuous
+     * replication can push them.
+     *
+     * Changes are debounced: the replication waits until no change has been made for
+     * {@code LIVE_PUSH_QUIET_PERIOD_MS}, or at most {@code LIVE_PUSH_MAX_DELAY_MS} after
+     * the first change, so that a burst of changes is pushed in one go. The changes
+     * themselves are read with {@code changes()} from the last sequence pushed, which
+     * keeps the checkpoint correct whatever events are received.
+     */
+    class LocalChanges {
+
+        private boolean pending = false;
+        private boolean idle = false;
+        private long firstChangeTime;
+        private long lastChangeTime;
+
+        @Subscribe
+        public synchronized void onDocumentModified(DocumentModified event) {
+            long now = System.currentTimeMillis();
+            if (!pending) {
+                pending = true;
+                firstChangeTime = now;
+            }
+            lastChangeTime = now;
+            notifyAll();
+        }
+
+        synchronized void cancelled() {
+            notifyAll();
+        }
+
+        /**
+         * @return true if the replication has pushed all the changes it knows about and
+         *         is waiting for more to be made
+         */
+        synchronized boolean isIdle() {
+            return idle;
+        }
+
+        /**
+         * Waits for local changes to be made, and for them to settle.
+         *
+         * @return true if there are changes to push, or false if the replication
+         *         was cancelled
+         */
+        synchronized boolean await() throws InterruptedException {
+            while (!pending && !cancel) {
+                idle = true;
+                wait();
+            }
+            idle = false;
+            while (!cancel) {
+                long due = Math.min(lastChangeTime + LIVE_PUSH_QUIET_PERIOD_MS,
+                        firstChangeTime + LIVE_PUSH_MAX_DELAY_MS);
+                long now = System.currentTimeMillis();
+                if (now >= due) {
+                    break;
+                }
+                wait(due - now);
+            }
+            pending = false;
+            return !cancel;
+        }
+    }
+
     @Override
     public EventBus getEventBus() {
         return eventBus;
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import com.cloudant.common.RetriableTask;
+import com.cloudant.mazha.BulkGetRequest;
+import com.cloudant.sync.datastore.DocumentRevsList;
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+/**
+ * BulkGetRevisionTask fetches the revision trees for the open revisions of several documents
+ * as a Callable, using a single {@code _bulk_get} request.
+ *
+ * It is the bulk equivalent of {@link GetRevisionTask}, used when the source database
+ * supports {@code _bulk_get}.
+ *
+ * @see CouchDB#bulkGetRevisions(java.util.List, boolean)
+ */
+class BulkGetRevisionTask implements Callable<List<DocumentRevsList>> {
+
+    private static final Logger logger = Logger.getLogger(BulkGetRevisionTask.class.getCanonicalName());
+
+    private final List<BulkGetRequest> requests;
+    private final boolean pullAttachmentsInline;
+    CouchDB sourceDb;
+
+    public static Callable<List<DocumentRevsList>> createBulkGetRevisionTask(CouchDB sourceDb,
+                                                                            List<BulkGetRequest> requests,
+                                                                            boolean pullAttachmentsInline) {
+        BulkGetRevisionTask task = new BulkGetRevisionTask(sourceDb, requests, pullAttachmentsInline);
+        return new RetriableTask<List<DocumentRevsList>>(task);
+    }
+
+    public BulkGetRevisionTask(CouchDB sourceDb,
+                               List<BulkGetRequest> requests,
+                               boolean pullAttachmentsInline) {
+        Preconditions.checkNotNull(sourceDb, "sourceDb cannot be null");
+        Preconditions.checkNotNull(requests, "requests cannot be null");
+
+        this.sourceDb = sourceDb;
+        this.requests = requests;
+        this.pullAttachmentsInline = pullAttachmentsInline;
+    }
+
+    @Override
+    public List<DocumentRevsList> call() throws Exception {
+        logger.finer("Fetching documents: " + this.requests.size());
+        return this.sourceDb.bulkGetRevisions(this.requests, this.pullAttachmentsInline);
+    }
+
+    @Override
+    public String toString() {
+        return "BulkGetRevisionTask: " + this.requests;
+    }
+}
@@ -14,16 +14,20 @@
 
 package com.cloudant.sync.replication;
 
+import com.cloudant.mazha.BulkGetRequest;
+import com.cloudant.mazha.BulkGetResponse;
 import com.cloudant.mazha.ChangesResult;
 import com.cloudant.mazha.CouchClient;
 import com.cloudant.mazha.CouchConfig;
 import com.cloudant.mazha.CouchException;
 import com.cloudant.mazha.DocumentRevs;
+import com.cloudant.mazha.MissingOpenRevision;
 import com.cloudant.mazha.OkOpenRevision;
 import com.cloudant.mazha.OpenRevision;
 import com.cloudant.mazha.Response;
 import com.cloudant.sync.datastore.Attachment;
 import com.cloudant.sync.datastore.BasicDocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevsList;
 import com.cloudant.sync.datastore.MultipartAttachmentWriter;
 import com.cloudant.sync.datastore.UnsavedStreamAttachment;
 import com.google.common.base.Preconditions;
@@ -35,6 +39,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -123,6 +128,33 @@ public class CouchClientWrapper implements CouchDB {
         }
     }
 
+    @Override
+    public Object changes(Replication.Filter filter, Object lastSequence, int limit,
+                          ChangesResult.RowHandler handler) {
+        if(filter == null) {
+            return couchClient.changes(null, null, lastSequence, limit, handler);
+        } else {
+            return couchClient.changes(filter.name, filter.parameters, lastSequence, limit, handler);
+        }
+    }
+
+    @Override
+    public Object longpollChanges(Replication.Filter filter, Object lastSequence, int limit,
+                                  long timeoutMillis, ChangesResult.RowHandler handler) {
+        if(filter == null) {
+            return couchClient.longpollChanges(null, null, lastSequence, limit, timeoutMillis,
+                    handler);
+        } else {
+            return couchClient.longpollChanges(filter.name, filter.parameters, lastSequence,
+                    limit, timeoutMillis, handler);
+        }
+    }
+
+    @Override
+    public void abortChanges() {
+        couchClient.abortChanges();
+    }
+
     /**
      * For each open revision, there should be a response of <code>DocumentRevs</code> returned.
      *
@@ -150,6 +182,51 @@ public class CouchClientWrapper implements CouchDB {
         return documentRevs;
     }
 
+    @Override
+    public boolean isBulkSupported() {
+        return couchClient.isBulkSupported();
+    }
+
+    /**
+     * For each requested document, there should be a <code>DocumentRevs</code> returned for
+     * each of its open revisions.
+     *
+     * @see DocumentRevs
+     */
+    @Override
+    public List<DocumentRevsList> bulkGetRevisions(List<BulkGetRequest> requests,
+                                                   boolean pullAttachmentsInline) {
+        BulkGetResponse response =
+                couchClient.bulkReadDocsWithOpenRevisions(requests, pullAttachmentsInline);
+
+        // results are per revision, so group them back together by document
+        Map<String, List<DocumentRevs>> revsById = new LinkedHashMap<String, List<DocumentRevs>>();
+        for (BulkGetRequest request : requests) {
+            revsById.put(request.id, new ArrayList<DocumentRevs>());
+        }
+        for (BulkGetResponse.Result result : response.results) {
+            List<DocumentRevs> documentRevs = revsById.get(result.id);
+            if (documentRevs == null) {
+                throw new RuntimeException("Unexpected document in bulk get response: "
+                        + result.id);
+            }
+            for (OpenRevision openRev : result.docs) {
+                if (openRev instanceof OkOpenRevision) {
+                    documentRevs.add(((OkOpenRevision) openRev).getDocumentRevs());
+                } else {
+                    throw new RuntimeException("Missing open revision for document:" + result.id
+                            + ", revision: " + ((MissingOpenRevision) openRev).getRevision());
+                }
+            }
+        }
+
+        List<DocumentRevsList> documentRevsLists = new ArrayList<DocumentRevsList>();
+        for (List<DocumentRevs> documentRevs : revsById.values()) {
+            documentRevsLists.add(new DocumentRevsList(documentRevs));
+        }
+        return documentRevsLists;
+    }
+
     @Override
     public Response create(Object object) {
         return couchClient.create(object);
@@ -225,6 +302,20 @@ public class CouchClientWrapper implements CouchDB {
         }
     }
 
+    @Override
+    public void bulkCreateDocs(List<Map<String, Object>> revisions) {
+        logger.entering("com.cloudant.sync.replication.CouchClientWrapper","bulkCreateDocs",revisions.size());
+        if(revisions.isEmpty()) {
+            return;
+        }
+
+        List<Response> responses = couchClient.bulk(revisions);
+        if(responses != null && responses.size() > 0) {
+            logger.severe(String.format("Unknown bulk API error: %s",responses));
+            throw new RuntimeException("Unknown bulk api error");
+        }
+    }
+
     @Override
     public List<Response> putMultiparts(List<MultipartAttachmentWriter> multiparts) {
         logger.entering("com.cloudant.sync.replication.CouchClientWrapper","putMultiparts",multiparts);
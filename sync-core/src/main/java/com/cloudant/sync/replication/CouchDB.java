@@ -14,11 +14,13 @@
 
 package com.cloudant.sync.replication;
 
+import com.cloudant.mazha.BulkGetRequest;
 import com.cloudant.mazha.ChangesResult;
 import com.cloudant.mazha.CouchClient;
 import com.cloudant.mazha.DocumentRevs;
 import com.cloudant.mazha.Response;
 import com.cloudant.sync.datastore.BasicDocumentRevision;
+import com.cloudant.sync.datastore.DocumentRevsList;
 import com.cloudant.sync.datastore.MultipartAttachmentWriter;
 import com.cloudant.sync.datastore.UnsavedStreamAttachment;
 
@@ -46,12 +48,60 @@ interface CouchDB {
 
     public ChangesResult changes(Object lastSequence, int limit);
     public ChangesResult changes(Replication.Filter filter,Object lastSequence, int limit);
+
+    /**
+     * Reads the changes feed, passing each row to {@code handler} as it arrives.
+     *
+     * @return the {@code last_seq} of the feed, or {@code null} if {@code handler} stopped
+     *         reading before the end of the feed
+     */
+    public Object changes(Replication.Filter filter, Object lastSequence, int limit,
+                          ChangesResult.RowHandler handler);
+
+    /**
+     * Reads the changes feed using {@code feed=longpoll}, passing each row to {@code handler}
+     * as it arrives. If there are no changes since {@code lastSequence}, waits for up to
+     * {@code timeoutMillis} for a change to be made.
+     *
+     * @return the {@code last_seq} of the feed, or {@code null} if {@code handler} stopped
+     *         reading before the end of the feed
+     * @see #abortChanges()
+     */
+    public Object longpollChanges(Replication.Filter filter, Object lastSequence, int limit,
+                                  long timeoutMillis, ChangesResult.RowHandler handler);
+
+    /**
+     * Aborts any changes feed requests in progress, so that threads waiting for a
+     * {@code longpoll} feed stop straight away.
+     */
+    public void abortChanges();
+
     public List<DocumentRevs> getRevisions(String documentId,
                                            Collection<String> revisionIds,
                                            Collection<String> attsSince,
                                            boolean pullAttachmentsInline);
+
+    /**
+     * Returns true if the database supports fetching many documents in a single request,
+     * see {@link #bulkGetRevisions(java.util.List, boolean)}.
+     */
+    public boolean isBulkSupported();
+
+    /**
+     * Fetches the open revisions of many documents in a single request. Returns one
+     * {@code DocumentRevsList} for each document, in the order of {@code requests}.
+     */
+    public List<DocumentRevsList> bulkGetRevisions(List<BulkGetRequest> requests,
+                                                   boolean pullAttachmentsInline);
     public void bulk(List<BasicDocumentRevision> revisions);
     public void bulkSerializedDocs(List<String> serializedDocs);
+
+    /**
+     * Inserts revisions, in the JSON form expected by {@code _bulk_docs}, without creating
+     * new revision IDs. Each revision is serialised as the request is sent, so
+     * {@code revisions} may compute its elements on demand.
+     */
+    public void bulkCreateDocs(List<Map<String, Object>> revisions);
     public List<Response> putMultiparts(List<MultipartAttachmentWriter> multiparts);
     public Map<String, CouchClient.MissingRevisions> revsDiff(Map<String, Set<String>> revisions);
     public UnsavedStreamAttachment getAttachmentStream(String id, String rev, String attachmentName, String contentType, String encoding);
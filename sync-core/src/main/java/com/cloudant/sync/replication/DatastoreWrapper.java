@@ -26,10 +26,12 @@ import com.cloudant.sync.datastore.DocumentNotFoundException;
 import com.cloudant.sync.datastore.DocumentRevisionTree;
 import com.cloudant.sync.datastore.DocumentRevsList;
 import com.cloudant.sync.datastore.DocumentRevsUtils;
+import com.cloudant.sync.datastore.ForceInsertItem;
 import com.cloudant.sync.datastore.LocalDocument;
 import com.cloudant.sync.datastore.PreparedAttachment;
 import com.cloudant.sync.util.JSONUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -89,6 +91,22 @@ class DatastoreWrapper {
     }
 
     public void bulkInsert(DocumentRevsList documentRevsList, Map<String[],List<PreparedAttachment>> preparedAttachments, boolean pullAttachmentsInline) throws DocumentException  {
+        bulkInsert(createForceInsertItems(documentRevsList, preparedAttachments, pullAttachmentsInline));
+    }
+
+    /**
+     * Inserts the given revisions in a single transaction.
+     *
+     * @see DatastoreExtended#forceInsert(java.util.List)
+     */
+    public void bulkInsert(List<ForceInsertItem> items) throws DocumentException {
+        if (!items.isEmpty()) {
+            dbCore.forceInsert(items);
+        }
+    }
+
+    public List<ForceInsertItem> createForceInsertItems(DocumentRevsList documentRevsList, Map<String[],List<PreparedAttachment>> preparedAttachments, boolean pullAttachmentsInline) {
+        List<ForceInsertItem> items = new ArrayList<ForceInsertItem>();
         for(DocumentRevs documentRevs: documentRevsList) {
             logger.log(Level.FINEST,"Bulk inserting document revs: %s",documentRevs);
 
@@ -96,19 +114,17 @@ class DatastoreWrapper {
 
             List<String> revisions = DocumentRevsUtils.createRevisionIdHistory(documentRevs);
             Map<String, Object> attachments = documentRevs.getAttachments();
-            dbCore.forceInsert(doc, revisions, attachments,preparedAttachments, pullAttachmentsInline);
+            items.add(new ForceInsertItem(doc, revisions, attachments, preparedAttachments, pullAttachmentsInline));
         }
+        return items;
     }
 
     Map<String, DocumentRevisionTree> getDocumentTrees(List<BasicDocumentRevision> documents) {
-        Map<String, DocumentRevisionTree> allDocumentTrees =
-                new HashMap<String, DocumentRevisionTree>();
+        List<String> docIds = new ArrayList<String>(documents.size());
         for(BasicDocumentRevision doc: documents) {
-            DocumentRevisionTree tree =
-                    this.dbCore.getAllRevisionsOfDocument(doc.getId());
-            allDocumentTrees.put(doc.getId(), tree);
+            docIds.add(doc.getId());
         }
-        return allDocumentTrees;
+        return this.dbCore.getAllRevisionsOfDocuments(docIds);
     }
 
     protected PreparedAttachment prepareAttachment(Attachment att) throws AttachmentException {
@@ -14,6 +14,8 @@
 
 package com.cloudant.sync.replication;
 
+import com.google.common.base.Preconditions;
+
 /**
  * <p>Describes the configuration for a replication with the local datastore
  * as target.</p>
@@ -24,11 +26,17 @@ class PullConfiguration {
     public static final int DEFAULT_MAX_BATCH_COUNTER_PER_RUN = 100;
     public static final int DEFAULT_INSERT_BATCH_SIZE = 10;
     public static final boolean DEFAULT_PULL_ATTACHMENTS_INLINE = false;
+    public static final int DEFAULT_MAX_FETCHES_IN_FLIGHT = 4;
+    public static final int DEFAULT_MAX_ATTACHMENT_DOWNLOADS = 4;
+    public static final int DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT = 16 * 1024 * 1024;
 
     final int changeLimitPerBatch;
     final int batchLimitPerRun;
     final int insertBatchSize;
     final boolean pullAttachmentsInline;
+    final int maxFetchesInFlight;
+    final int maxAttachmentDownloads;
+    final int maxAttachmentBytesInFlight;
 
     /**
      * <p>Construct a {@code PullConfiguration} with the default settings.</p>
@@ -48,9 +56,50 @@ class PullConfiguration {
      *                        at a time.
      */
     public PullConfiguration(int changeLimitPerBatch, int batchLimitPerRun, int insertBatchSize, boolean pullAttachmentsInline) {
+        this(changeLimitPerBatch, batchLimitPerRun, insertBatchSize, pullAttachmentsInline, DEFAULT_MAX_FETCHES_IN_FLIGHT);
+    }
+
+    /**
+     * <p>Construct a {@code PullConfiguration} with custom settings.</p>
+     * @param maxFetchesInFlight Maximum number of document fetches (a
+     *                           {@code _bulk_get} request or a single document
+     *                           request, with its attachments) queued or running
+     *                           while earlier documents are being inserted.
+     * @see #PullConfiguration(int, int, int, boolean)
+     */
+    public PullConfiguration(int changeLimitPerBatch, int batchLimitPerRun, int insertBatchSize, boolean pullAttachmentsInline, int maxFetchesInFlight) {
+        this(changeLimitPerBatch, batchLimitPerRun, insertBatchSize, pullAttachmentsInline, maxFetchesInFlight,
+                DEFAULT_MAX_ATTACHMENT_DOWNLOADS, DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT);
+    }
+
+    /**
+     * <p>Construct a {@code PullConfiguration} with custom settings.</p>
+     * @param maxAttachmentDownloads Maximum number of attachments downloaded at
+     *                               the same time, when attachments aren't
+     *                               pulled inline.
+     * @param maxAttachmentBytesInFlight Maximum total size in bytes of the
+     *                                   attachments being downloaded at the same
+     *                                   time. An attachment larger than this is
+     *                                   downloaded on its own.
+     * @throws IllegalArgumentException if {@code maxFetchesInFlight},
+     *         {@code maxAttachmentDownloads} or {@code maxAttachmentBytesInFlight}
+     *         isn't positive
+     * @see #PullConfiguration(int, int, int, boolean, int)
+     */
+    public PullConfiguration(int changeLimitPerBatch, int batchLimitPerRun, int insertBatchSize, boolean pullAttachmentsInline, int maxFetchesInFlight,
+                             int maxAttachmentDownloads, int maxAttachmentBytesInFlight) {
+        Preconditions.checkArgument(maxFetchesInFlight > 0,
+                "maxFetchesInFlight must be greater than 0");
+        Preconditions.checkArgument(maxAttachmentDownloads > 0,
+                "maxAttachmentDownloads must be greater than 0");
+        Preconditions.checkArgument(maxAttachmentBytesInFlight > 0,
+                "maxAttachmentBytesInFlight must be greater than 0");
         this.changeLimitPerBatch = changeLimitPerBatch;
         this.batchLimitPerRun = batchLimitPerRun;
         this.insertBatchSize = insertBatchSize;
         this.pullAttachmentsInline = pullAttachmentsInline;
+        this.maxFetchesInFlight = maxFetchesInFlight;
+        this.maxAttachmentDownloads = maxAttachmentDownloads;
+        this.maxAttachmentBytesInFlight = maxAttachmentBytesInFlight;
     }
 }
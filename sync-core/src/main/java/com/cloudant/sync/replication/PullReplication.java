@@ -45,6 +45,17 @@ public class PullReplication extends Replication {
      * @see <a href="http://docs.couchdb.org/en/latest/couchapp/ddocs.html#filter-functions">CouchDB docs on filter functions</a>
      */
     public Filter filter;
+    /**
+     * Whether the replication keeps running once it has caught up with the
+     * remote database, pulling further changes as they are made.
+     *
+     * <p>A continuous replication waits for changes using a
+     * {@code feed=longpoll} changes feed, so changes are pulled as soon as
+     * they are made, without restarting the replication. It only completes
+     * when it is stopped with {@link Replicator#stop()}, or if it fails.
+     * Defaults to {@code false}.</p>
+     */
+    public boolean continuous = false;
 
     /**
      * Constructs a PullReplication object, configured by assigning to the
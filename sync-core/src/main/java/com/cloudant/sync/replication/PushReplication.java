@@ -39,6 +39,18 @@ public class PushReplication extends Replication {
      * The local datastore for this replication.
      */
     public Datastore source;
+    /**
+     * Whether the replication keeps running once it has pushed the local
+     * changes, pushing further changes as they are made.
+     *
+     * <p>A continuous replication listens for documents being created,
+     * updated and deleted in the local datastore, and pushes the changes
+     * shortly after they stop being made, so that a burst of changes is
+     * pushed in one go. It only completes when it is stopped with
+     * {@link Replicator#stop()}, or if it fails. Defaults to
+     * {@code false}.</p>
+     */
+    public boolean continuous = false;
 
     /**
      * Constructs a PushReplication object, configured by assigning to the
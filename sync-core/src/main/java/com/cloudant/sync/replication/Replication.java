@@ -151,6 +151,19 @@ public abstract class Replication {
         }
     }
 
+    /**
+     * Whether to gzip the bodies of requests which send many documents or
+     * revisions at once to the remote database, such as {@code _bulk_docs}
+     * when pushing and {@code _revs_diff} and {@code _bulk_get} when pulling.
+     *
+     * <p>Compression saves bandwidth on slow networks, but not all servers
+     * accept compressed request bodies, so this defaults to {@code false}.
+     * Responses are always decompressed if the server compresses them.</p>
+     *
+     * @see CouchConfig#setRequestCompressionEnabled(boolean)
+     */
+    public boolean compressRequests = false;
+
     protected Replication() {
         /* prevent instances of this class being constructed */
     }
@@ -178,7 +191,9 @@ public abstract class Replication {
     abstract ReplicationStrategy createReplicationStrategy();
 
     CouchConfig createCouchConfig(URI uri) {
-        return new CouchConfig(uri);
+        CouchConfig config = new CouchConfig(uri);
+        config.setRequestCompressionEnabled(this.compressRequests);
+        return config;
     }
 
     void checkURI(URI uri) {
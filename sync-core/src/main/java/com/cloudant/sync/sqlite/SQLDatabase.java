@@ -118,6 +118,19 @@ public abstract class SQLDatabase {
      */
     public abstract int getVersion();
 
+    /**
+     * Switches the database to write-ahead logging, so that readers on other
+     * connections neither block, nor are blocked by, the writer.
+     *
+     * The journal mode is persistent, so this only needs to be called once,
+     * on the connection used for writing.
+     *
+     * @return true if the database is now using write-ahead logging
+     *
+     * @see <a href="http://www.sqlite.org/wal.html">SQLite Write-Ahead Logging</a>
+     */
+    public abstract boolean enableWriteAheadLogging();
+
     /**
      * Open the database
      */
@@ -233,4 +246,31 @@ public abstract class SQLDatabase {
      */
     public abstract long insertWithOnConflict(String table, ContentValues initialValues, int conflictAlgorithm);
 
+    /**
+     * <p>Runs an INSERT statement and returns the row ID of the inserted row.</p>
+     *
+     * <p>Unlike {@link #insert(String, ContentValues)}, the SQL is passed as-is, so callers
+     * which insert rows of the same shape over and over should use a constant SQL string.
+     * The compiled statement is then kept in the connection's statement cache and reused,
+     * rather than the SQL being built and compiled for each row.</p>
+     *
+     * @param sql the INSERT statement, with ?s for the values
+     * @param bindArgs the values to bind to the ?s, in order
+     * @return the row ID of the newly inserted row, or -1 if an error occurred
+     */
+    public abstract long executeInsert(String sql, Object[] bindArgs);
+
+    /**
+     * <p>Runs an UPDATE or DELETE statement and returns the number of rows affected.</p>
+     *
+     * <p>As for {@link #executeInsert(String, Object[])}, the compiled statement is cached
+     * and reused for subsequent calls with the same SQL.</p>
+     *
+     * @param sql the UPDATE or DELETE statement, with ?s for the values
+     * @param bindArgs the values to bind to the ?s, in order
+     * @return the number of rows affected, or -1 if an error occurred and the
+     *         implementation reports errors by return value rather than by throwing
+     */
+    public abstract int executeUpdateDelete(String sql, Object[] bindArgs);
+
 }
\ No newline at end of file
@@ -41,7 +41,7 @@ public class SQLDatabaseFactory {
         makeSureFileExists(dbFilename);
         if(Misc.isRunningOnAndroid()) {
             try {
-                Class c = Class.forName("com.cloudant.sync.sqlite.android.AndroidSQLite");
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.android.AndroidSQLite");
 
                 Method m = c.getMethod("createAndroidSQLite",String.class);
                 return (SQLDatabase)m.invoke(null,dbFilename);
@@ -52,7 +52,7 @@ public class SQLDatabaseFactory {
             }
         } else {
             try {
-                Class c = Class.forName("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapper");
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapper");
                 Method m = c.getMethod("openSQLiteWrapper", String.class);
                 return (SQLDatabase)m.invoke(null, dbFilename);
 
@@ -76,7 +76,7 @@ public class SQLDatabaseFactory {
         makeSureFileExists(dbFilename);
         if(Misc.isRunningOnAndroid()) {
             try {
-                Class c = Class.forName("com.cloudant.sync.sqlite.android.AndroidSQLite");
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.android.AndroidSQLite");
                 Method m = c.getMethod("createAndroidSQLite", String.class);
                 return (SQLDatabase)m.invoke(null, dbFilename);
             } catch (Exception e) {
@@ -85,7 +85,7 @@ public class SQLDatabaseFactory {
             }
         } else {
             try {
-                Class c = Class.forName("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapper");
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapper");
                 Method m = c.getMethod("openSQLiteWrapper", String.class);
                 return (SQLDatabase)m.invoke(null, dbFilename);
             } catch (Exception e) {
@@ -95,6 +95,35 @@ public class SQLDatabaseFactory {
         }
     }
 
+    /**
+     * Return a read-only {@code SQLDatabase} for the given dbFilename, which must
+     * already exist.
+     *
+     * @param dbFilename full file path of the db file
+     * @return read-only {@code SQLDatabase} for the give filename
+     */
+    public static SQLDatabase openReadOnlySqlDatabase(String dbFilename) {
+        if(Misc.isRunningOnAndroid()) {
+            try {
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.android.AndroidSQLite");
+                Method m = c.getMethod("createAndroidSQLiteReadOnly", String.class);
+                return (SQLDatabase)m.invoke(null, dbFilename);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Failed to load database module", e);
+                return null;
+            }
+        } else {
+            try {
+                Class<?> c = Class.forName("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapper");
+                Method m = c.getMethod("openSQLiteWrapperReadOnly", String.class);
+                return (SQLDatabase)m.invoke(null, dbFilename);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Failed to load database module", e);
+                return null;
+            }
+        }
+    }
+
     /**
      * <p>Update schema for give {@code SQLDatabase}</p>
      *
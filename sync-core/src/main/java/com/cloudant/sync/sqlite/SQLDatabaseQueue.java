@@ -22,14 +22,25 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * SQLDatabaseQuue provides the ability to ensure that the
+ * <p>SQLDatabaseQuue provides the ability to ensure that the
  * only a single thread accesses the SQLDatabase. Tasks submitted to this
- * queue are guaranteed to be executed in the order they are received
+ * queue are guaranteed to be executed in the order they are received</p>
+ *
+ * <p>Optionally, the queue can switch the database to write-ahead logging
+ * (WAL) and keep a pool of read-only connections, each used by a single
+ * thread. In this mode tasks submitted with {@link #submit(SQLQueueCallable)}
+ * are only allowed to read, and run on the read-only connections concurrently
+ * with each other and with the writer, while tasks submitted with
+ * {@link #submitTransaction(SQLQueueCallable)} or
+ * {@link #submitWrite(SQLQueueCallable)} still run in order on the single
+ * writer connection. A read sees the writes which completed before it was
+ * submitted, but not those of a transaction still in progress.</p>
  */
 public class SQLDatabaseQueue {
 
@@ -38,21 +49,76 @@ public class SQLDatabaseQueue {
     private final Logger logger = Logger.getLogger(SQLDatabase.class.getCanonicalName());
     private volatile boolean acceptTasks = true;
 
+    private final String filename;
+
+    // Read-only connections, null unless write-ahead logging is used
+    private final ExecutorService readers;
+    private final ThreadLocal<SQLDatabase> readerDb = new ThreadLocal<SQLDatabase>();
+
+    // The last task setting up the database (opening it or updating its schema), which
+    // readers must wait for as these tasks are submitted without waiting for them
+    private volatile Future<?> setup;
+
     /**
      * Creates an SQLQueue for the database specified.
      * @param filename The file where the database is located
      * @throws IOException If an problem is encountered creating the DB
      */
     public SQLDatabaseQueue(String filename) throws IOException {
+        this(filename, 0);
+    }
+
+    /**
+     * Creates an SQLQueue for the database specified, optionally using write-ahead
+     * logging and a pool of read-only connections for {@link #submit(SQLQueueCallable)}.
+     * @param filename The file where the database is located
+     * @param readConnections The number of read-only connections, or 0 to run all
+     *                        tasks on a single connection without write-ahead logging
+     * @throws IOException If an problem is encountered creating the DB
+     */
+    public SQLDatabaseQueue(String filename, int readConnections) throws IOException {
+        if (readConnections < 0) {
+            throw new IllegalArgumentException("readConnections must not be negative");
+        }
+        this.filename = filename;
         this.db = SQLDatabaseFactory.createSQLDatabase(filename);
+        final boolean useWriteAheadLogging = readConnections > 0;
         //can directly add to queue no need to check
         //if it is still running
-        queue.submit(new Runnable() {
+        this.setup = queue.submit(new Runnable() {
             @Override
             public void run() {
                 db.open();
+                if (useWriteAheadLogging && !db.enableWriteAheadLogging()) {
+                    logger.warning("Write-ahead logging not enabled, reads may block on writes");
+                }
             }
         });
+
+        if (useWriteAheadLogging) {
+            this.readers = Executors.newFixedThreadPool(readConnections, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                r.run();
+                            } finally {
+                                // connections must be closed by the thread which opened them
+                                SQLDatabase reader = readerDb.get();
+                                if (reader != null) {
+                                    reader.close();
+                                    readerDb.remove();
+                                }
+                            }
+                        }
+                    }, "SQLDatabaseQueue reader");
+                }
+            });
+        } else {
+            this.readers = null;
+        }
     }
 
     /**
@@ -61,7 +127,7 @@ public class SQLDatabaseQueue {
      * @param version The version of the schema
      */
     public void updateSchema(final String[] schema, final int version){
-        this.submit(new SQLQueueCallable<Object>() {
+        this.setup = this.submitWrite(new SQLQueueCallable<Object>() {
             @Override
             public Object call(SQLDatabase db) throws Exception {
                 SQLDatabaseFactory.updateSchema(db, schema, version);
@@ -94,12 +160,43 @@ public class SQLDatabaseQueue {
 
     /**
      * Submits a database task for execution
+     *
+     * If the queue uses read-only connections, the task must only read from the
+     * database, see {@link #submitWrite(SQLQueueCallable)}.
+     *
      * @param callable The task to be performed
      * @param <T> The type of object that is returned from the task
      * @throws RejectedExecutionException Thrown when the queue has been shutdown
      * @return Future representing the task to be executed.
      */
-    public <T> Future<T> submit(SQLQueueCallable<T> callable){
+    public <T> Future<T> submit(final SQLQueueCallable<T> callable){
+        if (readers == null) {
+            return this.submitWrite(callable);
+        }
+        if (!acceptTasks) {
+            throw new RejectedExecutionException("Database is closed");
+        }
+        final Future<?> setup = this.setup;
+        return readers.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                waitForSetup(setup);
+                callable.setDb(getReaderDb());
+                callable.setRunInTransaction(false);
+                return callable.call();
+            }
+        });
+    }
+
+    /**
+     * Submits a database task which writes to the database, but mustn't run in a
+     * transaction (for example {@code VACUUM}), for execution on the writer connection
+     * @param callable The task to be performed
+     * @param <T> The type of object that is returned from the task
+     * @throws RejectedExecutionException Thrown when the queue has been shutdown
+     * @return Future representing the task to be executed.
+     */
+    public <T> Future<T> submitWrite(SQLQueueCallable<T> callable){
         callable.setDb(db);
         callable.setRunInTransaction(false);
         return this.submitTaskToQueue(callable);
@@ -135,8 +232,15 @@ public class SQLDatabaseQueue {
             }
         });
         queue.shutdown();
+        if (readers != null) {
+            // reader threads close their connections as they terminate
+            readers.shutdown();
+        }
         try {
             queue.awaitTermination(5,TimeUnit.MINUTES);
+            if (readers != null) {
+                readers.awaitTermination(5, TimeUnit.MINUTES);
+            }
         } catch (InterruptedException e) {
             logger.log(Level.SEVERE,"Interrupted while waiting for queue to terminate",e);
         }
@@ -151,6 +255,26 @@ public class SQLDatabaseQueue {
         return queue.isShutdown();
     }
 
+    private SQLDatabase getReaderDb() {
+        SQLDatabase reader = readerDb.get();
+        if (reader == null) {
+            reader = SQLDatabaseFactory.openReadOnlySqlDatabase(filename);
+            if (reader == null) {
+                throw new IllegalStateException("Failed to open read-only connection");
+            }
+            readerDb.set(reader);
+        }
+        return reader;
+    }
+
+    private static void waitForSetup(Future<?> setup) throws InterruptedException {
+        try {
+            setup.get();
+        } catch (ExecutionException e) {
+            // reported to whoever set the database up, the read will fail if it matters
+        }
+    }
+
     /**
      * Adds a task to the queue, checking if the queue is still open
      * to accepting tasks
@@ -18,6 +18,12 @@ import com.cloudant.sync.sqlite.Cursor;
 
 import java.util.List;
 
+/**
+ * @deprecated query results are no longer copied into memory; sqlite4java queries return a
+ * {@code com.cloudant.sync.sqlite.sqlite4java.SQLiteStatementCursor}, which reads rows as the
+ * cursor is moved. This class will be removed in a future release.
+ */
+@Deprecated
 public class SQLiteCursor implements Cursor {
 
     private int position = -1;
@@ -19,6 +19,12 @@ import com.cloudant.sync.sqlite.Cursor;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * @deprecated only used by {@link SQLiteCursor}; read rows with
+ * {@code com.cloudant.sync.sqlite.sqlite4java.SQLiteStatementCursor} instead. This class will be
+ * removed in a future release.
+ */
+@Deprecated
 public class Tuple {
 
     private final List<Integer> desc;
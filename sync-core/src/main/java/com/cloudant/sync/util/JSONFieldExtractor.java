@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Extracts a fixed set of fields from serialised JSON objects without
+ * deserialising the rest of the object.</p>
+ *
+ * <p>Fields are given as paths, where a dotted path such as
+ * {@code address.road} selects the {@code road} field of the object in the
+ * {@code address} field. The JSON is scanned with a streaming parser: only the
+ * values of the selected fields are deserialised, the values of other fields
+ * are skipped, and scanning stops as soon as every selected field has been
+ * found.</p>
+ *
+ * <p>The map returned by {@link #extract(InputStream)} has the same shape as the
+ * map {@link JSONUtils#deserialize(byte[])} returns for the same JSON, but
+ * contains only the selected fields and the objects leading to them. Selected
+ * fields missing from the JSON are missing from the map.</p>
+ *
+ * <p>An extractor is immutable once created, so can be shared between threads
+ * and reused for any number of JSON objects.</p>
+ */
+public class JSONFieldExtractor {
+
+    private final Node root = new Node();
+
+    /**
+     * @param fieldPaths paths of the fields to extract, possibly dotted
+     */
+    public JSONFieldExtractor(Collection<String> fieldPaths) {
+        for (String fieldPath : fieldPaths) {
+            Node node = root;
+            for (String segment : fieldPath.split("\\.")) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.wholeValue = true;
+        }
+        root.countPaths();
+    }
+
+    /**
+     * Returns the selected fields of a serialised JSON object.
+     *
+     * @param json serialised JSON object
+     * @return map containing the selected fields
+     * @throws IllegalStateException if the JSON isn't a valid JSON object
+     */
+    public Map<String, Object> extract(byte[] json) {
+        return extract(new ByteArrayInputStream(json));
+    }
+
+    /**
+     * Returns the selected fields of a serialised JSON object, reading no more
+     * of the stream than needed to find them. The stream is closed afterwards.
+     *
+     * @param json stream of a serialised JSON object
+     * @return map containing the selected fields
+     * @throws IllegalStateException if the JSON isn't a valid JSON object
+     */
+    public Map<String, Object> extract(InputStream json) {
+        Map<String, Object> result = new HashMap<String, Object>();
+        JsonParser parser = null;
+        try {
+            parser = JSONUtils.getsMapper().getFactory().createParser(json);
+            if (root.paths == 0) {
+                return result;
+            }
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalStateException("JSON is not an object");
+            }
+            readObject(parser, root, result, new int[]{ root.paths });
+            return result;
+        } catch (IOException e) {
+            throw new IllegalStateException("Error extracting fields from JSON", e);
+        } finally {
+            if (parser != null) {
+                try {
+                    parser.close();
+                } catch (IOException e) {
+                    // nothing to do, we've finished with the parser
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the fields of the object the parser is positioned at the start of,
+     * until the end of the object or until {@code remaining} reaches zero.
+     */
+    @SuppressWarnings("unchecked")
+    private static void readObject(JsonParser parser,
+                                   Node node,
+                                   Map<String, Object> into,
+                                   int[] remaining) throws IOException {
+        while (remaining[0] > 0 && parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            Node child = node.children.get(name);
+            if (child == null) {
+                parser.skipChildren();
+            } else if (child.wholeValue) {
+                boolean seen = into.containsKey(name);
+                into.put(name, JSONUtils.getsMapper().readValue(parser, Object.class));
+                if (!seen) {
+                    remaining[0] -= child.paths;
+                }
+            } else if (token == JsonToken.START_OBJECT) {
+                Object existing = into.get(name);
+                Map<String, Object> sub = (existing instanceof Map) ?
+                        (Map<String, Object>) existing : new HashMap<String, Object>();
+                into.put(name, sub);
+                readObject(parser, child, sub, remaining);
+            } else {
+                // can't select fields from a value which isn't an object
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<String, Node>();
+        // whether the whole value of this field is selected
+        boolean wholeValue;
+        // number of paths selecting this field or fields beneath it
+        int paths;
+
+        int countPaths() {
+            paths = wholeValue ? 1 : 0;
+            for (Node child : children.values()) {
+                paths += child.countPaths();
+            }
+            return paths;
+        }
+    }
+}
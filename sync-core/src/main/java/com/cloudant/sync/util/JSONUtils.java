@@ -58,7 +58,7 @@ public class JSONUtils {
         return usingFilter ? sCouchWordsFilter : sEmptyProvider;
     }
 
-    private static ObjectMapper getsMapper() {
+    static ObjectMapper getsMapper() {
         return sMapper;
     }
 
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.common;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+
+/**
+ * An HTTP server on a free local port, which hands every request to a test's
+ * {@code HttpHandler}. Tests start it with {@link #start(HttpHandler)} and stop it in their
+ * {@code @After} method.
+ */
+public class TestHttpServer {
+
+    private HttpServer server;
+
+    public void start(HttpHandler handler) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", handler);
+        server.start();
+    }
+
+    /**
+     * Stops the server, if it was started.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the server's root, {@code http://127.0.0.1:<port>}
+     */
+    public String getRoot() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public URL url(String path) throws IOException {
+        return new URL(getRoot() + path);
+    }
+
+    public URI uri(String path) throws URISyntaxException {
+        return new URI(getRoot() + path);
+    }
+}
@@ -0,0 +1,101 @@
+//  Copyright (c) 2015 IBM Cloudant. All rights reserved.
+//
+//  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+//  except in compliance with the License. You may obtain a copy of the License at
+//  http://www.apache.org/licenses/LICENSE-2.0
+//  Unless required by applicable law or agreed to in writing, software distributed under the
+//  License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+//  either express or implied. See the License for the specific language governing permissions
+//  and limitations under the License.
+
+package com.cloudant.http;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Map;
+
+public class ConnectionPoolTest {
+
+    @Test
+    public void configureSetsKeepAliveProperties() {
+        ConnectionPool pool = new ConnectionPool();
+        pool.configure(8, 20000);
+        Assert.assertEquals("true", System.getProperty("http.keepAlive"));
+        Assert.assertEquals("8", System.getProperty("http.maxConnections"));
+        Assert.assertEquals("20", System.getProperty("http.keepAlive.time.server"));
+        Assert.assertEquals("20000", System.getProperty("http.keepAliveDuration"));
+        Assert.assertEquals(8, pool.getMaxConnectionsPerHost());
+        Assert.assertEquals(20000, pool.getIdleTimeoutMillis());
+
+        // restore the defaults for other tests
+        pool.configure(ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST,
+                ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    @Test
+    public void configureLeavesApplicationPropertiesAlone() {
+        String previous = System.getProperty("http.keepAliveDuration");
+        System.setProperty("http.keepAliveDuration", "1234");
+        try {
+            ConnectionPool pool = new ConnectionPool();
+            pool.configure(8, 20000);
+            Assert.assertEquals("1234", System.getProperty("http.keepAliveDuration"));
+            Assert.assertEquals("8", System.getProperty("http.maxConnections"));
+        } finally {
+            System.clearProperty("http.keepAliveDuration");
+            new ConnectionPool().configure(ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST,
+                    ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+            if (previous != null) {
+                System.setProperty("http.keepAliveDuration", previous);
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configureRejectsZeroConnections() {
+        new ConnectionPool().configure(0, ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void configureRejectsTinyIdleTimeout() {
+        new ConnectionPool().configure(ConnectionPool.DEFAULT_MAX_CONNECTIONS_PER_HOST, 10);
+    }
+
+    @Test
+    public void statsAreKeyedByHost() throws Exception {
+        ConnectionPool pool = new ConnectionPool();
+        ConnectionPool.HostStats a = pool.statsFor(new URL("http://example.com/db/_changes"));
+        ConnectionPool.HostStats b = pool.statsFor(new URL("http://example.com:80/db/doc"));
+        ConnectionPool.HostStats c = pool.statsFor(new URL("https://example.com/db/doc"));
+        Assert.assertSame(a, b);
+        Assert.assertNotSame(a, c);
+
+        Map<String, ConnectionPool.Stats> stats = pool.getStats();
+        Assert.assertEquals(2, stats.size());
+        Assert.assertTrue(stats.containsKey("http://example.com:80"));
+        Assert.assertTrue(stats.containsKey("https://example.com:443"));
+    }
+
+    @Test
+    public void statsCountRequests() throws Exception {
+        ConnectionPool pool = new ConnectionPool();
+        ConnectionPool.HostStats hostStats = pool.statsFor(new URL("http://example.com/db"));
+        hostStats.requestStarted();
+        hostStats.requestStarted();
+        hostStats.requestFinished(true);
+        hostStats.requestStarted();
+        hostStats.requestFinished(false);
+
+        ConnectionPool.Stats stats = pool.getStats().get("http://example.com:80");
+        Assert.assertEquals(3, stats.requests);
+        Assert.assertEquals(1, stats.inFlight);
+        Assert.assertEquals(2, stats.peakInFlight);
+        Assert.assertEquals(1, stats.released);
+        Assert.assertEquals(1, stats.discarded);
+
+        pool.resetStats();
+        Assert.assertTrue(pool.getStats().isEmpty());
+    }
+}
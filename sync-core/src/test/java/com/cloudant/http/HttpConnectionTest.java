@@ -0,0 +1,217 @@
+//  Copyright (c) 2015 IBM Cloudant. All rights reserved.
+//
+//  Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+//  except in compliance with the License. You may obtain a copy of the License at
+//  http://www.apache.org/licenses/LICENSE-2.0
+//  Unless required by applicable law or agreed to in writing, software distributed under the
+//  License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+//  either express or implied. See the License for the specific language governing permissions
+//  and limitations under the License.
+
+package com.cloudant.http;
+
+import com.cloudant.common.TestHttpServer;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpConnectionTest {
+
+    final TestHttpServer server = new TestHttpServer();
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test(expected = IOException.class)
+    public void disconnectBeforeExecute() throws Exception {
+        HttpConnection connection = Http.GET(new URL("http://127.0.0.1:1/"));
+        connection.disconnect();
+        Assert.assertTrue(connection.isDisconnected());
+        connection.execute();
+    }
+
+    @Test
+    public void disconnectAbortsWaitingRequest() throws Exception {
+        // a server which accepts the connection but never responds, like a longpoll feed
+        final ServerSocket server = new ServerSocket(0);
+        final Socket[] accepted = new Socket[1];
+        try {
+            final HttpConnection connection = Http.GET(
+                    new URL("http://127.0.0.1:" + server.getLocalPort() + "/db/_changes"));
+            Thread disconnecter = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        accepted[0] = server.accept();
+                        Thread.sleep(200);
+                        connection.disconnect();
+                    } catch (Exception e) {
+                        // the request below won't be aborted, failing the test
+                    }
+                }
+            };
+            disconnecter.start();
+
+            long start = System.currentTimeMillis();
+            try {
+                connection.execute().responseAsInputStream();
+                Assert.fail("Expected the request to be aborted");
+            } catch (IOException e) {
+                // expected
+            }
+            Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+            Assert.assertTrue(connection.isDisconnected());
+            disconnecter.join();
+        } finally {
+            if (accepted[0] != null) {
+                accepted[0].close();
+            }
+            server.close();
+        }
+    }
+
+    @Test
+    public void requestBodyWriterStreamsBody() throws Exception {
+        // echoes the request body back in the response
+        server.start(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+                exchange.getResponseHeaders().set("X-Transfer-Encoding",
+                        String.valueOf(exchange.getRequestHeaders().getFirst("Transfer-Encoding")));
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        HttpConnection connection = Http.POST(server.url("/db/_bulk_docs"), "application/json");
+        connection.setRequestBody(new HttpConnection.RequestBodyWriter() {
+            @Override
+            public void writeTo(OutputStream os) throws IOException {
+                for (int i = 0; i < 1000; i++) {
+                    os.write(String.format("line %d\n", i).getBytes());
+                }
+            }
+        });
+        String response = connection.execute().responseAsString();
+        Assert.assertTrue(response.startsWith("line 0\nline 1\n"));
+        Assert.assertTrue(response.endsWith("line 999\n"));
+        Assert.assertEquals("chunked",
+                connection.getConnection().getHeaderField("X-Transfer-Encoding"));
+    }
+
+    @Test
+    public void compressedRequestBodyIsGzipped() throws Exception {
+        // decompresses the request body and echoes it back in the response
+        server.start(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = IOUtils.toByteArray(
+                        new GZIPInputStream(exchange.getRequestBody()));
+                exchange.getResponseHeaders().set("X-Content-Encoding",
+                        String.valueOf(exchange.getRequestHeaders().getFirst("Content-Encoding")));
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        HttpConnection connection = Http.POST(server.url("/db/_bulk_docs"), "application/json");
+        connection.setRequestBody("{\"docs\":[]}");
+        connection.setRequestBodyCompressed(true);
+        Assert.assertEquals("{\"docs\":[]}", connection.execute().responseAsString());
+        Assert.assertEquals("gzip",
+                connection.getConnection().getHeaderField("X-Content-Encoding"));
+    }
+
+    @Test
+    public void failedRequestIsNotLeftInFlight() throws Exception {
+        // nothing listens on port 1, so opening the connection to write the body fails
+        URL url = new URL("http://127.0.0.1:1/db/_bulk_docs");
+        HttpConnection connection = Http.POST(url, "application/json");
+        connection.setRequestBody("{\"docs\":[]}");
+        try {
+            connection.execute();
+            Assert.fail("Expected the request to fail");
+        } catch (IOException e) {
+            // expected
+        }
+        ConnectionPool.Stats stats = ConnectionPool.getInstance().getStats()
+                .get("http://127.0.0.1:1");
+        Assert.assertEquals(0, stats.inFlight);
+        Assert.assertTrue(stats.discarded > 0);
+    }
+
+    @Test
+    public void compressedResponseIsDecompressed() throws Exception {
+        // gzips the response if the client accepts it
+        server.start(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"ok\":true}".getBytes();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"))) {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(baos);
+                    gzip.write(body);
+                    gzip.close();
+                    body = baos.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                }
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        URL url = server.url("/db/doc");
+        HttpConnection connection = Http.GET(url);
+        connection.setResponseCompressionAccepted(true);
+        Assert.assertEquals("{\"ok\":true}", connection.execute().responseAsString());
+        Assert.assertEquals("gzip", connection.getConnection().getContentEncoding());
+
+        // without asking for compression, the response is left alone
+        connection = Http.GET(url);
+        Assert.assertEquals("{\"ok\":true}", connection.execute().responseAsString());
+        Assert.assertNull(connection.getConnection().getContentEncoding());
+    }
+
+    @Test
+    public void badlyCompressedResponseIsNotLeftInFlight() throws Exception {
+        // claims to be gzipped, but isn't
+        server.start(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = "{\"ok\":true}".getBytes();
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            }
+        });
+        HttpConnection connection = Http.GET(server.url("/db/doc"));
+        connection.setResponseCompressionAccepted(true);
+        try {
+            connection.execute().responseAsInputStream();
+            Assert.fail("Expected the response not to be decompressed");
+        } catch (IOException e) {
+            // expected
+        }
+        ConnectionPool.Stats stats = ConnectionPool.getInstance().getStats()
+                .get(server.getRoot());
+        Assert.assertEquals(0, stats.inFlight);
+    }
+
+}
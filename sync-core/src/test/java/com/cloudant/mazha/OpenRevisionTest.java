@@ -97,4 +97,24 @@ public class OpenRevisionTest {
                 new StringReader(s), new TypeReference<List<OpenRevision>>() {});
         Assert.assertThat(openRevisionList, hasSize(0));
     }
+
+    @Test
+    public void deserialization_bulkGet() throws IOException {
+        String s = FileUtils.readFileToString(TestUtils.loadFixture("fixture/bulk_get.json"));
+        BulkGetResponse response = jsonHelper.fromJson(new StringReader(s), BulkGetResponse.class);
+        Assert.assertThat(response.results, hasSize(2));
+
+        BulkGetResponse.Result a = response.results.get(0);
+        Assert.assertEquals("a", a.id);
+        Assert.assertThat(a.docs, hasSize(1));
+        Assert.assertTrue(a.docs.get(0) instanceof OkOpenRevision);
+        DocumentRevs documentRevs = ((OkOpenRevision)a.docs.get(0)).getDocumentRevs();
+        Assert.assertEquals("2-b", documentRevs.getRev());
+        Assert.assertEquals(2, documentRevs.getRevisions().getStart());
+
+        BulkGetResponse.Result b = response.results.get(1);
+        Assert.assertEquals("b", b.id);
+        Assert.assertTrue(b.docs.get(0) instanceof MissingOpenRevision);
+        Assert.assertEquals("1-x", ((MissingOpenRevision) b.docs.get(0)).getRevision());
+    }
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.cloudant.mazha.DocumentRevs;
+import com.cloudant.mazha.MissingOpenRevision;
+import com.cloudant.mazha.OkOpenRevision;
+import com.cloudant.mazha.OpenRevision;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.Map;
+
+public class AttachmentsDeserializerTest {
+
+    private static final byte[] DATA = "this is some data".getBytes();
+
+    private static final String DOC = "{\"_id\":\"a\",\"_rev\":\"2-y\"," +
+            "\"_revisions\":{\"start\":2,\"ids\":[\"y\",\"x\"]},\"hello\":\"world\"," +
+            "\"_attachments\":{" +
+            "\"inline.txt\":{\"content_type\":\"text/plain\",\"revpos\":2,\"data\":\"" +
+            new String(Base64.encodeBase64(DATA)) + "\"}," +
+            "\"stub.txt\":{\"content_type\":\"text/plain\",\"revpos\":1,\"length\":6154," +
+            "\"stub\":true}}}";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void inlineDataIsDecoded() throws Exception {
+        DocumentRevs revs = JSONCodec.getInstance().read(
+                new ByteArrayInputStream(DOC.getBytes()), DocumentRevs.class);
+        Map<String, Object> inline = (Map<String, Object>) revs.getAttachments().get("inline.txt");
+        Assert.assertArrayEquals(DATA, (byte[]) inline.get("data"));
+        Assert.assertEquals("text/plain", inline.get("content_type"));
+        Assert.assertEquals(2, inline.get("revpos"));
+        Assert.assertEquals("world", revs.getOthers().get("hello"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void stubsAreUnchanged() throws Exception {
+        DocumentRevs revs = JSONCodec.getInstance().read(
+                new ByteArrayInputStream(DOC.getBytes()), DocumentRevs.class);
+        Map<String, Object> stub = (Map<String, Object>) revs.getAttachments().get("stub.txt");
+        Assert.assertEquals(Boolean.TRUE, stub.get("stub"));
+        Assert.assertEquals(6154, stub.get("length"));
+        Assert.assertFalse(stub.containsKey("data"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void openRevisionsAreReadWithoutBuffering() throws Exception {
+        String json = "[{\"ok\":" + DOC + "},{\"error\":{\"id\":\"a\",\"rev\":\"3-z\"," +
+                "\"error\":\"not_found\",\"reason\":\"missing\"}}]";
+        List<OpenRevision> revisions = JSONCodec.getInstance().readOpenRevisions(
+                new ByteArrayInputStream(json.getBytes()));
+        DocumentRevs revs = ((OkOpenRevision) revisions.get(0)).getDocumentRevs();
+        Assert.assertArrayEquals(DATA, (byte[]) ((Map<String, Object>) revs.getAttachments()
+                .get("inline.txt")).get("data"));
+        Assert.assertEquals("3-z", ((MissingOpenRevision) revisions.get(1)).getRevision());
+    }
+}
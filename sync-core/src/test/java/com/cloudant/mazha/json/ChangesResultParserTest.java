@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.cloudant.mazha.ChangesResult;
+import com.cloudant.sync.util.TestUtils;
+import com.fasterxml.jackson.core.JsonParseException;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ChangesResultParserTest {
+
+    @Test
+    public void parse_largeFeed_sameAsDataBinding() throws Exception {
+        ChangesResult expected = new JSONHelper().fromJson(new FileReader(
+                TestUtils.loadFixture("fixture/10K_changes_feeds.json")), ChangesResult.class);
+
+        InputStream in = new FileInputStream(TestUtils.loadFixture("fixture/10K_changes_feeds.json"));
+        ChangesResult actual;
+        try {
+            actual = new ChangesResultParser().parse(in);
+        } finally {
+            in.close();
+        }
+
+        Assert.assertEquals(expected.getLastSeq(), actual.getLastSeq());
+        Assert.assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            ChangesResult.Row e = expected.getResults().get(i);
+            ChangesResult.Row a = actual.getResults().get(i);
+            Assert.assertEquals(e.getId(), a.getId());
+            Assert.assertEquals(e.getSeq(), a.getSeq());
+            Assert.assertEquals(e.isDeleted(), a.isDeleted());
+            Assert.assertEquals(e.getChanges().size(), a.getChanges().size());
+            for (int j = 0; j < e.getChanges().size(); j++) {
+                Assert.assertEquals(e.getChanges().get(j).getRev(), a.getChanges().get(j).getRev());
+            }
+        }
+    }
+
+    @Test
+    public void parse_unknownFieldsAndArraySeq() throws Exception {
+        String json = "{\"pending\": 0, \"results\": [" +
+                "{\"seq\": [2, \"g1AAAA\"], \"id\": \"a\", \"extra\": {\"x\": [1, 2]}, " +
+                "\"changes\": [{\"rev\": \"2-b\", \"other\": true}, {\"rev\": \"2-c\"}], " +
+                "\"deleted\": true, \"doc\": {\"_id\": \"a\", \"hello\": \"world\"}}" +
+                "], \"last_seq\": [2, \"g1AAAA\"]}";
+
+        ChangesResult result = new ChangesResultParser().parse(stream(json));
+
+        Assert.assertEquals(Arrays.<Object>asList(2, "g1AAAA"), result.getLastSeq());
+        Assert.assertEquals(1, result.size());
+        ChangesResult.Row row = result.getResults().get(0);
+        Assert.assertEquals("a", row.getId());
+        Assert.assertEquals(Arrays.<Object>asList(2, "g1AAAA"), row.getSeq());
+        Assert.assertTrue(row.isDeleted());
+        Assert.assertEquals(2, row.getChanges().size());
+        Assert.assertEquals("2-b", row.getChanges().get(0).getRev());
+        Assert.assertEquals("2-c", row.getChanges().get(1).getRev());
+        Assert.assertEquals("world", row.getDoc().get("hello"));
+    }
+
+    @Test
+    public void parse_handlerStops_rowsAfterNotRead() throws Exception {
+        InputStream in = new FileInputStream(TestUtils.loadFixture("fixture/change_feed_0.json"));
+        final List<ChangesResult.Row> rows = new ArrayList<ChangesResult.Row>();
+        Object lastSeq;
+        try {
+            lastSeq = new ChangesResultParser().parse(in, new ChangesResult.RowHandler() {
+                @Override
+                public boolean row(ChangesResult.Row row) {
+                    rows.add(row);
+                    return rows.size() < 2;
+                }
+            });
+        } finally {
+            in.close();
+        }
+        Assert.assertNull(lastSeq);
+        Assert.assertEquals(2, rows.size());
+    }
+
+    @Test(expected = JsonParseException.class)
+    public void parse_notAnObject_exception() throws Exception {
+        new ChangesResultParser().parse(stream("[1, 2]"));
+    }
+
+    private static InputStream stream(String json) throws Exception {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
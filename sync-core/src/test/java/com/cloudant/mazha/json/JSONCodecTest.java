@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.mazha.json;
+
+import com.cloudant.common.PerformanceTest;
+import com.cloudant.mazha.ChangesResult;
+import com.cloudant.mazha.CouchClient;
+import com.cloudant.mazha.CouchDbInfo;
+import com.cloudant.mazha.MissingOpenRevision;
+import com.cloudant.mazha.OkOpenRevision;
+import com.cloudant.mazha.OpenRevision;
+import com.cloudant.mazha.Response;
+import com.cloudant.sync.util.TestUtils;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+public class JSONCodecTest {
+
+    private static final Logger logger = Logger.getLogger(JSONCodecTest.class.getName());
+
+    private final JSONCodec codec = JSONCodec.getInstance();
+
+    @Test
+    public void readResponses() throws Exception {
+        List<Response> responses = codec.readResponses(stream(
+                "[{\"id\":\"a\",\"rev\":\"1-x\",\"ok\":true,\"unknown\":1}," +
+                "{\"id\":\"b\",\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}]"));
+        Assert.assertEquals(2, responses.size());
+        Assert.assertEquals("a", responses.get(0).getId());
+        Assert.assertEquals("1-x", responses.get(0).getRev());
+        Assert.assertEquals("conflict", responses.get(1).getError());
+    }
+
+    @Test
+    public void readOpenRevisions() throws Exception {
+        List<OpenRevision> revisions = codec.readOpenRevisions(stream(
+                "[{\"ok\":{\"_id\":\"a\",\"_rev\":\"2-y\",\"_revisions\":" +
+                "{\"start\":2,\"ids\":[\"y\",\"x\"]}}},{\"missing\":\"3-z\"}]"));
+        Assert.assertEquals(2, revisions.size());
+        Assert.assertTrue(revisions.get(0) instanceof OkOpenRevision);
+        Assert.assertEquals("2-y", ((OkOpenRevision) revisions.get(0)).getDocumentRevs().getRev());
+        Assert.assertTrue(revisions.get(1) instanceof MissingOpenRevision);
+    }
+
+    @Test
+    public void readMissingRevisions() throws Exception {
+        Map<String, CouchClient.MissingRevisions> missing = codec.readMissingRevisions(stream(
+                "{\"a\":{\"missing\":[\"2-y\"],\"possible_ancestors\":[\"1-x\"]}}"));
+        Assert.assertEquals(1, missing.size());
+        Assert.assertTrue(missing.get("a").missing.contains("2-y"));
+    }
+
+    @Test
+    public void readClass() throws Exception {
+        CouchDbInfo info = codec.read(stream("{\"db_name\":\"animaldb\",\"doc_count\":11}"),
+                CouchDbInfo.class);
+        Assert.assertEquals("animaldb", info.getDbName());
+        Assert.assertEquals(11, info.getDocCount());
+    }
+
+    @Test
+    public void streamIsLeftOpen() throws Exception {
+        final boolean[] closed = { false };
+        InputStream in = new ByteArrayInputStream("{\"id\":\"a\"}".getBytes()) {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        codec.read(in, Response.class);
+        Assert.assertFalse(closed[0]);
+    }
+
+    @Test
+    @Category(PerformanceTest.class)
+    public void compareReadTimeWithJSONHelper() throws Exception {
+        byte[] changes = FileUtils.readFileToByteArray(
+                TestUtils.loadFixture("fixture/10K_changes_feeds.json"));
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            sb.append(i == 0 ? "" : ",").append(String.format(
+                    "{\"id\":\"doc-%d\",\"rev\":\"1-%032x\",\"ok\":true}", i, i));
+        }
+        byte[] responses = sb.append("]").toString().getBytes();
+        int iterations = 50;
+
+        // warm up both paths so that JIT compilation isn't measured
+        for (int i = 0; i < iterations; i++) {
+            readWithHelper(changes, responses);
+            readWithCodec(changes, responses);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            readWithHelper(changes, responses);
+        }
+        long helperNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            readWithCodec(changes, responses);
+        }
+        long codecNanos = System.nanoTime() - start;
+
+        logger.info(String.format("JSONHelper: %d ms, JSONCodec: %d ms for %d iterations",
+                helperNanos / 1000000, codecNanos / 1000000, iterations));
+    }
+
+    private void readWithHelper(byte[] changes, byte[] responses) {
+        // the previous path: a new mapper for each response, reading characters
+        new JSONHelper().fromJson(new InputStreamReader(new ByteArrayInputStream(changes)),
+                ChangesResult.class);
+        new JSONHelper().fromJson(new InputStreamReader(new ByteArrayInputStream(responses)),
+                new TypeReference<List<Response>>() {});
+    }
+
+    private void readWithCodec(byte[] changes, byte[] responses) throws Exception {
+        codec.readChangesResult(new ByteArrayInputStream(changes));
+        codec.readResponses(new ByteArrayInputStream(responses));
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes());
+    }
+}
@@ -14,6 +14,8 @@
 
 package com.cloudant.sync.datastore;
 
+import com.cloudant.mazha.json.JSONHelper;
+import com.cloudant.sync.replication.PushAttachmentsInline;
 import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.sqlite.SQLQueueCallable;
@@ -22,6 +24,7 @@ import com.cloudant.sync.util.TestUtils;
 
 import static org.hamcrest.CoreMatchers.is;
 
+import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.io.IOUtils;
 import org.junit.Assert;
 import org.junit.Test;
@@ -30,8 +33,11 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.StringReader;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Created by tomblench on 12/03/2014.
@@ -73,6 +79,51 @@ public class AttachmentTest extends BasicDatastoreTestBase {
         }
     }
 
+    @Test
+    public void prepareAttachmentCopiesAndHashesInOnePass() throws Exception {
+        File f = TestUtils.loadFixture("fixture/attachment_1.txt");
+        PreparedAttachment prepared = datastore.prepareAttachment(
+                new UnsavedFileAttachment(f, "text/plain"));
+        FileInputStream fis = null;
+        FileInputStream tempFis = null;
+        try {
+            Assert.assertArrayEquals(Misc.getSha1((fis = new FileInputStream(f))), prepared.sha1);
+            fis.close();
+            Assert.assertArrayEquals(IOUtils.toByteArray(fis = new FileInputStream(f)),
+                    IOUtils.toByteArray(tempFis = new FileInputStream(prepared.tempFile)));
+        } finally {
+            IOUtils.closeQuietly(fis);
+            IOUtils.closeQuietly(tempFis);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void inlineAttachmentIsEncodedWhenSerialised() throws Exception {
+        String attachmentName = "attachment_1.txt";
+        File f = TestUtils.loadFixture("fixture/" + attachmentName);
+        MutableDocumentRevision rev_1Mut = new MutableDocumentRevision();
+        rev_1Mut.body = bodyOne;
+        rev_1Mut.attachments.put(attachmentName, new UnsavedFileAttachment(f, "text/plain"));
+        BasicDocumentRevision rev_1 = datastore.createDocumentFromRevision(rev_1Mut);
+
+        Map<String, Object> json = RevisionHistoryHelper.revisionHistoryToJson(
+                Collections.singletonList(rev_1), datastore.attachmentsForRevision(rev_1),
+                PushAttachmentsInline.True, 0);
+        Map<String, Object> parsed = new JSONHelper().fromJson(
+                new StringReader(new JSONHelper().toJson(json)));
+        Map<String, Object> att = (Map<String, Object>)
+                ((Map<String, Object>) parsed.get("_attachments")).get(attachmentName);
+        Assert.assertEquals(false, att.get("follows"));
+        FileInputStream fis = null;
+        try {
+            Assert.assertArrayEquals(IOUtils.toByteArray(fis = new FileInputStream(f)),
+                    Base64.decodeBase64((String) att.get("data")));
+        } finally {
+            IOUtils.closeQuietly(fis);
+        }
+    }
+
     // check that the transaction gets rolled back if one file is dodgy
     @Test
     public void setBadAttachmentsTest() throws Exception {
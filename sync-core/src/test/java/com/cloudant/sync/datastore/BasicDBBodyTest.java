@@ -19,9 +19,13 @@ import com.cloudant.sync.util.TestUtils;
 
 import org.junit.Assert;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
@@ -95,6 +99,74 @@ public class BasicDBBodyTest {
         Assert.assertTrue(m.get("IntegerValue").equals(2147483647)); // Integer.MAX_VALUE
     }
 
+    @Test
+    public void trustedBodyWith_byteArray_correctObjectShouldBeCreated() throws Exception {
+        DocumentBody body = BasicDocumentBody.trustedBodyWith(jsonData);
+        Assert.assertTrue(Arrays.equals(jsonData, body.asBytes()));
+        assertMapIsCorrect(body.asMap());
+    }
+
+    @Test
+    public void asBytes_returnsCopy() throws Exception {
+        DocumentBody body = BasicDocumentBody.trustedBodyWith(jsonData);
+        byte[] bytes = body.asBytes();
+        bytes[0] = ' ';
+        Assert.assertTrue(Arrays.equals(jsonData, body.asBytes()));
+    }
+
+    @Test
+    public void asInputStream_readsJson() throws Exception {
+        DocumentBody body = new BasicDocumentBody(jsonData);
+        Assert.assertTrue(Arrays.equals(jsonData,
+                IOUtils.toByteArray(DocumentBodyFactory.asInputStream(body))));
+
+        body = new BasicDocumentBody(body.asMap());
+        assertMapIsCorrect(JSONUtils.deserialize(
+                IOUtils.toByteArray(DocumentBodyFactory.asInputStream(body))));
+    }
+
+    @Test
+    public void asInputStream_otherDocumentBody_readsBytes() throws Exception {
+        DocumentBody body = mock(DocumentBody.class);
+        when(body.asBytes()).thenReturn(jsonData);
+        Assert.assertTrue(Arrays.equals(jsonData,
+                IOUtils.toByteArray(DocumentBodyFactory.asInputStream(body))));
+    }
+
+    @Test
+    public void asMap_returnsCopy() throws Exception {
+        DocumentBody body = BasicDocumentBody.trustedBodyWith(jsonData);
+        body.asMap().put("_id", "doc");
+        Assert.assertFalse(body.asMap().containsKey("_id"));
+        assertMapIsCorrect(body.asMap());
+    }
+
+    @Test
+    public void asReadOnlyMap_returnsSameUnmodifiableView() throws Exception {
+        DocumentBody body = BasicDocumentBody.trustedBodyWith(jsonData);
+        Map<String, Object> map = DocumentBodyFactory.asReadOnlyMap(body);
+        assertMapIsCorrect(map);
+        Assert.assertSame(map, DocumentBodyFactory.asReadOnlyMap(body));
+        try {
+            map.put("_id", "doc");
+            Assert.fail("Expected the map to be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void asReadOnlyMap_otherDocumentBody_readsMap() throws Exception {
+        DocumentBody body = mock(DocumentBody.class);
+        when(body.asMap()).thenReturn(JSONUtils.deserialize(jsonData));
+        assertMapIsCorrect(DocumentBodyFactory.asReadOnlyMap(body));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void trustedBodyWith_null_exception() {
+        BasicDocumentBody.trustedBodyWith(null);
+    }
+
     private void assertMapIsCorrect(Map<String, Object> actualMap) {
         Assert.assertEquals(5, actualMap.size());
         Assert.assertTrue((Boolean) actualMap.get("Sunrise"));
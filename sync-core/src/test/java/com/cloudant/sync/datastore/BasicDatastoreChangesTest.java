@@ -17,6 +17,7 @@ package com.cloudant.sync.datastore;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 
 import static org.hamcrest.CoreMatchers.hasItems;
@@ -102,4 +103,81 @@ public class BasicDatastoreChangesTest extends BasicDatastoreTestBase {
         Assert.assertThat(changes.getIds(), hasItems(docs[0].getId(), docs[1].getId(), docs[2].getId()));
         Assert.assertEquals(4, changes.getLastSequence());
     }
+
+    @Test
+    public void changes_documentUpdatedManyTimes_limitCountsDocumentsNotSequences() throws Exception {
+        MutableDocumentRevision mutable = new MutableDocumentRevision();
+        mutable.body = bodyOne;
+        BasicDocumentRevision updated = datastore.createDocumentFromRevision(mutable);
+        for (int i = 0; i < 10; i++) {
+            MutableDocumentRevision update = updated.mutableCopy();
+            update.body = (i % 2 == 0) ? bodyTwo : bodyOne;
+            updated = datastore.updateDocumentFromRevision(update);
+        }
+        BasicDocumentRevision[] docs = createThreeDocuments();
+
+        // sequences 1-11 are all revisions of the same document
+        Changes changes = datastore.changes(0, 2);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertEquals(updated.getId(), changes.getResults().get(0).getId());
+        Assert.assertEquals(updated.getRevision(), changes.getResults().get(0).getRevision());
+        Assert.assertEquals(docs[0].getId(), changes.getResults().get(1).getId());
+        Assert.assertEquals(12, changes.getLastSequence());
+
+        changes = datastore.changes(changes.getLastSequence(), 2);
+        Assert.assertEquals(2, changes.size());
+        Assert.assertThat(changes.getIds(), hasItems(docs[1].getId(), docs[2].getId()));
+        Assert.assertEquals(15, changes.getLastSequence());
+    }
+
+    @Test
+    public void changes_documentUpdatedAfterSince_returnedOnceAtLatestSequence() throws Exception {
+        BasicDocumentRevision[] docs = createThreeDocuments();
+        MutableDocumentRevision update = docs[0].mutableCopy();
+        update.body = bodyTwo;
+        BasicDocumentRevision updated = datastore.updateDocumentFromRevision(update);
+
+        Changes changes = datastore.changes(0, 10);
+        Assert.assertEquals(3, changes.size());
+        // ordered by the sequence of each document's latest change
+        Assert.assertEquals(docs[1].getId(), changes.getResults().get(0).getId());
+        Assert.assertEquals(docs[2].getId(), changes.getResults().get(1).getId());
+        Assert.assertEquals(updated.getId(), changes.getResults().get(2).getId());
+        Assert.assertEquals(updated.getRevision(), changes.getResults().get(2).getRevision());
+        Assert.assertEquals(5, changes.getLastSequence());
+    }
+
+    @Test
+    public void changes_documentsWithAttachments_attachmentsReturnedWithEachRevision()
+            throws Exception {
+        BasicDocumentRevision[] docs = createThreeDocuments();
+        MutableDocumentRevision update = docs[0].mutableCopy();
+        update.attachments.put("att-a", attachment("att-a"));
+        update.attachments.put("att-b", attachment("att-b"));
+        BasicDocumentRevision withTwo = datastore.updateDocumentFromRevision(update);
+        update = docs[2].mutableCopy();
+        update.attachments.put("att-c", attachment("att-c"));
+        BasicDocumentRevision withOne = datastore.updateDocumentFromRevision(update);
+
+        Changes changes = datastore.changes(0, 10);
+        Assert.assertEquals(3, changes.size());
+        for (DocumentRevision rev : changes.getResults()) {
+            if (rev.getId().equals(withTwo.getId())) {
+                Assert.assertEquals(withTwo.getRevision(), rev.getRevision());
+                Assert.assertEquals(2, rev.getAttachments().size());
+                Assert.assertTrue(rev.getAttachments().containsKey("att-a"));
+                Assert.assertTrue(rev.getAttachments().containsKey("att-b"));
+            } else if (rev.getId().equals(withOne.getId())) {
+                Assert.assertEquals(1, rev.getAttachments().size());
+                Assert.assertTrue(rev.getAttachments().containsKey("att-c"));
+            } else {
+                Assert.assertTrue(rev.getAttachments().isEmpty());
+            }
+        }
+    }
+
+    private static Attachment attachment(String name) {
+        return new UnsavedStreamAttachment(new ByteArrayInputStream(name.getBytes()), name,
+                "text/plain");
+    }
 }
@@ -22,6 +22,7 @@ import org.junit.Test;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -467,6 +468,42 @@ public class BasicDatastoreConflictsTest extends BasicDatastoreTestBase {
         return expectedConflicts;
     }
 
+    @Test
+    public void getAllRevisionsOfDocuments_conflictedDocuments_sameTreesAsSingleDocument()
+            throws Exception {
+        String withAttachments = this.createConflictedDocumentWithAttachmentsWinning();
+        String threeLeafs = this.createConflictedDocumentWithThreeLeafs();
+
+        Map<String, DocumentRevisionTree> trees = this.datastore.getAllRevisionsOfDocuments(
+                Arrays.asList(withAttachments, threeLeafs, withAttachments, "missing"));
+        Assert.assertEquals(2, trees.size());
+
+        for (String docId : Arrays.asList(withAttachments, threeLeafs)) {
+            DocumentRevisionTree expected = this.datastore.getAllRevisionsOfDocument(docId);
+            DocumentRevisionTree actual = trees.get(docId);
+            Assert.assertEquals(expected.leafRevisionIds(), actual.leafRevisionIds());
+            Assert.assertEquals(expected.getCurrentRevision().getRevision(),
+                    actual.getCurrentRevision().getRevision());
+            for (BasicDocumentRevision leaf : expected.leafRevisions()) {
+                BasicDocumentRevision actualLeaf = actual.bySequence(leaf.getSequence());
+                Assert.assertEquals(leaf.asMap(), actualLeaf.asMap());
+                Assert.assertEquals(leaf.getAttachments().keySet(),
+                        actualLeaf.getAttachments().keySet());
+                Assert.assertEquals(expected.getPath(leaf.getSequence()),
+                        actual.getPath(leaf.getSequence()));
+            }
+        }
+
+        // only leaf revisions have their body and attachments loaded
+        BasicDocumentRevision winner = trees.get(withAttachments).getCurrentRevision();
+        Assert.assertEquals(1, winner.getAttachments().size());
+        BasicDocumentRevision parent = trees.get(withAttachments)
+                .getPathForNode(winner.getSequence()).get(1);
+        Assert.assertEquals("Jerry", this.datastore.getAllRevisionsOfDocument(withAttachments)
+                .bySequence(parent.getSequence()).asMap().get("name"));
+        Assert.assertTrue(parent.getBody().asMap().isEmpty());
+    }
+
     private String createConflictedDocument() throws Exception {
         BasicDocumentRevision rev = this.createDocumentRevision("Tom");
         BasicDocumentRevision newRev = this.createDetachedDocumentRevision(rev.getId(), "2-a", "Jerry");
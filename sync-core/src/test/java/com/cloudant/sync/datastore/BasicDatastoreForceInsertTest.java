@@ -14,9 +14,11 @@
 
 package com.cloudant.sync.datastore;
 
+import com.cloudant.sync.notifications.DocumentCreated;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.cloudant.sync.util.CouchUtils;
 import com.cloudant.sync.util.TestUtils;
+import com.google.common.eventbus.Subscribe;
 import org.apache.commons.io.FileUtils;
 import org.junit.After;
 import org.junit.Assert;
@@ -435,4 +437,58 @@ public class BasicDatastoreForceInsertTest {
         Assert.assertTrue(Arrays.equals(obj.getBody().asBytes(), body.asBytes()));
     }
 
+    @Test
+    public void forceInsert_listOfRevisions_allInsertedWithAnEventEach() throws Exception {
+        DocumentCreatedCounter counter = new DocumentCreatedCounter();
+        datastore.getEventBus().register(counter);
+
+        List<ForceInsertItem> items = new ArrayList<ForceInsertItem>();
+        items.add(new ForceInsertItem(createDbObject("doc-a", "1-a", bodyOne),
+                Arrays.asList("1-a"), null, null, false));
+        items.add(new ForceInsertItem(createDbObject("doc-b", "2-b", bodyTwo),
+                Arrays.asList("1-b", "2-b"), null, null, false));
+        datastore.forceInsert(items);
+
+        assertDocumentHasRevAndBody("doc-a", "1-a", bodyOne);
+        assertDocumentHasRevAndBody("doc-b", "2-b", bodyTwo);
+        Assert.assertEquals(2, counter.created.size());
+        Assert.assertEquals("doc-a", counter.created.get(0).newDocument.getId());
+        Assert.assertEquals("doc-b", counter.created.get(1).newDocument.getId());
+    }
+
+    @Test
+    public void forceInsert_listWithInvalidRevision_nothingInserted() throws Exception {
+        List<ForceInsertItem> items = new ArrayList<ForceInsertItem>();
+        items.add(new ForceInsertItem(createDbObject("doc-a", "1-a", bodyOne),
+                Arrays.asList("1-a"), null, null, false));
+        items.add(new ForceInsertItem(createDbObject("doc-b", "2-b", bodyTwo),
+                Arrays.asList("2-b", "1-b"), null, null, false));
+        try {
+            datastore.forceInsert(items);
+            Assert.fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Assert.assertFalse(datastore.containsDocument("doc-a"));
+        Assert.assertFalse(datastore.containsDocument("doc-b"));
+    }
+
+    private BasicDocumentRevision createDbObject(String docId, String rev, DocumentBody body) {
+        DocumentRevisionBuilder builder = new DocumentRevisionBuilder();
+        builder.setDocId(docId);
+        builder.setRevId(rev);
+        builder.setDeleted(false);
+        builder.setBody(body);
+        return builder.build();
+    }
+
+    public static class DocumentCreatedCounter {
+        final List<DocumentCreated> created = new ArrayList<DocumentCreated>();
+
+        @Subscribe
+        public void onDocumentCreated(DocumentCreated event) {
+            created.add(event);
+        }
+    }
+
 }
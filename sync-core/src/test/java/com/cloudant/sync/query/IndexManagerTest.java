@@ -23,6 +23,7 @@ import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.datastore.MutableDocumentRevision;
 import com.cloudant.sync.util.SQLDatabaseTestUtils;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.Arrays;
@@ -150,4 +151,61 @@ public class IndexManagerTest extends AbstractIndexTestBase {
         assertThat(im.isTextSearchEnabled(), is(true));
     }
 
+    @Test
+    public void staleOkQueryDoesNotUpdateIndexes() throws Exception {
+        im.ensureIndexed(Arrays.<Object>asList("name"), "basic");
+        createDocument("mike12", "mike");
+
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        assertThat(im.find(query, 0, 0, null, null, true).size(), is(0));
+        assertThat(im.find(query).size(), is(1));
+    }
+
+    @Test
+    public void backgroundIndexingIndexesChanges() throws Exception {
+        im.ensureIndexed(Arrays.<Object>asList("name"), "basic");
+        createDocument("mike12", "mike");
+
+        im.startBackgroundIndexing();
+        assertThat(im.isBackgroundIndexing(), is(true));
+        createDocument("mike23", "mike");
+        createDocument("fred34", "fred");
+
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("name", "mike");
+        // documents created before and after starting are indexed in the background
+        long timeout = System.currentTimeMillis() + 10 * 1000;
+        while (im.find(query, 0, 0, null, null, true).size() < 2
+                && System.currentTimeMillis() < timeout) {
+            Thread.sleep(IndexManager.BACKGROUND_INDEXING_DELAY_MS / 5);
+        }
+        assertThat(im.find(query, 0, 0, null, null, true).size(), is(2));
+
+        IndexManager.BackgroundIndexer indexer = im.getBackgroundIndexer();
+        im.stopBackgroundIndexing();
+        assertThat(im.isBackgroundIndexing(), is(false));
+        assertThat(indexer.isStopped(), is(true));
+        try {
+            ds.getEventBus().unregister(indexer);
+            Assert.fail("Expected the background indexer to be unregistered already");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // so changes made after stopping are only indexed by a query
+        createDocument("mike45", "mike");
+        assertThat(im.find(query, 0, 0, null, null, true).size(), is(2));
+        assertThat(im.find(query).size(), is(3));
+    }
+
+    private void createDocument(String docId, String name) throws Exception {
+        MutableDocumentRevision rev = new MutableDocumentRevision();
+        rev.docId = docId;
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        bodyMap.put("name", name);
+        rev.body = DocumentBodyFactory.create(bodyMap);
+        ds.createDocumentFromRevision(rev);
+    }
+
 }
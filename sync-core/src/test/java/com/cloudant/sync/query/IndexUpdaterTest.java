@@ -21,6 +21,7 @@ import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
 import com.cloudant.sync.datastore.BasicDocumentRevision;
+import com.cloudant.sync.datastore.Datastore;
 import com.cloudant.sync.datastore.DocumentBodyFactory;
 import com.cloudant.sync.datastore.MutableDocumentRevision;
 import com.cloudant.sync.sqlite.Cursor;
@@ -32,6 +33,7 @@ import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
+import org.mockito.Mockito;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -713,6 +715,75 @@ public class IndexUpdaterTest extends AbstractIndexTestBase {
         }
     }
 
+    @Test
+    public void updateAllIndexesReadsChangesOnceFromLowestSequence() throws Exception {
+        MutableDocumentRevision rev = new MutableDocumentRevision();
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        for (String name: Arrays.asList("mike", "fred")) {
+            rev.docId = name;
+            bodyMap.put("name", name);
+            bodyMap.put("pet", "cat");
+            rev.body = DocumentBodyFactory.create(bodyMap);
+            ds.createDocumentFromRevision(rev);
+        }
+        createIndex("basicName", Arrays.<Object>asList("name"));
+
+        for (String name: Arrays.asList("john", "bill")) {
+            rev.docId = name;
+            bodyMap.put("name", name);
+            rev.body = DocumentBodyFactory.create(bodyMap);
+            ds.createDocumentFromRevision(rev);
+        }
+        // only one text index is allowed, so the second index is always json
+        createIndex("basicPet", Arrays.<Object>asList("pet"), "json");
+
+        assertThat(getIndexSequenceNumber("basicName"), is(2l));
+        assertThat(getIndexSequenceNumber("basicPet"), is(4l));
+
+        rev.docId = "anna";
+        bodyMap.put("name", "anna");
+        rev.body = DocumentBodyFactory.create(bodyMap);
+        ds.createDocumentFromRevision(rev);
+        MutableDocumentRevision update = ds.getDocument("mike").mutableCopy();
+        bodyMap.put("name", "mike");
+        bodyMap.put("pet", "dog");
+        update.body = DocumentBodyFactory.create(bodyMap);
+        ds.updateDocumentFromRevision(update);
+
+        Datastore spy = Mockito.spy(ds);
+        assertThat(IndexUpdater.updateAllIndexes(im.listIndexes(), im.getDatabase(), spy,
+                                                 im.getQueue()), is(true));
+        // one page of changes from the lowest sequence and the final empty page,
+        // rather than a pass over the changes for each index
+        Mockito.verify(spy).changes(2, 10000);
+        Mockito.verify(spy).changes(6, 10000);
+        Mockito.verify(spy, Mockito.times(2)).changes(Mockito.anyLong(), Mockito.anyInt());
+
+        assertThat(getIndexSequenceNumber("basicName"), is(6l));
+        assertThat(getIndexSequenceNumber("basicPet"), is(6l));
+        assertThat(countRows("basicName", "_id = 'anna'"), is(1));
+        assertThat(countRows("basicName", "1"), is(5));
+        assertThat(countRows("basicPet", "pet = 'dog'"), is(1));
+        assertThat(countRows("basicPet", "1"), is(5));
+    }
+
+    private int countRows(String indexName, String where) {
+        String sql = String.format("SELECT COUNT(*) FROM %s WHERE %s",
+                                   IndexManager.tableNameForIndex(indexName), where);
+        Cursor cursor = null;
+        SQLDatabase db = TestUtils.getDatabaseConnectionToExistingDb(this.db);
+        try {
+            cursor = db.rawQuery(sql, new String[]{});
+            assertThat(cursor.moveToFirst(), is(true));
+            return cursor.getInt(0);
+        } catch (SQLException e) {
+            Assert.fail(String.format("SQLException occurred executing %s: %s", sql, e));
+            return -1;
+        } finally {
+            DatabaseUtils.closeCursorQuietly(cursor);
+        }
+    }
+
     private long getIndexSequenceNumber(String indexName) {
         String where = String.format("index_name = \"%s\" group by last_sequence", indexName);
         String sql = String.format("SELECT last_sequence FROM %s where %s",
@@ -12,6 +12,7 @@
 
 package com.cloudant.sync.query;
 
+import static com.cloudant.sync.query.QueryExecutor.sqlToPageIds;
 import static com.cloudant.sync.query.QueryExecutor.sqlToSortIds;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
@@ -19,10 +20,12 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
+import com.cloudant.sync.datastore.Datastore;
 import com.cloudant.sync.util.SQLDatabaseTestUtils;
 import com.cloudant.sync.util.TestUtils;
 
 import org.junit.Test;
+import org.mockito.Mockito;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -141,6 +144,70 @@ public class QuerySortTest extends AbstractQueryTestBase {
         assertThat(queryResult, is(nullValue()));
     }
 
+    @Test
+    public void coveredQueryOnlyLoadsPageOfDocuments() throws Exception {
+        setUpLargeResultSetQueryData();
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("large_field", "cat");
+        Map<String, String> sort = new HashMap<String, String>();
+        sort.put("idx", "desc");
+        List<Map<String, String>> sortDoc = new ArrayList<Map<String, String>>();
+        sortDoc.add(sort);
+
+        Datastore spy = Mockito.spy((Datastore) ds);
+        QueryExecutor executor = new QueryExecutor(im.getDatabase(), spy, im.getQueue());
+        QueryResult queryResult = executor.find(query, im.listIndexes(), 100, 10, null, sortDoc);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 49; i > 39; i--) {
+            expected.add(String.format("d%d", i));
+        }
+        assertThat(queryResult.documentIds(), contains(expected.toArray()));
+        // skip and limit were applied before the documents were loaded
+        Mockito.verify(spy).getDocumentsWithIds(expected);
+    }
+
+    // When generating SQL for a page of results
+
+    @Test
+    public void pageSqlWithoutSort() {
+        SqlParts query = SqlParts.partsForSql("SELECT _id FROM t WHERE a = ?", new String[]{"x"});
+        SqlParts parts = sqlToPageIds(query, null, indexes, 20, 10);
+        assertThat(parts.sqlWithPlaceHolders,
+                is("SELECT DISTINCT _id FROM (SELECT _id FROM t WHERE a = ?) LIMIT 10 OFFSET 20"));
+        assertThat(parts.placeHolderValues, is(new String[]{"x"}));
+    }
+
+    @Test
+    public void pageSqlWithSortAndNoLimit() {
+        SqlParts query = SqlParts.partsForSql("SELECT _id FROM t WHERE a = ?", new String[]{"x"});
+        Map<String, String> sortY = new HashMap<String, String>();
+        sortY.put("y", "desc");
+        List<Map<String, String>> order = new ArrayList<Map<String, String>>();
+        order.add(sortY);
+        SqlParts parts = sqlToPageIds(query, order, indexes, 5, 0);
+        String sql = "SELECT DISTINCT _id FROM _t_cloudant_sync_query_index_b WHERE _id IN " +
+                "(SELECT _id FROM t WHERE a = ?) ORDER BY \"y\" DESC LIMIT -1 OFFSET 5";
+        assertThat(parts.sqlWithPlaceHolders, is(sql));
+        assertThat(parts.placeHolderValues, is(new String[]{"x"}));
+    }
+
+    @Test
+    public void pageSqlWithoutSkipOrLimit() {
+        SqlParts query = SqlParts.partsForSql("SELECT _id FROM t", new String[]{});
+        SqlParts parts = sqlToPageIds(query, null, indexes, 0, 0);
+        assertThat(parts.sqlWithPlaceHolders, is("SELECT DISTINCT _id FROM (SELECT _id FROM t)"));
+    }
+
+    @Test
+    public void pageSqlFailsWhenNoIndexForSort() {
+        SqlParts query = SqlParts.partsForSql("SELECT _id FROM t", new String[]{});
+        Map<String, String> sortBad = new HashMap<String, String>();
+        sortBad.put("nope", "asc");
+        List<Map<String, String>> order = new ArrayList<Map<String, String>>();
+        order.add(sortBad);
+        assertThat(sqlToPageIds(query, order, indexes, 0, 10), is(nullValue()));
+    }
+
     // When generating ordering SQL
 
     @Test
@@ -53,6 +53,79 @@ public class QuerySqlTranslatorTest extends AbstractIndexTestBase {
         textIndexTable = String.format("_t_cloudant_sync_query_index_%s", textIndexName);
     }
 
+    // When compiling a tree into a single statement
+
+    @Test
+    public void compilesOrNodeToUnion() {
+        OrQueryNode or = new OrQueryNode();
+        or.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", "1"));
+        or.children.add(sqlNode("SELECT _id FROM b WHERE y = ? AND z = ?", "2", "3"));
+        SqlParts parts = QuerySqlTranslator.sqlForQueryTree(or);
+        assertThat(parts.sqlWithPlaceHolders, is("SELECT _id FROM a WHERE x = ? UNION " +
+                                                 "SELECT _id FROM b WHERE y = ? AND z = ?"));
+        assertThat(parts.placeHolderValues, is(arrayContaining("1", "2", "3")));
+    }
+
+    @Test
+    public void compilesNestedNodesToSubSelects() {
+        OrQueryNode or = new OrQueryNode();
+        or.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", "1"));
+        or.children.add(sqlNode("SELECT _id FROM b WHERE y = ?", "2"));
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(or);
+        and.children.add(new OrQueryNode());  // selects nothing, so ignored
+        and.children.add(sqlNode("SELECT _id FROM c WHERE z = ?", "3"));
+        SqlParts parts = QuerySqlTranslator.sqlForQueryTree(and);
+        assertThat(parts.sqlWithPlaceHolders, is("SELECT _id FROM (" +
+                "SELECT _id FROM a WHERE x = ? UNION SELECT _id FROM b WHERE y = ?) " +
+                "INTERSECT SELECT _id FROM c WHERE z = ?"));
+        assertThat(parts.placeHolderValues, is(arrayContaining("1", "2", "3")));
+    }
+
+    @Test
+    public void compilesEmptyTreeToNull() {
+        AndQueryNode and = new AndQueryNode();
+        and.children.add(new OrQueryNode());
+        assertThat(QuerySqlTranslator.sqlForQueryTree(and), is(nullValue()));
+    }
+
+    @Test
+    public void doesNotCompileTreeTooLargeForOneStatement() {
+        OrQueryNode or = new OrQueryNode();
+        for (int i = 0; i < 501; i++) {
+            or.children.add(sqlNode("SELECT _id FROM a WHERE x = ?", Integer.toString(i)));
+        }
+        assertThat(QuerySqlTranslator.sqlForQueryTree(or), is(nullValue()));
+    }
+
+    @Test
+    public void compiledTranslatedQueryRuns() throws Exception {
+        // query - { "$or" : [ { "name" : "mike" }, { "$and" : [ { "age" : 12 },
+        //                                                     { "pet" : "cat" } ] } ] }
+        Map<String, Object> name = new HashMap<String, Object>();
+        name.put("name", "mike");
+        Map<String, Object> age = new HashMap<String, Object>();
+        age.put("age", 12);
+        Map<String, Object> pet = new HashMap<String, Object>();
+        pet.put("pet", "cat");
+        Map<String, Object> and = new HashMap<String, Object>();
+        and.put("$and", Arrays.<Object>asList(age, pet));
+        Map<String, Object> query = new HashMap<String, Object>();
+        query.put("$or", Arrays.<Object>asList(name, and));
+        query = QueryValidator.normaliseAndValidateQuery(query);
+        QueryNode node = QuerySqlTranslator.translateQuery(query, indexes, indexesCoverQuery);
+        SqlParts parts = QuerySqlTranslator.sqlForQueryTree(node);
+        assertThat(parts, is(notNullValue()));
+        // the statement is valid SQL for the index tables
+        db.rawQuery(parts.sqlWithPlaceHolders, parts.placeHolderValues).close();
+    }
+
+    private static SqlQueryNode sqlNode(String sql, String... parameters) {
+        SqlQueryNode node = new SqlQueryNode();
+        node.sql = SqlParts.partsForSql(sql, parameters);
+        return node;
+    }
+
     // When creating a tree
 
     @Test
@@ -1180,4 +1180,46 @@ public class UnindexedMatcherTest {
         assertThat(matcher.matches(rev), is(false));
     }
 
+    @Test
+    public void noMatchOnDottedFieldsThroughNonObject() {
+        // Selector - { "name.first" : "mike" }
+        Map<String, Object> selector = new HashMap<String, Object>();
+        selector.put("name.first", "mike");
+        selector = QueryValidator.normaliseAndValidateQuery(selector);
+        UnindexedMatcher matcher = UnindexedMatcher.matcherWithSelector(selector);
+        assertThat(matcher.matches(rev), is(false));
+    }
+
+    @Test
+    public void matchOnDocumentId() {
+        // Selector - { "_id" : "dsfsdfdfs" }
+        Map<String, Object> selector = new HashMap<String, Object>();
+        selector.put("_id", "dsfsdfdfs");
+        selector = QueryValidator.normaliseAndValidateQuery(selector);
+        UnindexedMatcher matcher = UnindexedMatcher.matcherWithSelector(selector);
+        assertThat(matcher.matches(rev), is(true));
+    }
+
+    @Test
+    public void matcherCanBeReusedAcrossDocuments() {
+        // Selector - { "age" : { "$gt" : 30 } }
+        Map<String, Object> op = new HashMap<String, Object>();
+        op.put("$gt", 30);
+        Map<String, Object> selector = new HashMap<String, Object>();
+        selector.put("age", op);
+        selector = QueryValidator.normaliseAndValidateQuery(selector);
+        UnindexedMatcher matcher = UnindexedMatcher.matcherWithSelector(selector);
+        assertThat(matcher.matches(rev), is(true));
+
+        Map<String, Object> bodyMap = new HashMap<String, Object>();
+        bodyMap.put("name", "fred");
+        bodyMap.put("age", 12);
+        DocumentRevisionBuilder builder = new DocumentRevisionBuilder();
+        builder.setDocId("fred");
+        builder.setRevId("1-fred");
+        builder.setBody(DocumentBodyFactory.create(bodyMap));
+        assertThat(matcher.matches(builder.build()), is(false));
+        assertThat(matcher.matches(rev), is(true));
+    }
+
 }
@@ -102,8 +102,8 @@ public class BasicPullStrategyMockTest extends ReplicationTestBase {
         pullStrategy.sourceDb = mockRemoteDb;
         pullStrategy.getEventBus().register(mockListener);
 
-        doThrow(new RuntimeException("Mocked error.")).when(mockRemoteDb).changes(anyString(),
-                anyInt());
+        doThrow(new RuntimeException("Mocked error.")).when(mockRemoteDb).changes(
+                any(Replication.Filter.class), any(), anyInt(), any(ChangesResult.RowHandler.class));
         when(mockRemoteDb.exists()).thenReturn(true);
 
         // Exec
@@ -166,9 +166,10 @@ public class BasicPullStrategyMockTest extends ReplicationTestBase {
     @Test
     public void testReplicationDocWithEmptyId() throws Exception {
         CouchDB mockRemoteDb = mock(CouchDB.class);
-        when(mockRemoteDb.changes(null, null, 1000)).then(new Answer<Object>() {
+        when(mockRemoteDb.changes((Replication.Filter) isNull(), isNull(), eq(1000),
+                any(ChangesResult.RowHandler.class))).then(new ChangesResultAnswer() {
             @Override
-            public Object answer(InvocationOnMock invocation) throws Throwable {
+            ChangesResult changes(Object since) throws Exception {
                 JSONHelper jsonHelper = new JSONHelper();
                 FileReader fr = new FileReader(TestUtils.loadFixture("fixture/testReplicationDocWithEmptyId_changes.json"));
                 return jsonHelper.fromJson(fr, ChangesResult.class);
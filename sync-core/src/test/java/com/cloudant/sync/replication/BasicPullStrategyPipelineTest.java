@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import com.cloudant.mazha.ChangesResult;
+import com.cloudant.mazha.CouchException;
+import com.cloudant.mazha.DocumentRevs;
+import com.cloudant.mazha.json.JSONHelper;
+import com.cloudant.sync.datastore.DatastoreExtended;
+import com.cloudant.sync.datastore.DatastoreManager;
+import com.cloudant.sync.datastore.UnsavedStreamAttachment;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests the pipelining of BasicPullStrategy against a mocked source database: changes are
+ * fetched ahead, documents are inserted in the order their fetches complete, and the
+ * checkpoint only advances once a whole page of changes is inserted.
+ */
+public class BasicPullStrategyPipelineTest {
+
+    String datastoreManagerPath;
+    DatastoreManager datastoreManager;
+    DatastoreExtended datastore;
+    CouchDB mockRemoteDb;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerPath = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastoreManager = new DatastoreManager(datastoreManagerPath);
+        datastore = (DatastoreExtended) datastoreManager.openDatastore(getClass().getSimpleName());
+
+        mockRemoteDb = mock(CouchDB.class);
+        when(mockRemoteDb.exists()).thenReturn(true);
+        when(mockRemoteDb.getIdentifier()).thenReturn("http://127.0.0.1:5984/pipeline");
+
+        // two pages of changes: docs 1-3, then docs 4-5
+        when(mockRemoteDb.changes(any(Replication.Filter.class), any(), eq(3),
+                any(ChangesResult.RowHandler.class)))
+                .then(new ChangesResultAnswer() {
+                    @Override
+                    ChangesResult changes(Object since) {
+                        if (since == null) {
+                            return changesResult(3, "doc-1", "doc-2", "doc-3");
+                        } else if ("3".equals(since)) {
+                            return changesResult(5, "doc-4", "doc-5");
+                        }
+                        throw new IllegalArgumentException("Unexpected since: " + since);
+                    }
+                });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datastore.close();
+        TestUtils.deleteTempTestingDir(datastoreManagerPath);
+    }
+
+    @Test
+    public void pull_twoPagesOfChanges_allDocumentsInsertedAndCheckpointAdvanced()
+            throws Exception {
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean()))
+                .then(new Answer<List<DocumentRevs>>() {
+            @Override
+            public List<DocumentRevs> answer(InvocationOnMock invocation) throws Throwable {
+                String id = (String) invocation.getArguments()[0];
+                if ("doc-1".equals(id)) {
+                    // complete after the other documents of the page
+                    Thread.sleep(200);
+                }
+                return Arrays.asList(documentRevs(id, "1-a"));
+            }
+        });
+
+        BasicPullStrategy pullStrategy = createPullStrategy();
+        pullStrategy.run();
+
+        Assert.assertEquals(5, datastore.getDocumentCount());
+        Assert.assertEquals(5, pullStrategy.getDocumentCounter());
+        Assert.assertEquals("5", new DatastoreWrapper(datastore)
+                .getCheckpoint(pullStrategy.getReplicationId()));
+        // the second page is requested from the first page's last sequence
+        verify(mockRemoteDb).changes(any(Replication.Filter.class), eq("3"), eq(3),
+                any(ChangesResult.RowHandler.class));
+    }
+
+    @Test
+    public void pull_fetchFails_checkpointNotAdvanced() throws Exception {
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean()))
+                .then(new Answer<List<DocumentRevs>>() {
+            @Override
+            public List<DocumentRevs> answer(InvocationOnMock invocation) throws Throwable {
+                String id = (String) invocation.getArguments()[0];
+                if ("doc-2".equals(id)) {
+                    throw new IllegalStateException("Mocked error.");
+                }
+                return Arrays.asList(documentRevs(id, "1-a"));
+            }
+        });
+
+        BasicPullStrategy pullStrategy = createPullStrategy();
+        pullStrategy.run();
+
+        Assert.assertNull(new DatastoreWrapper(datastore)
+                .getCheckpoint(pullStrategy.getReplicationId()));
+        Assert.assertFalse(datastore.containsDocument("doc-4"));
+    }
+
+    @Test
+    public void pull_pageLargerThanChunk_allDocumentsInserted() throws Exception {
+        final int count = BasicPullStrategy.ROWS_PER_CHUNK * 2 + 50;
+        when(mockRemoteDb.changes(any(Replication.Filter.class), any(), eq(1000),
+                any(ChangesResult.RowHandler.class)))
+                .then(new ChangesResultAnswer() {
+                    @Override
+                    ChangesResult changes(Object since) {
+                        String[] ids = new String[count];
+                        for (int i = 0; i < count; i++) {
+                            ids[i] = "doc-" + i;
+                        }
+                        return changesResult(count, ids);
+                    }
+                });
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean()))
+                .then(new Answer<List<DocumentRevs>>() {
+            @Override
+            public List<DocumentRevs> answer(InvocationOnMock invocation) throws Throwable {
+                return Arrays.asList(documentRevs((String) invocation.getArguments()[0], "1-a"));
+            }
+        });
+
+        BasicPullStrategy pullStrategy = createPullStrategy(1000);
+        pullStrategy.run();
+
+        Assert.assertEquals(count, datastore.getDocumentCount());
+        Assert.assertEquals(String.valueOf(count), new DatastoreWrapper(datastore)
+                .getCheckpoint(pullStrategy.getReplicationId()));
+    }
+
+    @Test
+    public void pull_continuous_waitsForChangesUntilStopped() throws Exception {
+        // the feed is caught up after doc-5, then doc-6 is made, and then there are no
+        // more changes until the replication is stopped
+        final CountDownLatch aborted = new CountDownLatch(1);
+        when(mockRemoteDb.longpollChanges(any(Replication.Filter.class), any(), eq(3),
+                eq(BasicPullStrategy.LONGPOLL_TIMEOUT_MS), any(ChangesResult.RowHandler.class)))
+                .then(new ChangesResultAnswer() {
+                    @Override
+                    ChangesResult changes(Object since) throws Exception {
+                        if (since == null) {
+                            return changesResult(3, "doc-1", "doc-2", "doc-3");
+                        } else if ("3".equals(since)) {
+                            return changesResult(5, "doc-4", "doc-5");
+                        } else if ("5".equals(since)) {
+                            return changesResult(6, "doc-6");
+                        } else if ("6".equals(since)) {
+                            aborted.await();
+                            throw new CouchException("Request was aborted", null, -1);
+                        }
+                        throw new IllegalArgumentException("Unexpected since: " + since);
+                    }
+                });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                aborted.countDown();
+                return null;
+            }
+        }).when(mockRemoteDb).abortChanges();
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean()))
+                .then(new Answer<List<DocumentRevs>>() {
+            @Override
+            public List<DocumentRevs> answer(InvocationOnMock invocation) throws Throwable {
+                return Arrays.asList(documentRevs((String) invocation.getArguments()[0], "1-a"));
+            }
+        });
+
+        BasicPullStrategy pullStrategy = createPullStrategy(3, true);
+        TestStrategyListener listener = new TestStrategyListener();
+        pullStrategy.getEventBus().register(listener);
+        Thread thread = new Thread(pullStrategy);
+        thread.start();
+
+        DatastoreWrapper datastoreWrapper = new DatastoreWrapper(datastore);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!"6".equals(datastoreWrapper.getCheckpoint(pullStrategy.getReplicationId()))
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(6, datastore.getDocumentCount());
+        Assert.assertEquals("6", datastoreWrapper.getCheckpoint(pullStrategy.getReplicationId()));
+        Assert.assertFalse(pullStrategy.isReplicationTerminated());
+
+        pullStrategy.setCancel();
+        thread.join(10000);
+
+        Assert.assertTrue(pullStrategy.isReplicationTerminated());
+        Assert.assertTrue(listener.finishCalled);
+        Assert.assertFalse(listener.errorCalled);
+        verify(mockRemoteDb).abortChanges();
+        verify(mockRemoteDb, never()).changes(any(Replication.Filter.class), any(), anyInt(),
+                any(ChangesResult.RowHandler.class));
+    }
+
+    @Test
+    public void pull_attachments_downloadedConcurrently() throws Exception {
+        // each download waits until all three are running at once
+        final CountDownLatch allStarted = new CountDownLatch(3);
+        AttachmentAnswer answer = new AttachmentAnswer() {
+            @Override
+            void download() throws Exception {
+                allStarted.countDown();
+                Assert.assertTrue(allStarted.await(10, TimeUnit.SECONDS));
+            }
+        };
+        int maxInFlight = pullWithAttachments(answer,
+                new PullConfiguration(3, PullConfiguration.DEFAULT_MAX_BATCH_COUNTER_PER_RUN, 2,
+                        false, 2, 3, PullConfiguration.DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT));
+        Assert.assertEquals(3, maxInFlight);
+    }
+
+    @Test
+    public void pull_attachmentsLargerThanBudget_downloadedOneAtATime() throws Exception {
+        AttachmentAnswer answer = new AttachmentAnswer() {
+            @Override
+            void download() throws Exception {
+                Thread.sleep(50);
+            }
+        };
+        // each attachment is 5 bytes, so only one fits in the budget at a time
+        int maxInFlight = pullWithAttachments(answer,
+                new PullConfiguration(3, PullConfiguration.DEFAULT_MAX_BATCH_COUNTER_PER_RUN, 2,
+                        false, 2, 3, 8));
+        Assert.assertEquals(1, maxInFlight);
+    }
+
+    /**
+     * Pulls doc-1 with three attachments, and the other documents without any.
+     *
+     * @return the highest number of attachment downloads running at once
+     */
+    private int pullWithAttachments(AttachmentAnswer answer, PullConfiguration config)
+            throws Exception {
+        when(mockRemoteDb.getRevisions(anyString(), anyCollectionOf(String.class),
+                anyCollectionOf(String.class), anyBoolean()))
+                .then(new Answer<List<DocumentRevs>>() {
+            @Override
+            public List<DocumentRevs> answer(InvocationOnMock invocation) throws Throwable {
+                String id = (String) invocation.getArguments()[0];
+                DocumentRevs documentRevs = documentRevs(id, "1-a");
+                if ("doc-1".equals(id)) {
+                    Map<String, Object> attachments = new HashMap<String, Object>();
+                    for (String name : Arrays.asList("att-1", "att-2", "att-3")) {
+                        Map<String, Object> stub = new HashMap<String, Object>();
+                        stub.put("content_type", "text/plain");
+                        stub.put("revpos", 1);
+                        stub.put("length", 5);
+                        stub.put("stub", true);
+                        attachments.put(name, stub);
+                    }
+                    documentRevs.setAttachments(attachments);
+                }
+                return Arrays.asList(documentRevs);
+            }
+        });
+        when(mockRemoteDb.getAttachmentStream(eq("doc-1"), eq("1-a"), anyString(),
+                eq("text/plain"), anyString())).then(answer);
+
+        BasicPullStrategy pullStrategy = createPullStrategy(false, config);
+        pullStrategy.run();
+
+        Assert.assertEquals(5, datastore.getDocumentCount());
+        Assert.assertEquals(3, datastore.attachmentsForRevision(
+                datastore.getDocument("doc-1")).size());
+        return answer.maxInFlight.get();
+    }
+
+    private static abstract class AttachmentAnswer implements Answer<UnsavedStreamAttachment> {
+
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        abstract void download() throws Exception;
+
+        @Override
+        public UnsavedStreamAttachment answer(InvocationOnMock invocation) throws Throwable {
+            int now = inFlight.incrementAndGet();
+            synchronized (maxInFlight) {
+                maxInFlight.set(Math.max(maxInFlight.get(), now));
+            }
+            try {
+                download();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            return new UnsavedStreamAttachment(new ByteArrayInputStream("hello".getBytes()),
+                    (String) invocation.getArguments()[2], "text/plain");
+        }
+    }
+
+    private BasicPullStrategy createPullStrategy() throws Exception {
+        return createPullStrategy(3);
+    }
+
+    private BasicPullStrategy createPullStrategy(int changeLimitPerBatch) throws Exception {
+        return createPullStrategy(changeLimitPerBatch, false);
+    }
+
+    private BasicPullStrategy createPullStrategy(int changeLimitPerBatch, boolean continuous)
+            throws Exception {
+        // pages of changeLimitPerBatch changes, inserts of 2 documents, 2 fetches in flight
+        return createPullStrategy(continuous, new PullConfiguration(changeLimitPerBatch,
+                PullConfiguration.DEFAULT_MAX_BATCH_COUNTER_PER_RUN, 2, false, 2));
+    }
+
+    private BasicPullStrategy createPullStrategy(boolean continuous, PullConfiguration config)
+            throws Exception {
+        PullReplication pullReplication = new PullReplication();
+        pullReplication.continuous = continuous;
+        pullReplication.source = new URI("http://127.0.0.1:5984/pipeline");
+        pullReplication.target = datastore;
+        BasicPullStrategy pullStrategy = new BasicPullStrategy(pullReplication, null, config);
+        pullStrategy.sourceDb = mockRemoteDb;
+        return pullStrategy;
+    }
+
+    private static ChangesResult changesResult(int lastSeq, String... ids) {
+        List<String> results = new ArrayList<String>();
+        int seq = lastSeq - ids.length;
+        for (String id : ids) {
+            seq++;
+            results.add(String.format(
+                    "{\"seq\":\"%d\",\"id\":\"%s\",\"changes\":[{\"rev\":\"1-a\"}]}",
+                    seq, id));
+        }
+        String json = String.format("{\"results\":[%s],\"last_seq\":\"%d\"}",
+                join(results), lastSeq);
+        return new JSONHelper().fromJson(new StringReader(json), ChangesResult.class);
+    }
+
+    private static String join(Collection<String> strings) {
+        StringBuilder sb = new StringBuilder();
+        for (String s : strings) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static DocumentRevs documentRevs(String id, String rev) {
+        DocumentRevs documentRevs = new DocumentRevs();
+        documentRevs.setId(id);
+        documentRevs.setRev(rev);
+        DocumentRevs.Revisions revisions = new DocumentRevs.Revisions();
+        revisions.setStart(1);
+        revisions.setIds(Arrays.asList(rev.substring(2)));
+        documentRevs.setRevisions(revisions);
+        documentRevs.setOthers("hello", "world");
+        return documentRevs;
+    }
+}
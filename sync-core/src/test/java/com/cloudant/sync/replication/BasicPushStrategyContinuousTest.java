@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import com.cloudant.mazha.CouchClient;
+import com.cloudant.sync.datastore.DatastoreExtended;
+import com.cloudant.sync.datastore.DatastoreManager;
+import com.cloudant.sync.datastore.DocumentBodyFactory;
+import com.cloudant.sync.datastore.MutableDocumentRevision;
+import com.cloudant.sync.util.TestUtils;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests a continuous BasicPushStrategy, which pushes local changes as they are made, against
+ * a mocked target database.
+ */
+public class BasicPushStrategyContinuousTest {
+
+    String datastoreManagerPath;
+    DatastoreManager datastoreManager;
+    DatastoreExtended datastore;
+    CouchDB mockRemoteDb;
+
+    // the documents of each _bulk_docs request
+    final List<List<Map<String, Object>>> bulkDocs =
+            Collections.synchronizedList(new ArrayList<List<Map<String, Object>>>());
+    volatile String checkpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        datastoreManagerPath = TestUtils.createTempTestingDir(this.getClass().getName());
+        datastoreManager = new DatastoreManager(datastoreManagerPath);
+        datastore = (DatastoreExtended) datastoreManager.openDatastore(getClass().getSimpleName());
+
+        mockRemoteDb = mock(CouchDB.class);
+        when(mockRemoteDb.exists()).thenReturn(true);
+        when(mockRemoteDb.getIdentifier()).thenReturn("http://127.0.0.1:5984/continuous");
+        // every open revision is missing from the remote database
+        when(mockRemoteDb.revsDiff(Matchers.<Map<String, Set<String>>>any())).then(
+                new Answer<Map<String, CouchClient.MissingRevisions>>() {
+            @Override
+            public Map<String, CouchClient.MissingRevisions> answer(InvocationOnMock invocation)
+                    throws Throwable {
+                @SuppressWarnings("unchecked")
+                Map<String, Set<String>> revisions =
+                        (Map<String, Set<String>>) invocation.getArguments()[0];
+                Map<String, CouchClient.MissingRevisions> missing =
+                        new HashMap<String, CouchClient.MissingRevisions>();
+                for (Map.Entry<String, Set<String>> e : revisions.entrySet()) {
+                    CouchClient.MissingRevisions m = new CouchClient.MissingRevisions();
+                    m.missing = e.getValue();
+                    missing.put(e.getKey(), m);
+                }
+                return missing;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                @SuppressWarnings("unchecked")
+                List<Map<String, Object>> docs =
+                        (List<Map<String, Object>>) invocation.getArguments()[0];
+                if (!docs.isEmpty()) {
+                    bulkDocs.add(new ArrayList<Map<String, Object>>(docs));
+                }
+                return null;
+            }
+        }).when(mockRemoteDb).bulkCreateDocs(Matchers.<List<Map<String, Object>>>any());
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                checkpoint = (String) invocation.getArguments()[1];
+                return null;
+            }
+        }).when(mockRemoteDb).putCheckpoint(anyString(), anyString());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        datastore.close();
+        TestUtils.deleteTempTestingDir(datastoreManagerPath);
+    }
+
+    @Test
+    public void push_continuous_burstOfChangesPushedTogether() throws Exception {
+        createDocument("doc-1");
+
+        BasicPushStrategy pushStrategy = createPushStrategy();
+        TestStrategyListener listener = new TestStrategyListener();
+        pushStrategy.getEventBus().register(listener);
+        Thread thread = new Thread(pushStrategy);
+        thread.start();
+
+        // the existing document is pushed straight away
+        waitForCheckpoint("1");
+        Assert.assertEquals(1, bulkDocs.size());
+        Assert.assertFalse(pushStrategy.isReplicationTerminated());
+
+        // a burst of changes is pushed in a single batch once it settles. Holding the
+        // listener's lock stops the replication waking up until the whole burst has been
+        // made, however long that takes; the events are posted on this thread, so they
+        // are still received.
+        BasicPushStrategy.LocalChanges localChanges = pushStrategy.localChanges;
+        synchronized (localChanges) {
+            waitForIdle(localChanges);
+            createDocument("doc-2");
+            createDocument("doc-3");
+            createDocument("doc-4");
+        }
+        waitForCheckpoint("4");
+        Assert.assertEquals(2, bulkDocs.size());
+        Assert.assertEquals(3, bulkDocs.get(1).size());
+
+        pushStrategy.setCancel();
+        thread.join(10000);
+
+        Assert.assertTrue(pushStrategy.isReplicationTerminated());
+        Assert.assertTrue(listener.finishCalled);
+        Assert.assertFalse(listener.errorCalled);
+        Assert.assertEquals(4, pushStrategy.getDocumentCounter());
+        // the remote checkpoint is only read when the replication starts
+        verify(mockRemoteDb, times(1)).getCheckpoint(anyString());
+
+        // changes made once stopped aren't pushed
+        Assert.assertFalse(thread.isAlive());
+        Assert.assertNull(pushStrategy.localChanges);
+        createDocument("doc-5");
+        Assert.assertEquals(2, bulkDocs.size());
+    }
+
+    private void createDocument(String id) throws Exception {
+        Map<String, Object> body = new HashMap<String, Object>();
+        body.put("hello", "world");
+        MutableDocumentRevision rev = new MutableDocumentRevision();
+        rev.docId = id;
+        rev.body = DocumentBodyFactory.create(body);
+        datastore.createDocumentFromRevision(rev);
+    }
+
+    private void waitForIdle(BasicPushStrategy.LocalChanges localChanges)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!localChanges.isIdle() && System.currentTimeMillis() < deadline) {
+            // releases the lock, letting the replication finish pushing and start waiting
+            localChanges.wait(10);
+        }
+        Assert.assertTrue(localChanges.isIdle());
+    }
+
+    private void waitForCheckpoint(String sequence) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!sequence.equals(checkpoint) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(sequence, checkpoint);
+    }
+
+    private BasicPushStrategy createPushStrategy() throws Exception {
+        PushReplication pushReplication = new PushReplication();
+        pushReplication.source = datastore;
+        pushReplication.target = new URI("http://127.0.0.1:5984/continuous");
+        pushReplication.continuous = true;
+        BasicPushStrategy pushStrategy = new BasicPushStrategy(pushReplication);
+        pushStrategy.targetDb = mockRemoteDb;
+        return pushStrategy;
+    }
+}
@@ -105,7 +105,7 @@ public class BasicPushStrategyMockTest extends ReplicationTestBase {
         pushStrategy.run();
 
         // Verify
-        verify(mockRemoteDb).bulkSerializedDocs(argThat(new ArgumentMatcher<List>() {
+        verify(mockRemoteDb).bulkCreateDocs(argThat(new ArgumentMatcher<List>() {
             @Override
             public boolean matches(Object argument) {
                 Assert.assertTrue(argument instanceof List);
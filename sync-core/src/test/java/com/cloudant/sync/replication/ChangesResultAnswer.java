@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import com.cloudant.mazha.ChangesResult;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Answers {@link CouchDB#changes(Replication.Filter, Object, int, ChangesResult.RowHandler)}
+ * and {@link CouchDB#longpollChanges(Replication.Filter, Object, int, long,
+ * ChangesResult.RowHandler)} by passing the rows of the {@code ChangesResult} returned by
+ * {@link #changes(Object)} to the handler.
+ */
+abstract class ChangesResultAnswer implements Answer<Object> {
+
+    abstract ChangesResult changes(Object since) throws Exception;
+
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+        ChangesResult changes = changes(invocation.getArguments()[1]);
+        Object[] args = invocation.getArguments();
+        ChangesResult.RowHandler handler = (ChangesResult.RowHandler) args[args.length - 1];
+        for (ChangesResult.Row row : changes.getResults()) {
+            if (!handler.row(row)) {
+                return null;
+            }
+        }
+        return changes.getLastSeq();
+    }
+}
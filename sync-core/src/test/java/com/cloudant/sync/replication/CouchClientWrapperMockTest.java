@@ -14,8 +14,17 @@
 
 package com.cloudant.sync.replication;
 
+import com.cloudant.mazha.BulkGetRequest;
+import com.cloudant.mazha.BulkGetResponse;
 import com.cloudant.mazha.CouchClient;
+import com.cloudant.mazha.DocumentRevs;
+import com.cloudant.mazha.MissingOpenRevision;
+import com.cloudant.mazha.OkOpenRevision;
+import com.cloudant.mazha.OpenRevision;
 import com.cloudant.mazha.Response;
+import com.cloudant.sync.datastore.DocumentRevsList;
+import com.google.common.collect.Iterables;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -24,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.mockito.Mockito.*;
 
@@ -110,4 +120,86 @@ public class CouchClientWrapperMockTest {
         // exec
         wrapper.bulkSerializedDocs(docs);
     }
+
+    @Test
+    public void bulkCreateDocs() {
+        List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+        docs.add(new HashMap<String, Object>());
+        wrapper.bulkCreateDocs(docs);
+
+        verify(mockedClient).bulk(docs);
+    }
+
+    @Test
+    public void bulkCreateDocs_noDocs_noRequest() {
+        wrapper.bulkCreateDocs(new ArrayList<Map<String, Object>>());
+
+        verify(mockedClient, never()).bulk(anyList());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void bulkCreateDocs_unknownServerError() {
+        List<Map<String, Object>> docs = new ArrayList<Map<String, Object>>();
+        docs.add(new HashMap<String, Object>());
+
+        when(mockedClient.bulk(anyList())).thenReturn(Arrays.asList(new Response()));
+
+        wrapper.bulkCreateDocs(docs);
+    }
+
+    @Test
+    public void bulkGetRevisions_groupedByDocumentInRequestOrder() {
+        List<BulkGetRequest> requests = Arrays.asList(
+                new BulkGetRequest("a", Arrays.asList("1-a", "1-b"), new ArrayList<String>()),
+                new BulkGetRequest("b", Arrays.asList("2-c"), new ArrayList<String>()));
+
+        BulkGetResponse response = new BulkGetResponse();
+        response.results = Arrays.asList(
+                bulkGetResult("b", okOpenRevision("b", "2-c")),
+                bulkGetResult("a", okOpenRevision("a", "1-a")),
+                bulkGetResult("a", okOpenRevision("a", "1-b")));
+        when(mockedClient.bulkReadDocsWithOpenRevisions(requests, false)).thenReturn(response);
+
+        List<DocumentRevsList> result = wrapper.bulkGetRevisions(requests, false);
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(2, Iterables.size(result.get(0)));
+        Assert.assertEquals("a", result.get(0).get(0).getId());
+        Assert.assertEquals(1, Iterables.size(result.get(1)));
+        Assert.assertEquals("2-c", result.get(1).get(0).getRev());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void bulkGetRevisions_missingRevision() {
+        List<BulkGetRequest> requests = Arrays.asList(
+                new BulkGetRequest("a", Arrays.asList("1-a"), new ArrayList<String>()));
+
+        MissingOpenRevision missing = new MissingOpenRevision();
+        missing.setRevision("1-a");
+        BulkGetResponse response = new BulkGetResponse();
+        response.results = Arrays.asList(bulkGetResult("a", missing));
+        when(mockedClient.bulkReadDocsWithOpenRevisions(requests, false)).thenReturn(response);
+
+        wrapper.bulkGetRevisions(requests, false);
+    }
+
+    private static BulkGetResponse.Result bulkGetResult(String id, OpenRevision openRevision) {
+        BulkGetResponse.Result result = new BulkGetResponse.Result();
+        result.id = id;
+        result.docs = Arrays.asList(openRevision);
+        return result;
+    }
+
+    private static OkOpenRevision okOpenRevision(String id, String rev) {
+        DocumentRevs documentRevs = new DocumentRevs();
+        documentRevs.setId(id);
+        documentRevs.setRev(rev);
+        DocumentRevs.Revisions revisions = new DocumentRevs.Revisions();
+        revisions.setStart(Integer.parseInt(rev.split("-")[0]));
+        revisions.setIds(Arrays.asList(rev.split("-")[1]));
+        documentRevs.setRevisions(revisions);
+        OkOpenRevision openRevision = new OkOpenRevision();
+        openRevision.setDocumentRevs(documentRevs);
+        return openRevision;
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PullConfigurationTest {
+
+    @Test
+    public void constructor_defaults_areValid() {
+        PullConfiguration config = new PullConfiguration();
+        Assert.assertEquals(PullConfiguration.DEFAULT_MAX_FETCHES_IN_FLIGHT,
+                config.maxFetchesInFlight);
+        Assert.assertEquals(PullConfiguration.DEFAULT_MAX_ATTACHMENT_DOWNLOADS,
+                config.maxAttachmentDownloads);
+        Assert.assertEquals(PullConfiguration.DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT,
+                config.maxAttachmentBytesInFlight);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroMaxFetchesInFlight_exception() {
+        create(0, PullConfiguration.DEFAULT_MAX_ATTACHMENT_DOWNLOADS,
+                PullConfiguration.DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroMaxAttachmentDownloads_exception() {
+        create(PullConfiguration.DEFAULT_MAX_FETCHES_IN_FLIGHT, 0,
+                PullConfiguration.DEFAULT_MAX_ATTACHMENT_BYTES_IN_FLIGHT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_zeroMaxAttachmentBytesInFlight_exception() {
+        create(PullConfiguration.DEFAULT_MAX_FETCHES_IN_FLIGHT,
+                PullConfiguration.DEFAULT_MAX_ATTACHMENT_DOWNLOADS, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeMaxFetchesInFlight_exception() {
+        new PullConfiguration(PullConfiguration.DEFAULT_CHANGES_LIMIT_PER_BATCH,
+                PullConfiguration.DEFAULT_MAX_BATCH_COUNTER_PER_RUN,
+                PullConfiguration.DEFAULT_INSERT_BATCH_SIZE,
+                PullConfiguration.DEFAULT_PULL_ATTACHMENTS_INLINE, -1);
+    }
+
+    private static PullConfiguration create(int maxFetchesInFlight, int maxAttachmentDownloads,
+                                            int maxAttachmentBytesInFlight) {
+        return new PullConfiguration(PullConfiguration.DEFAULT_CHANGES_LIMIT_PER_BATCH,
+                PullConfiguration.DEFAULT_MAX_BATCH_COUNTER_PER_RUN,
+                PullConfiguration.DEFAULT_INSERT_BATCH_SIZE,
+                PullConfiguration.DEFAULT_PULL_ATTACHMENTS_INLINE, maxFetchesInFlight,
+                maxAttachmentDownloads, maxAttachmentBytesInFlight);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.replication;
+
+import com.cloudant.common.TestHttpServer;
+import com.cloudant.sync.datastore.DatastoreExtended;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests that {@link Replication#compressRequests} is used by the requests replications make
+ * to the remote database.
+ */
+public class ReplicationCompressionTest {
+
+    final TestHttpServer server = new TestHttpServer();
+    URI uri;
+
+    // request path -> Content-Encoding of its body
+    final Map<String, String> encodings = new ConcurrentHashMap<String, String>();
+
+    @Before
+    public void setUp() throws Exception {
+        // records how each request body was encoded, and responds as if nothing was wrong
+        server.start(new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+                encodings.put(path, String.valueOf(encoding));
+                InputStream body = exchange.getRequestBody();
+                if ("gzip".equals(encoding)) {
+                    body = new GZIPInputStream(body);
+                }
+                IOUtils.toByteArray(body);
+                byte[] response = (path.endsWith("_bulk_docs") ? "[]" : "{}").getBytes();
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+                exchange.close();
+            }
+        });
+        uri = server.uri("/db");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void push_compressRequests_bulkDocsIsGzipped() throws Exception {
+        push(true);
+        Assert.assertEquals("gzip", encodings.get("/db/_bulk_docs"));
+    }
+
+    @Test
+    public void push_default_bulkDocsIsNotCompressed() throws Exception {
+        push(false);
+        Assert.assertEquals("null", encodings.get("/db/_bulk_docs"));
+    }
+
+    @Test
+    public void pull_compressRequests_revsDiffIsGzipped() throws Exception {
+        pull(true);
+        Assert.assertEquals("gzip", encodings.get("/db/_revs_diff"));
+    }
+
+    @Test
+    public void pull_default_revsDiffIsNotCompressed() throws Exception {
+        pull(false);
+        Assert.assertEquals("null", encodings.get("/db/_revs_diff"));
+    }
+
+    private void push(boolean compressRequests) {
+        PushReplication push = new PushReplication();
+        push.source = mock(DatastoreExtended.class);
+        push.target = uri;
+        push.compressRequests = compressRequests;
+        Assert.assertEquals(compressRequests,
+                push.getCouchConfig().isRequestCompressionEnabled());
+
+        BasicPushStrategy strategy = new BasicPushStrategy(push);
+        Map<String, Object> doc = new HashMap<String, Object>();
+        doc.put("_id", "doc-1");
+        doc.put("_rev", "1-a");
+        strategy.targetDb.bulkCreateDocs(Collections.singletonList(doc));
+    }
+
+    private void pull(boolean compressRequests) {
+        PullReplication pull = new PullReplication();
+        pull.source = uri;
+        pull.target = mock(DatastoreExtended.class);
+        pull.compressRequests = compressRequests;
+        Assert.assertEquals(compressRequests,
+                pull.getCouchConfig().isRequestCompressionEnabled());
+
+        BasicPullStrategy strategy = new BasicPullStrategy(pull, null, null);
+        try {
+            strategy.sourceDb.revsDiff(Collections.<String, Set<String>>singletonMap("doc-1",
+                    Collections.singleton("1-a")));
+        } finally {
+            strategy.setCancel();
+        }
+    }
+}
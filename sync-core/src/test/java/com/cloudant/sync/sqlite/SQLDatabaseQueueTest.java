@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite;
+
+import com.cloudant.sync.util.DatabaseUtils;
+import com.cloudant.sync.util.TestUtils;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+public class SQLDatabaseQueueTest {
+
+    private static final String[] SCHEMA = new String[] {
+            "CREATE TABLE things (id INTEGER PRIMARY KEY, name TEXT NOT NULL);"
+    };
+
+    private String databaseDir;
+    private SQLDatabaseQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        databaseDir = TestUtils.createTempTestingDir(SQLDatabaseQueueTest.class.getName());
+        queue = new SQLDatabaseQueue(FilenameUtils.concat(databaseDir, "test.sqlite"), 2);
+        queue.updateSchema(SCHEMA, 1);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        queue.shutdown();
+        TestUtils.deleteTempTestingDir(databaseDir);
+    }
+
+    @Test
+    public void usesWriteAheadLogging() throws Exception {
+        String mode = queue.submit(new SQLQueueCallable<String>() {
+            @Override
+            public String call(SQLDatabase db) throws Exception {
+                Cursor cursor = null;
+                try {
+                    cursor = db.rawQuery("PRAGMA journal_mode;", null);
+                    Assert.assertTrue(cursor.moveToFirst());
+                    return cursor.getString(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(cursor);
+                }
+            }
+        }).get();
+        Assert.assertEquals("wal", mode.toLowerCase());
+    }
+
+    @Test
+    public void readsSeeSchemaUpdateAndCommittedWrites() throws Exception {
+        Assert.assertEquals(1, queue.getVersion());
+        insert(1, "one");
+        Assert.assertEquals(1, count());
+    }
+
+    @Test
+    public void readRunsWhileTransactionInProgress() throws Exception {
+        insert(1, "one");
+
+        final CountDownLatch inTransaction = new CountDownLatch(1);
+        final CountDownLatch readDone = new CountDownLatch(1);
+        Future<Boolean> transaction = queue.submitTransaction(new SQLQueueCallable<Boolean>() {
+            @Override
+            public Boolean call(SQLDatabase db) throws Exception {
+                ContentValues values = new ContentValues();
+                values.put("id", 2);
+                values.put("name", "two");
+                db.insert("things", values);
+                inTransaction.countDown();
+                // if reads were queued behind the writer this would time out
+                return readDone.await(30, TimeUnit.SECONDS);
+            }
+        });
+
+        Assert.assertTrue(inTransaction.await(30, TimeUnit.SECONDS));
+        // the uncommitted insert isn't visible to readers
+        Assert.assertEquals(1, count());
+        readDone.countDown();
+        Assert.assertTrue(transaction.get());
+
+        Assert.assertEquals(2, count());
+    }
+
+    @Test
+    public void nonTransactionalWritesRunOnWriter() throws Exception {
+        insert(1, "one");
+        queue.submitWrite(new SQLQueueCallable<Object>() {
+            @Override
+            public Object call(SQLDatabase db) throws Exception {
+                db.compactDatabase();
+                return null;
+            }
+        }).get();
+        Assert.assertEquals(1, count());
+    }
+
+    private void insert(final int id, final String name) throws Exception {
+        queue.submitTransaction(new SQLQueueCallable<Object>() {
+            @Override
+            public Object call(SQLDatabase db) throws Exception {
+                ContentValues values = new ContentValues();
+                values.put("id", id);
+                values.put("name", name);
+                Assert.assertTrue(db.insert("things", values) >= 0);
+                return null;
+            }
+        }).get();
+    }
+
+    private int count() throws Exception {
+        return queue.submit(new SQLQueueCallable<Integer>() {
+            @Override
+            public Integer call(SQLDatabase db) throws Exception {
+                Cursor cursor = null;
+                try {
+                    cursor = db.rawQuery("SELECT COUNT(*) FROM things", null);
+                    Assert.assertTrue(cursor.moveToFirst());
+                    return cursor.getInt(0);
+                } finally {
+                    DatabaseUtils.closeCursorQuietly(cursor);
+                }
+            }
+        }).get(30, TimeUnit.SECONDS);
+    }
+}
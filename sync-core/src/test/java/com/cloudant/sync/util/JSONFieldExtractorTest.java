@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class JSONFieldExtractorTest {
+
+    private static final byte[] JSON = ("{\"name\":\"mike\",\"age\":31," +
+            "\"pets\":[\"cat\",\"dog\"]," +
+            "\"address\":{\"number\":1,\"road\":\"infinite loop\",\"geo\":{\"lat\":1.5}}," +
+            "\"notes\":\"a long field that isn't selected\"}").getBytes();
+
+    @Test
+    public void extractsTopLevelFields() {
+        JSONFieldExtractor extractor = new JSONFieldExtractor(Arrays.asList("name", "pets"));
+        Map<String, Object> fields = extractor.extract(JSON);
+        Assert.assertEquals(2, fields.size());
+        Assert.assertEquals("mike", fields.get("name"));
+        Assert.assertEquals(Arrays.asList("cat", "dog"), fields.get("pets"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void extractsDottedFields() {
+        JSONFieldExtractor extractor = new JSONFieldExtractor(
+                Arrays.asList("address.road", "address.geo.lat"));
+        Map<String, Object> fields = extractor.extract(JSON);
+        Assert.assertEquals(1, fields.size());
+        Map<String, Object> address = (Map<String, Object>) fields.get("address");
+        Assert.assertEquals(2, address.size());
+        Assert.assertEquals("infinite loop", address.get("road"));
+        Assert.assertEquals(1.5, ((Map<String, Object>) address.get("geo")).get("lat"));
+    }
+
+    @Test
+    public void extractsWholeObjectWhenParentAndChildSelected() {
+        JSONFieldExtractor extractor = new JSONFieldExtractor(
+                Arrays.asList("address.road", "address", "age"));
+        Map<String, Object> fields = extractor.extract(JSON);
+        Assert.assertEquals(JSONUtils.deserialize(JSON).get("address"), fields.get("address"));
+        Assert.assertEquals(31, fields.get("age"));
+    }
+
+    @Test
+    public void valuesMatchFullDeserialisation() {
+        Map<String, Object> all = JSONUtils.deserialize(JSON);
+        JSONFieldExtractor extractor = new JSONFieldExtractor(all.keySet());
+        Assert.assertEquals(all, extractor.extract(JSON));
+    }
+
+    @Test
+    public void missingFieldsAreLeftOut() {
+        JSONFieldExtractor extractor = new JSONFieldExtractor(
+                Arrays.asList("missing", "name.first", "address.missing"));
+        Map<String, Object> fields = extractor.extract(JSON);
+        Assert.assertNull(fields.get("missing"));
+        Assert.assertNull(fields.get("name"));
+        Assert.assertTrue(((Map) fields.get("address")).isEmpty());
+    }
+
+    @Test
+    public void noFieldsSelected() {
+        JSONFieldExtractor extractor = new JSONFieldExtractor(Collections.<String>emptyList());
+        Assert.assertTrue(extractor.extract(JSON).isEmpty());
+    }
+
+    @Test
+    public void stopsOnceFieldsFound() {
+        // everything after the selected field is invalid, so is never read
+        byte[] json = "{\"name\":\"mike\",\"age\": not json".getBytes();
+        JSONFieldExtractor extractor = new JSONFieldExtractor(Arrays.asList("name"));
+        Assert.assertEquals("mike", extractor.extract(json).get("name"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsNonObject() {
+        new JSONFieldExtractor(Arrays.asList("name")).extract("[1, 2]".getBytes());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite.sqlite4java;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Least-recently-used cache of the prepared statements of a connection, keyed by their
+ * SQL text, so that statements run repeatedly are compiled once rather than on every call.</p>
+ *
+ * <p>A statement is taken out of the cache with {@link #acquire(SQLiteConnection, String)}
+ * and must be given back with {@link #release(String, SQLiteStatement)} once it has been
+ * used. While a statement is checked out, acquiring the same SQL prepares a second
+ * statement, so nested use of the same SQL is safe. When the cache is full, the least
+ * recently used statement is disposed.</p>
+ *
+ * <p>As for the connection, the cache must only be used by the thread which owns the
+ * connection.</p>
+ */
+class SQLiteStatementCache {
+
+    static final int DEFAULT_CAPACITY = 50;
+
+    private final int capacity;
+
+    private final LinkedHashMap<String, SQLiteStatement> statements;
+
+    SQLiteStatementCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity must not be negative");
+        }
+        this.capacity = capacity;
+        this.statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+                if (size() > SQLiteStatementCache.this.capacity) {
+                    SQLiteWrapperUtils.disposeQuietly(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a prepared statement for {@code sql}, taking it from the cache if there is
+     * one, otherwise preparing it on {@code conn}.
+     */
+    SQLiteStatement acquire(SQLiteConnection conn, String sql) throws SQLiteException {
+        SQLiteStatement stmt = statements.remove(sql);
+        if (stmt != null && !stmt.isDisposed()) {
+            return stmt;
+        }
+        // sqlite4java has its own unbounded statement cache, which we bypass
+        return conn.prepare(sql, false);
+    }
+
+    /**
+     * Resets {@code stmt}, clearing its bindings, and puts it back in the cache. The
+     * statement is disposed instead if it can't be reset or the cache already holds a
+     * statement for the same SQL.
+     */
+    void release(String sql, SQLiteStatement stmt) {
+        if (stmt == null || stmt.isDisposed()) {
+            return;
+        }
+        try {
+            stmt.reset(true);
+        } catch (SQLiteException e) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+            return;
+        }
+        if (capacity == 0 || statements.containsKey(sql)) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+        } else {
+            statements.put(sql, stmt);
+        }
+    }
+
+    /**
+     * @return the number of statements in the cache
+     */
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * Disposes all the statements in the cache.
+     */
+    void clear() {
+        for (SQLiteStatement stmt : statements.values()) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+        }
+        statements.clear();
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2015 IBM Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file
+ * except in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the
+ * License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions
+ * and limitations under the License.
+ */
+
+package com.cloudant.sync.sqlite.sqlite4java;
+
+import com.almworks.sqlite4java.SQLiteConnection;
+import com.almworks.sqlite4java.SQLiteException;
+import com.almworks.sqlite4java.SQLiteStatement;
+import com.cloudant.sync.sqlite.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>{@code Cursor} which steps through the rows of a sqlite4java {@code SQLiteStatement} as
+ * it is moved, reading column values straight from the statement, so that the rows of a query
+ * are never all held in memory at once.</p>
+ *
+ * <p>The cursor is forward-only: {@link #moveToFirst()} on a cursor which has moved past the
+ * first row runs the query again. {@link #getCount()} also runs the query, counting the rows
+ * without reading them, so should be avoided for large result sets.</p>
+ *
+ * <p>As for the connection it was created on, the cursor must only be used by the thread
+ * which created it, and must be closed so that its statement is returned to the
+ * connection's statement cache.</p>
+ */
+public class SQLiteStatementCursor implements Cursor {
+
+    private final SQLiteConnection conn;
+    private final SQLiteStatementCache cache;
+    private final String sql;
+    private final Object[] bindArgs;
+    private final SQLiteStatement stmt;
+    private final List<String> names;
+
+    private int position = -1;
+    private boolean afterLast = false;
+    private int count = -1;
+    private boolean closed = false;
+
+    SQLiteStatementCursor(SQLiteConnection conn, SQLiteStatementCache cache, String sql,
+                          Object[] bindArgs) throws SQLiteException {
+        this.conn = conn;
+        this.cache = cache;
+        this.sql = sql;
+        this.bindArgs = bindArgs;
+        this.stmt = cache.acquire(conn, sql);
+        try {
+            SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
+            this.names = SQLiteWrapperUtils.getColumnNames(stmt);
+        } catch (SQLiteException e) {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+            throw e;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        if (count < 0) {
+            SQLiteStatement countStmt = null;
+            try {
+                countStmt = SQLiteWrapperUtils.bindArguments(conn.prepare(sql, false), bindArgs);
+                int rows = 0;
+                while (countStmt.step()) {
+                    rows++;
+                }
+                count = rows;
+            } catch (SQLiteException e) {
+                throw new IllegalStateException("Failed to count rows of query: " + sql, e);
+            } finally {
+                SQLiteWrapperUtils.disposeQuietly(countStmt);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return names.size();
+    }
+
+    @Override
+    public int columnType(int index) {
+        try {
+            return SQLiteWrapperUtils.mapColumnType(stmt.columnType(index));
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String columnName(int index) {
+        return names.get(index);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        if (position == 0) {
+            return true;
+        }
+        if (position > 0 || afterLast) {
+            // already moved past the first row, so start the query again
+            try {
+                stmt.reset(false);
+            } catch (SQLiteException e) {
+                throw new IllegalStateException(e);
+            }
+            position = -1;
+            afterLast = false;
+        }
+        return moveToNext();
+    }
+
+    @Override
+    public String getString(int index) {
+        try {
+            return stmt.columnString(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public int getInt(int index) {
+        try {
+            return stmt.columnInt(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public long getLong(int index) {
+        try {
+            return stmt.columnLong(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public float getFloat(int index) {
+        try {
+            return (float) stmt.columnDouble(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int index) {
+        try {
+            return stmt.columnBlob(index);
+        } catch (SQLiteException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return afterLast;
+    }
+
+    @Override
+    public boolean moveToNext() {
+        if (afterLast) {
+            return false;
+        }
+        try {
+            position++;
+            if (stmt.step()) {
+                return true;
+            }
+            afterLast = true;
+            count = position;
+            // release the statement's locks now rather than when the cursor is closed
+            stmt.reset(false);
+            return false;
+        } catch (SQLiteException e) {
+            throw new IllegalStateException("Failed to read next row of query: " + sql, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            cache.release(sql, stmt);
+        }
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return names.indexOf(columnName);
+    }
+
+    @Override
+    public int getColumnIndexOrThrow(String columnName) throws IllegalArgumentException {
+        int i = getColumnIndex(columnName);
+        if(i < 0) {
+            throw new IllegalArgumentException("Can not find column: " + columnName);
+        } else {
+            return i;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("SQLiteStatementCursor: ");
+        sb.append("position ").append(this.position);
+        sb.append(", columnCount ").append(this.getColumnCount());
+        sb.append(", names ").append(this.names);
+        return sb.toString();
+    }
+}
@@ -18,6 +18,7 @@ import com.almworks.sqlite4java.SQLiteConnection;
 import com.almworks.sqlite4java.SQLiteException;
 import com.almworks.sqlite4java.SQLiteStatement;
 import com.cloudant.sync.sqlite.ContentValues;
+import com.cloudant.sync.sqlite.Cursor;
 import com.cloudant.sync.sqlite.SQLDatabase;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
@@ -48,8 +49,16 @@ public class SQLiteWrapper extends SQLDatabase {
 
     private final String databaseFilePath;
 
+    private final boolean readOnly;
+
     private SQLiteConnection localConnection;
 
+    /**
+     * Prepared statements of {@code localConnection}, reused by SQL text.
+     */
+    private final SQLiteStatementCache statementCache =
+            new SQLiteStatementCache(SQLiteStatementCache.DEFAULT_CAPACITY);
+
     /**
      * Tracks whether the current nested set of transactions has had any
      * failed transactions so far.
@@ -65,7 +74,12 @@ public class SQLiteWrapper extends SQLDatabase {
     private Stack<Boolean> transactionStack = new Stack<Boolean>();
 
     public SQLiteWrapper(String databaseFilePath) {
+        this(databaseFilePath, false);
+    }
+
+    public SQLiteWrapper(String databaseFilePath, boolean readOnly) {
         this.databaseFilePath = databaseFilePath;
+        this.readOnly = readOnly;
     }
 
     public static SQLiteWrapper openSQLiteWrapper(String databaseFilePath) {
@@ -74,6 +88,16 @@ public class SQLiteWrapper extends SQLDatabase {
         return db;
     }
 
+    /**
+     * Opens a read-only connection. As for any {@code SQLiteWrapper}, the connection
+     * is created by, and must only be used by, the first thread which uses it.
+     */
+    public static SQLiteWrapper openSQLiteWrapperReadOnly(String databaseFilePath) {
+        SQLiteWrapper db = new SQLiteWrapper(databaseFilePath, true);
+        db.open();
+        return db;
+    }
+
     public String getDatabaseFile() {
         return this.databaseFilePath;
     }
@@ -89,7 +113,11 @@ public class SQLiteWrapper extends SQLDatabase {
     SQLiteConnection createNewConnection() {
         try {
             SQLiteConnection conn = new SQLiteConnection(new File(this.databaseFilePath));
-            conn.open();
+            if (this.readOnly) {
+                conn.openReadonly();
+            } else {
+                conn.open();
+            }
             conn.setBusyTimeout(30*1000);
             return conn;
         } catch (SQLiteException ex) {
@@ -120,6 +148,20 @@ public class SQLiteWrapper extends SQLDatabase {
         }
     }
 
+    @Override
+    public boolean enableWriteAheadLogging() {
+        SQLiteStatement stmt = null;
+        try {
+            stmt = getConnection().prepare("PRAGMA journal_mode = WAL;");
+            return stmt.step() && "wal".equalsIgnoreCase(stmt.columnString(0));
+        } catch (SQLiteException e) {
+            logger.log(Level.WARNING, "Failed to enable write-ahead logging", e);
+            return false;
+        } finally {
+            SQLiteWrapperUtils.disposeQuietly(stmt);
+        }
+    }
+
     @Override
     public boolean isOpen() {
         return getConnection().isOpen();
@@ -206,6 +248,7 @@ public class SQLiteWrapper extends SQLDatabase {
         // for the same thread as us
         SQLiteConnection conn = localConnection;
         if (conn != null && !conn.isDisposed()) {
+            statementCache.clear();
             conn.dispose();
         }
     }
@@ -225,16 +268,32 @@ public class SQLiteWrapper extends SQLDatabase {
     public void execSQL(String sql, Object[] bindArgs) throws SQLException {
         Preconditions.checkArgument(!Strings.isNullOrEmpty(sql.trim()),
                 "Input SQL can not be empty String.");
-        SQLiteStatement stmt = null;
         try {
-            stmt = this.getConnection().prepare(sql);
-            stmt = SQLiteWrapperUtils.bindArguments(stmt, bindArgs);
-            while (stmt.step()) {
-            }
+            this.executeSQLStatement(sql, bindArgs);
         } catch (SQLiteException e) {
             throw new SQLException(e);
-        } finally {
-            SQLiteWrapperUtils.disposeQuietly(stmt);
+        }
+    }
+
+    @Override
+    public long executeInsert(String sql, Object[] bindArgs) {
+        try {
+            this.executeSQLStatement(sql, bindArgs);
+            return getConnection().getLastInsertId();
+        } catch (SQLiteException e) {
+            logger.log(Level.SEVERE, String.format("Error inserting: %s", sql), e);
+            return -1;
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete(String sql, Object[] bindArgs) {
+        try {
+            this.executeSQLStatement(sql, bindArgs);
+            return getConnection().getChanges();
+        } catch (SQLiteException e) {
+            logger.log(Level.SEVERE, String.format("Error updating: %s", sql), e);
+            return -1;
         }
     }
 
@@ -257,9 +316,9 @@ public class SQLiteWrapper extends SQLDatabase {
     }
 
     @Override
-    public SQLiteCursor rawQuery(String sql, String[] bindArgs) throws SQLException {
+    public Cursor rawQuery(String sql, String[] bindArgs) throws SQLException {
         try {
-            return SQLiteWrapperUtils.buildSQLiteCursor(getConnection(), sql, bindArgs);
+            return new SQLiteStatementCursor(getConnection(), statementCache, sql, bindArgs);
         } catch (SQLiteException e) {
             throw new SQLException(e);
         }
@@ -327,9 +386,20 @@ public class SQLiteWrapper extends SQLDatabase {
     }
 
     private void executeSQLStatement(String sql, Object[] values) throws SQLiteException{
-        SQLiteStatement stmt = getConnection().prepare(sql);
-        stmt = SQLiteWrapperUtils.bindArguments(stmt, values);
-        while (stmt.step()) {
+        SQLiteStatement stmt = statementCache.acquire(getConnection(), sql);
+        try {
+            stmt = SQLiteWrapperUtils.bindArguments(stmt, values);
+            while (stmt.step()) {
+            }
+        } finally {
+            statementCache.release(sql, stmt);
         }
     }
+
+    /**
+     * @return the number of prepared statements held for reuse by this thread's connection
+     */
+    int getCachedStatementCount() {
+        return statementCache.size();
+    }
 }
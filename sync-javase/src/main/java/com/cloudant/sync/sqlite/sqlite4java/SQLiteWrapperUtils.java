@@ -22,13 +22,9 @@ import com.cloudant.sync.sqlite.Cursor;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.logging.Logger;
 
 public class SQLiteWrapperUtils {
 
-    private static final String LOG_TAG = "SQLiteWrapperUtils";
-    private static final Logger logger = Logger.getLogger(SQLiteWrapperUtils.class.getCanonicalName());
-
     public static Long longForQuery(SQLiteConnection conn, String query)
             throws SQLiteException {
         return SQLiteWrapperUtils.longForQuery(conn, query, null);
@@ -130,60 +126,6 @@ public class SQLiteWrapperUtils {
         }
     }
 
-    public static SQLiteCursor buildSQLiteCursor(SQLiteConnection conn, String sql, Object[] bindArgs)
-            throws SQLiteException {
-        SQLiteStatement stmt = null;
-        try {
-            stmt = bindArguments(conn.prepare(sql), bindArgs);
-            List<String> columnNames = null;
-            List<Tuple> resultSet = new ArrayList<Tuple>();
-            while (!stmt.hasStepped() || stmt.hasRow()) {
-                if (!stmt.step()) {
-                    break;
-                }
-                if (columnNames == null) {
-                    columnNames = getColumnNames(stmt);
-                }
-
-                Tuple t = getDataRow(stmt);
-                logger.finest("Tuple: "+ t.toString());
-                resultSet.add(t);
-            }
-            return new SQLiteCursor(columnNames, resultSet);
-        } finally {
-            SQLiteWrapperUtils.disposeQuietly(stmt);
-        }
-    }
-
-    static Tuple getDataRow(SQLiteStatement stmt) throws SQLiteException {
-        logger.entering("com.cloudant.sync.sqlite.sqlite4java.SQLiteWrapperUtils","getDataRow",stmt);
-        Tuple result = new Tuple(getColumnTypes(stmt));
-        for (int i = 0; i < stmt.columnCount(); i++) {
-            Integer type = stmt.columnType(i);
-//            Log.v(LOG_TAG, "i: " + i + ", type: " + mapColumnType(type) + ", expected type: " + result.getType(i));
-            switch (type) {
-                case SQLiteConstants.SQLITE_NULL:
-                    result.put(i);
-                    break;
-                case SQLiteConstants.SQLITE_TEXT:
-                    result.put(i, stmt.columnString(i));
-                    break;
-                case SQLiteConstants.SQLITE_INTEGER:
-                    result.put(i, stmt.columnLong(i));
-                    break;
-                case SQLiteConstants.SQLITE_FLOAT:
-                    result.put(i, Double.valueOf(stmt.columnDouble(i)).floatValue());
-                    break;
-                case SQLiteConstants.SQLITE_BLOB:
-                    result.put(i, stmt.columnBlob(i));
-                    break;
-                default:
-                    throw new IllegalArgumentException("Unsupported data type: " + type);
-            }
-        }
-        return result;
-    }
-
     static List<String> getColumnNames(SQLiteStatement stmt) throws SQLiteException {
 //        Log.v(LOG_TAG, "getColumnNames()");
         List<String> columnNames = new ArrayList<String>();
@@ -195,17 +137,6 @@ public class SQLiteWrapperUtils {
         return columnNames;
     }
 
-    static List<Integer> getColumnTypes(SQLiteStatement stmt) throws SQLiteException {
-//        Log.v(LOG_TAG, "getColumnTypes()");
-        List<Integer> columnTypes = new ArrayList<Integer>();
-        int columnCount = stmt.columnCount();
-        for (int i = 0; i < columnCount; i++) {
-            columnTypes.add(i, mapColumnType(stmt.columnType(i)));
-        }
-//        Log.v(LOG_TAG, "columnTypes:" + columnTypes);
-        return columnTypes;
-    }
-
     static int mapColumnType(int columnType) {
         switch (columnType) {
             case SQLiteConstants.SQLITE_NULL:
@@ -469,7 +469,7 @@ public class SQLiteWrapperTest {
     public void rawQuery() throws Exception {
         prepareDatabaseForTesting();
 
-        SQLiteCursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name = ?",
+        Cursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name = ?",
                 new String[]{"haha"});
 
         Assert.assertTrue(cursor.getCount() == 2);
@@ -499,12 +499,57 @@ public class SQLiteWrapperTest {
     public void rawQuery_inClause() throws Exception {
         prepareDatabaseForTesting();
 
-        SQLiteCursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name IN ( ?, ?, ?)",
+        Cursor cursor = database.rawQuery("SELECT * FROM docs WHERE doc_name IN ( ?, ?, ?)",
                 new String[]{"haha", "hihi", "hehe"});
 
         Assert.assertEquals(4, cursor.getCount());
     }
 
+    @Test
+    public void rawQuery_noRows_columnsStillKnown() throws Exception {
+        prepareDatabaseForTesting();
+
+        Cursor cursor = database.rawQuery("SELECT doc_id, doc_name FROM docs WHERE doc_name = ?",
+                new String[]{"nobody"});
+        try {
+            Assert.assertEquals(2, cursor.getColumnCount());
+            Assert.assertEquals(1, cursor.getColumnIndex("doc_name"));
+            Assert.assertFalse(cursor.moveToNext());
+            Assert.assertTrue(cursor.isAfterLast());
+            Assert.assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rawQuery_rowsReadInOrderAndMoveToFirstRestarts() throws Exception {
+        prepareDatabaseForTesting();
+
+        Cursor cursor = database.rawQuery("SELECT doc_id, data FROM docs ORDER BY doc_id",
+                new String[]{});
+        try {
+            // counting doesn't move the cursor
+            Assert.assertEquals(4, cursor.getCount());
+            for (int i = 1; i <= 4; i++) {
+                Assert.assertTrue(cursor.moveToNext());
+                Assert.assertEquals(i, cursor.getInt(0));
+            }
+            Assert.assertEquals(Cursor.FIELD_TYPE_NULL, cursor.columnType(1));
+            Assert.assertNull(cursor.getBlob(1));
+            Assert.assertFalse(cursor.moveToNext());
+            Assert.assertTrue(cursor.isAfterLast());
+
+            Assert.assertTrue(cursor.moveToFirst());
+            Assert.assertFalse(cursor.isAfterLast());
+            Assert.assertEquals(1, cursor.getInt(0));
+            Assert.assertTrue(cursor.moveToNext());
+            Assert.assertEquals(2, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
     @Test
     public void delete() {
         prepareDatabaseForTesting();
@@ -560,6 +605,75 @@ public class SQLiteWrapperTest {
         }
     }
 
+    @Test
+    public void executeInsert_statementReused() {
+        prepareDatabaseForTesting();
+        String sql = "INSERT INTO docs (doc_id, doc_name, balance) VALUES (?, ?, ?)";
+        int cached = database.getCachedStatementCount();
+
+        Assert.assertEquals(101, database.executeInsert(sql, new Object[]{101, "kaka", 1.0}));
+        Assert.assertEquals(cached + 1, database.getCachedStatementCount());
+        Assert.assertEquals(102, database.executeInsert(sql, new Object[]{102, "kiki", 2.0}));
+        Assert.assertEquals(cached + 1, database.getCachedStatementCount());
+
+        // constraint violation, then the cached statement still works
+        Assert.assertEquals(-1, database.executeInsert(sql, new Object[]{101, "kaka", 1.0}));
+        Assert.assertEquals(103, database.executeInsert(sql, new Object[]{103, "koko", 3.0}));
+    }
+
+    @Test
+    public void executeUpdateDelete_returnsRowsAffected() {
+        prepareDatabaseForTesting();
+        String sql = "UPDATE docs SET desc = ? WHERE doc_name = ?";
+        Assert.assertEquals(2, database.executeUpdateDelete(sql, new Object[]{"updated", "haha"}));
+        Assert.assertEquals(0, database.executeUpdateDelete(sql, new Object[]{"updated", "nope"}));
+        Assert.assertEquals(1, database.executeUpdateDelete("DELETE FROM docs WHERE doc_id = ?",
+                new Object[]{3}));
+    }
+
+    @Test
+    public void statementCache_isBounded() throws Exception {
+        prepareDatabaseForTesting();
+        for (int i = 0; i < SQLiteStatementCache.DEFAULT_CAPACITY * 2; i++) {
+            Cursor cursor = database.rawQuery("SELECT doc_id FROM docs WHERE doc_id > " + i, null);
+            cursor.close();
+        }
+        Assert.assertEquals(SQLiteStatementCache.DEFAULT_CAPACITY,
+                database.getCachedStatementCount());
+    }
+
+    @Test
+    public void rawQuery_sameSqlNested() throws Exception {
+        prepareDatabaseForTesting();
+        String sql = "SELECT doc_id FROM docs WHERE doc_name = ? ORDER BY doc_id";
+        Cursor outer = database.rawQuery(sql, new String[]{"haha"});
+        try {
+            Assert.assertTrue(outer.moveToFirst());
+            Cursor inner = database.rawQuery(sql, new String[]{"hihi"});
+            try {
+                Assert.assertTrue(inner.moveToFirst());
+                Assert.assertEquals(3, inner.getInt(0));
+            } finally {
+                inner.close();
+            }
+            Assert.assertEquals(1, outer.getInt(0));
+            Assert.assertTrue(outer.moveToNext());
+            Assert.assertEquals(2, outer.getInt(0));
+            Assert.assertFalse(outer.moveToNext());
+        } finally {
+            outer.close();
+        }
+        // closing twice doesn't give the statement back twice
+        outer.close();
+        Cursor again = database.rawQuery(sql, new String[]{"hehe"});
+        try {
+            Assert.assertTrue(again.moveToFirst());
+            Assert.assertEquals(4, again.getInt(0));
+        } finally {
+            again.close();
+        }
+    }
+
     @Test(expected = SQLException.class)
     public void close_queryAfterClose() throws SQLException {
         this.database.close();